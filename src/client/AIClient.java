@@ -174,6 +174,9 @@ public abstract class AIClient implements ServiceClient.ServiceMsgHandler
     opt.put("-lib", "",  "c++ library (for jni player - skattaplayer or xskatplayer)");    
     opt.put("-delay", "play no faster than 1-1.5 seconds per move");
     opt.put("-quit", "quit once an hour to free memory");
+    opt.put("-nio", "serve connection by shared selector thread (ConnectionLoop)");
+    opt.put("-log", "info", "log level (debug/info/warn/err)");
+    opt.put("-lograte", Integer.valueOf(AsyncLog.ASYNC_MAX_PER_SECOND), "max. debug/info log lines per second (0: no limit)");
     opt.put("-aiId", "kermit", "select AI (kermit/zoot/theCount)"); 
     opt.put("-pos",   new String(""), "Game to analyze");
     opt.put("-rewind", new Integer(0), "Rewind by this many moves to analyze current state.");
@@ -206,7 +209,26 @@ public abstract class AIClient implements ServiceClient.ServiceMsgHandler
       }
 
     } else { 
-      sc = new ServerClient();
+      int level = AsyncLog.levelOf(opt.getString("-log"));
+      if (level < 0) {
+        Misc.err("unknown log level " + opt.getString("-log"));
+        return;
+      }
+      AsyncLog.setLevel(level);
+      AsyncLog.startAsync(); // don't block network and move threads when logging
+      AsyncLog.setMaxPerSecond(opt.getInteger("-lograte").intValue());
+
+      if (opt.getSwitchOn("-nio")) {
+        try {
+          sc = new ServerClient(ConnectionLoop.getDefault());
+        }
+        catch (IOException e) {
+          Misc.err("can't create connection loop " + e);
+          return;
+        }
+      } else {
+        sc = new ServerClient();
+      }
 
       String r = sc.run(this, "", opt.getString("-h"), opt.getInteger("-p")
                       .intValue(), opt.getString("-id"), opt.getString("-pw"), opt
@@ -303,7 +325,7 @@ public abstract class AIClient implements ServiceClient.ServiceMsgHandler
    */
   public void handleServiceMsg(ServiceClient.ServiceMsg msg, String line)
   {
-    Misc.msg("handling: " + line);
+    Misc.msg(AsyncLog.INFO, "handling: ", line);
 		
     if (msg instanceof ServiceClient.CreateMsg) {
 
@@ -366,7 +388,7 @@ public abstract class AIClient implements ServiceClient.ServiceMsgHandler
   protected void sendToServer(String msg)
   {
     sc.send(msg);
-    Misc.msg("send: " + msg);
+    Misc.msg(AsyncLog.INFO, "send: ", msg);
   }
 	
 
@@ -0,0 +1,363 @@
+// selector based transport for ServerClient
+//
+// by default each ServerClient uses a reader and a writer thread for its
+// connection. Clients created with a shared ConnectionLoop (e.g. many
+// bot accounts in one process) are served by one selector thread
+// instead, which reads and writes all sockets through one pair of
+// direct buffers. Received lines are handed to a small pool of worker
+// threads, one connection at a time and in order, because handlers may
+// block (AIClient computes moves when receiving messages).
+//
+// login (ServerClient.run) is done with the channel in blocking mode,
+// then the channel is registered with the loop.
+
+// (c) Michael Buro, licensed under GPLv3
+
+package client;
+
+import java.io.*;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import common.*;
+
+public class ConnectionLoop
+{
+  static final int BUFFER_SIZE = 1 << 16;
+
+  // queued after the last line of a closed connection
+  private static final String EOF = new String("EOF");
+
+  private final Selector selector;
+  private final ExecutorService workers;
+
+  // only used by loop thread
+  private final ByteBuffer readBuf  = ByteBuffer.allocateDirect(BUFFER_SIZE);
+  private final ByteBuffer writeBuf = ByteBuffer.allocateDirect(BUFFER_SIZE);
+  private final ByteArrayOutputStream outBytes = new ByteArrayOutputStream();
+  private final StringBuilder log = new StringBuilder(); // batch log (if INFO is logged)
+
+  // connections to register / with new messages to send
+  private final ConcurrentLinkedQueue<Connection> registrations = new ConcurrentLinkedQueue<Connection>();
+  private final ConcurrentLinkedQueue<Connection> writes = new ConcurrentLinkedQueue<Connection>();
+
+  private Thread thread;
+  private static ConnectionLoop defaultLoop;
+
+  /** connection of one ServerClient */
+  public class Connection
+  {
+    final ServerClient sc;
+    final SocketChannel ch;
+    SelectionKey key;
+    volatile boolean closed;
+
+    // received bytes not yet split into lines
+    byte[] in = new byte[256];
+    int inStart, inEnd;
+
+    // received lines not yet handled
+    final ConcurrentLinkedQueue<String> lines = new ConcurrentLinkedQueue<String>();
+    final AtomicBoolean dispatching = new AtomicBoolean();
+
+    // messages to send, bytes the socket didn't take yet
+    final ConcurrentLinkedQueue<String> out = new ConcurrentLinkedQueue<String>();
+    final AtomicBoolean writeQueued = new AtomicBoolean();
+    byte[] rest;
+
+    Connection(ServerClient sc, SocketChannel ch)
+    {
+      this.sc = sc;
+      this.ch = ch;
+    }
+
+    // append received bytes
+    void add(ByteBuffer b)
+    {
+      int n = b.remaining();
+      if (inEnd + n > in.length) {
+        int len = inEnd - inStart;
+        byte[] d = len + n > in.length ? new byte[Math.max(2*in.length, len + n)] : in;
+        System.arraycopy(in, inStart, d, 0, len);
+        in = d;
+        inStart = 0;
+        inEnd = len;
+      }
+      b.get(in, inEnd, n);
+      inEnd += n;
+    }
+
+    // @return next complete line without line terminator, null if none
+    String pollLine()
+    {
+      for (int i=inStart; i < inEnd; i++) {
+        if (in[i] == '\n') {
+          int end = i > inStart && in[i-1] == '\r' ? i-1 : i;
+          String line;
+          try { line = new String(in, inStart, end - inStart, "UTF-8"); }
+          catch (UnsupportedEncodingException e) { throw new RuntimeException(e); }
+          inStart = i+1;
+          if (inStart == inEnd) inStart = inEnd = 0;
+          return line;
+        }
+      }
+      return null;
+    }
+
+    /** blocking read (login)
+        @return next line, null if EOF */
+    String readLine() throws IOException
+    {
+      ByteBuffer b = ByteBuffer.allocate(1024);
+      String line;
+      while ((line = pollLine()) == null) {
+        b.clear();
+        if (ch.read(b) < 0) return null;
+        b.flip();
+        add(b);
+      }
+      return line;
+    }
+
+    /** blocking write (login) */
+    void writeLine(String line) throws IOException
+    {
+      ByteBuffer b = ByteBuffer.wrap((line + "\n").getBytes("UTF-8"));
+      while (b.hasRemaining()) ch.write(b);
+    }
+
+    // hand received lines to worker threads in order
+    final Runnable dispatcher = new Runnable() {
+        public void run()
+        {
+          for (;;) {
+            String line = lines.poll();
+            if (line == null) {
+              dispatching.set(false);
+              if (lines.isEmpty() || !dispatching.compareAndSet(false, true)) return;
+              continue;
+            }
+            if (line == EOF) {
+              Misc.msg("Terminating communication");
+              sc.terminate();
+            } else {
+              sc.receivedLine(line);
+            }
+          }
+        }
+      };
+  }
+
+  /** @param workerNum number of threads handling received messages */
+  public ConnectionLoop(int workerNum) throws IOException
+  {
+    selector = Selector.open();
+    workers = Executors.newFixedThreadPool(workerNum);
+  }
+
+  /** @return loop shared by all clients that use it in this process */
+  public static synchronized ConnectionLoop getDefault() throws IOException
+  {
+    if (defaultLoop == null)
+      defaultLoop = new ConnectionLoop(Runtime.getRuntime().availableProcessors());
+    return defaultLoop;
+  }
+
+  /** open blocking connection for login */
+  Connection connect(ServerClient sc, String host, int port) throws IOException
+  {
+    SocketChannel ch = SocketChannel.open(new InetSocketAddress(host, port));
+    ch.socket().setTcpNoDelay(true);
+    return new Connection(sc, ch);
+  }
+
+  /** after login: serve connection c by the loop thread */
+  void register(Connection c) throws IOException
+  {
+    c.ch.configureBlocking(false);
+    registrations.add(c);
+
+    synchronized (this) {
+      if (thread == null) {
+        thread = new Thread("ConnectionLoop") {
+            public void run() { loop(); }
+          };
+        thread.start();
+      }
+    }
+    selector.wakeup();
+  }
+
+  /** queue message for sending */
+  void send(Connection c, String msg)
+  {
+    if (c.closed) return;
+    c.out.add(msg);
+    if (c.writeQueued.compareAndSet(false, true)) {
+      writes.add(c);
+      selector.wakeup();
+    }
+  }
+
+  /** close connection (no EOF is reported) */
+  void close(Connection c)
+  {
+    c.closed = true;
+    try { c.ch.close(); }
+    catch (IOException e) { }
+    selector.wakeup();
+  }
+
+  private void loop()
+  {
+    Misc.msg("ConnectionLoop created");
+
+    for (;;) {
+
+      try {
+        selector.select();
+      }
+      catch (IOException e) {
+        Misc.exception(e);
+        return;
+      }
+
+      Connection c;
+
+      while ((c = registrations.poll()) != null) {
+        try {
+          c.key = c.ch.register(selector, SelectionKey.OP_READ, c);
+          received(c); // lines that arrived during login
+        }
+        catch (IOException e) {
+          closed(c, e);
+        }
+      }
+
+      while ((c = writes.poll()) != null) {
+        c.writeQueued.set(false);
+        if (c.key != null) flush(c);
+      }
+
+      Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+      while (it.hasNext()) {
+        SelectionKey k = it.next();
+        it.remove();
+        c = (Connection)k.attachment();
+
+        if (!k.isValid()) continue;
+        if (k.isReadable()) read(c);
+        if (k.isValid() && k.isWritable()) flush(c);
+      }
+    }
+  }
+
+  private void read(Connection c)
+  {
+    try {
+      for (;;) {
+        readBuf.clear();
+        int n = c.ch.read(readBuf);
+        if (n < 0) throw new EOFException("connection closed");
+        if (n == 0) break;
+        readBuf.flip();
+        c.add(readBuf);
+      }
+      received(c);
+    }
+    catch (IOException e) {
+      closed(c, e);
+    }
+  }
+
+  // pass complete lines to workers
+  private void received(Connection c)
+  {
+    String line;
+    boolean any = false;
+    while ((line = c.pollLine()) != null) {
+      c.lines.add(line);
+      any = true;
+    }
+    if (any) dispatch(c);
+  }
+
+  private void dispatch(Connection c)
+  {
+    if (c.dispatching.compareAndSet(false, true))
+      workers.execute(c.dispatcher);
+  }
+
+  // write queued messages, keep rest for OP_WRITE if the socket is full
+  private void flush(Connection c)
+  {
+    try {
+      if (c.rest != null) {
+        byte[] r = c.rest;
+        c.rest = null;
+        if (!write(c, r, 0, r.length)) return;
+      }
+
+      outBytes.reset();
+      log.setLength(0);
+      boolean logged = Misc.isLogged(AsyncLog.INFO);
+      String msg;
+      while ((msg = c.out.poll()) != null) {
+        byte[] b = (msg + "\n").getBytes("UTF-8");
+        outBytes.write(b, 0, b.length);
+        if (logged) {
+          if (log.length() > 0) log.append('\n');
+          ServerClient.appendSentLog(log, msg);
+        }
+      }
+      if (outBytes.size() > 0) {
+        if (logged) Misc.msg(log.toString());
+        byte[] b = outBytes.toByteArray();
+        write(c, b, 0, b.length);
+      }
+      c.key.interestOps(SelectionKey.OP_READ | (c.rest != null ? SelectionKey.OP_WRITE : 0));
+    }
+    catch (IOException e) {
+      closed(c, e);
+    }
+    catch (CancelledKeyException e) {
+      closed(c, null);
+    }
+  }
+
+  // @return true if all bytes were written, otherwise c.rest is set
+  private boolean write(Connection c, byte[] b, int off, int len) throws IOException
+  {
+    while (len > 0) {
+      writeBuf.clear();
+      int n = Math.min(len, writeBuf.capacity());
+      writeBuf.put(b, off, n);
+      writeBuf.flip();
+      c.ch.write(writeBuf);
+      int w = n - writeBuf.remaining();
+      off += w;
+      len -= w;
+      if (writeBuf.hasRemaining()) {
+        c.rest = Arrays.copyOfRange(b, off, off + len);
+        c.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // I/O problem or EOF: close channel and let the client terminate
+  // after the lines received so far
+  private void closed(Connection c, IOException e)
+  {
+    if (c.key != null) c.key.cancel();
+    if (c.closed) return;
+    if (e != null) Misc.msg(e.toString());
+    close(c);
+    c.lines.add(EOF);
+    dispatch(c);
+  }
+}
@@ -0,0 +1,364 @@
+/** Perfect information Monte Carlo player.
+ *
+ * Cardplay: samples worlds consistent with what the player knows
+ * (SimpleState.assignRandomCards: own hand, played cards, voids, known
+ * skat) and evaluates all legal cards in each world with the double
+ * dummy solver. Worlds are solved in parallel on a ForkJoinPool until
+ * the time budget is used up, the player is interrupted or MAX_WORLDS
+ * worlds have been solved. Pool and transposition table are shared by
+ * all PIMCPlayers in the process (several seats or bots). The card with the best average value wins.
+ * If there are at most MAX_WORLDS consistent worlds, each of them is
+ * solved once instead (WorldEnumerator).
+ *
+ * Bidding, skat and declaration use simple hand evaluation rules.
+ *
+ * licensed under GPLv3
+ */
+
+package client;
+
+import common.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+public class PIMCPlayer extends Player
+{
+  static final int MAX_WORLDS = 1000; // per move
+  static final double TIME_USED = 0.8; // fraction of per move time budget
+
+  static final int TT_LOG2_SIZE = 20; // ~16MB
+
+  private static ForkJoinPool sharedPool;
+  private static TransTable sharedTT;
+
+  final int threads;
+  final ForkJoinPool pool;
+  final TransTable tt; // shared by all solvers
+  final ThreadLocal<DDSolver> solvers = new ThreadLocal<DDSolver>() {
+    @Override protected DDSolver initialValue() {
+      return new DDSolver(tt);
+    }
+  };
+  final AtomicLong seeds = new AtomicLong();
+
+  int worldsSolved; // in last cardplay move
+
+  public PIMCPlayer()
+  {
+    this(Runtime.getRuntime().availableProcessors());
+  }
+
+  /** use given number of search threads (tasks), shared pool and table */
+  public PIMCPlayer(int threads)
+  {
+    this(threads, sharedPool(), sharedTransTable());
+  }
+
+  /** use given number of search tasks, pool and transposition table */
+  public PIMCPlayer(int threads, ForkJoinPool pool, TransTable tt)
+  {
+    setName("PIMC");
+    this.threads = threads;
+    this.pool = pool;
+    this.tt = tt;
+    resetHelper();
+  }
+
+  /** @return pool shared by all players in this process */
+  public static synchronized ForkJoinPool sharedPool()
+  {
+    if (sharedPool == null)
+      sharedPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+    return sharedPool;
+  }
+
+  /** @return transposition table shared by all players in this process */
+  public static synchronized TransTable sharedTransTable()
+  {
+    if (sharedTT == null)
+      sharedTT = new TransTable(TT_LOG2_SIZE);
+    return sharedTT;
+  }
+
+  public void resetHelper()
+  {
+    // table isn't cleared: keys include game type and declarer
+    seeds.set(new Date().getTime());
+  }
+
+  public void gameChangeHelper(SimpleGame g)
+  {
+    // do nothing
+  }
+
+  public void gameOverHelper(String gameHist)
+  {
+    // do nothing
+  }
+
+  /** @return number of worlds solved for last card move */
+  public int getWorldsSolved() { return worldsSolved; }
+
+  public String chooseMoveHelper(SimpleGame g, double time)
+  {
+    SimpleState st = g.getCurrentState();
+    int me = st.getToMove();
+    int hand = st.getHand(me);
+
+    switch (st.getPhase()) {
+
+    case SimpleState.BID: {
+      int bid = st.nextBid();
+      if (bid > 0 && bid <= bidLimit(hand)) return "" + bid;
+      return "p";
+    }
+
+    case SimpleState.ANSWER:
+      if (st.getMaxBid() <= bidLimit(hand)) return "y";
+      return "p";
+
+    case SimpleState.SKAT_OR_HAND_DECL:
+      return "s";
+
+    case SimpleState.DISCARD_AND_DECL: {
+      // picked up skat cards are stored separately until discarded
+      int cards = hand | st.getSkat();
+      int code;
+      if (st.getDiscardHalfPhase()) {
+        // declaration already made: only discard
+        int t = st.getGameDeclaration().type;
+        code = chooseDiscard(cards, t);
+        code = MoveCode.discard(MoveCode.cardIndex(code), MoveCode.cardIndex2(code));
+      } else {
+        code = chooseDeclDiscard(cards, st.getMaxBid());
+      }
+      int d0 = MoveCode.cardIndex(code), d1 = MoveCode.cardIndex2(code);
+      if (Integer.bitCount(cards) != 12 || d0 == d1 ||
+          (cards & (1 << d0)) == 0 || (cards & (1 << d1)) == 0)
+        Misc.err("PIMCPlayer: bad discard " + MoveCode.toString(code) + " " + Hand.toString(cards, false));
+      return MoveCode.toString(code);
+    }
+
+    case SimpleState.CARDPLAY:
+      return Card.fromIndex(chooseCard(st, time)).toString();
+    }
+
+    Misc.err("PIMCPlayer: unexpected phase " + st.getPhase());
+    return null;
+  }
+
+  // cardplay -------------------------------------------------------
+
+  /** @return index of best card in cardplay state st */
+  int chooseCard(SimpleState st, double time)
+  {
+    final int me = st.getToMove();
+    final int legal = st.legalCards();
+    worldsSolved = 0;
+
+    if (Integer.bitCount(legal) == 1)
+      return Integer.numberOfTrailingZeros(legal);
+
+    tt.newSearch(); // entries of earlier decisions are replaced first
+
+    // spread remaining time over remaining own moves
+    double budget = TIME_USED * time / Math.max(1, st.numCards(me));
+    final long deadline = System.nanoTime() + (long)(budget * 1e9);
+    final SimpleState root = SimpleState.createCopy(st);
+    final AtomicInteger worlds = new AtomicInteger();
+    final GameDeclaration decl = root.getGameDeclaration();
+    final boolean declSide = me == root.getDeclarer();
+    final ArrayList<int[]> exact = exactWorlds(root, me);
+    final int maxWorlds = exact != null ? exact.size() : MAX_WORLDS;
+
+    ArrayList<Callable<double[]>> tasks = new ArrayList<Callable<double[]>>();
+
+    for (int t=0; t < threads; t++) {
+      tasks.add(new Callable<double[]>() {
+          public double[] call() {
+            DDSolver solver = solvers.get();
+            Random rng = new Random(seeds.incrementAndGet() * 0x9e3779b97f4a7c15L);
+            SimpleState w = SimpleStatePool.copy(root);
+            int[] cards = new int[10], values = new int[10];
+            double[] sum = new double[33]; // [32]: number of worlds
+            int k;
+
+            // first world is always solved
+            while ((k = worlds.getAndIncrement()) < maxWorlds &&
+                   (k == 0 || (!isInterrupted() && System.nanoTime() < deadline))) {
+
+              w.inPlaceCopy(root);
+              if (exact != null) {
+                w.setWorld(exact.get(k));
+              } else if (!w.assignRandomCards(rng, me)) {
+                break;
+              }
+
+              int n = solver.solveMoves(w, cards, values);
+              for (int i=0; i < n; i++) {
+                double u = utility(decl, values[i]);
+                sum[cards[i]] += declSide ? u : -u;
+              }
+              sum[32]++;
+            }
+            SimpleStatePool.release(w);
+            return sum;
+          }
+        });
+    }
+
+    double[] total = new double[33];
+    try {
+      for (Future<double[]> f : pool.invokeAll(tasks)) {
+        double[] sum = f.get();
+        for (int i=0; i < 33; i++) total[i] += sum[i];
+      }
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    catch (ExecutionException e) {
+      Misc.err("PIMCPlayer: " + e.getCause());
+    }
+
+    worldsSolved = (int)total[32];
+
+    int best = -1;
+    double bestValue = 0;
+    for (int l = legal; l != 0; l &= l - 1) {
+      int c = Integer.numberOfTrailingZeros(l);
+      if (best < 0 || total[c] > bestValue) {
+        best = c;
+        bestValue = total[c];
+      }
+    }
+    return best;
+  }
+
+  /** @return all worlds consistent with what player me knows in st,
+      null if there are more than MAX_WORLDS */
+  static ArrayList<int[]> exactWorlds(SimpleState st, int me)
+  {
+    WorldEnumerator e = new WorldEnumerator(st, me);
+    final ArrayList<int[]> list = new ArrayList<int[]>();
+    java.util.function.Consumer<int[]> add = new java.util.function.Consumer<int[]>() {
+      public void accept(int[] w) { list.add(w); }
+    };
+
+    while (e.tryAdvance(add)) {
+      if (list.size() > MAX_WORLDS) return null;
+    }
+    return list.isEmpty() ? null : list;
+  }
+
+  // declarer's utility of solver value v: winning first, then points
+  static double utility(GameDeclaration decl, int v)
+  {
+    if (decl.type == GameDeclaration.NULL_GAME) return v;
+
+    int need = 61;
+    if (decl.schneiderAnnounced) need = 90;
+    return (v >= need ? 1 : 0) + v / 1000.0;
+  }
+
+  // bidding and declaration ----------------------------------------
+
+  // @return trump cards of hand in game type t
+  static int trumps(int hand, int t)
+  {
+    return hand & SimpleState.getFollowMask(t, Card.RANK_JACK); // jack led = trump
+  }
+
+  static int aces(int hand)
+  {
+    return hand & (0x01010101 << Card.RANK_ACE);
+  }
+
+  /** @return game type hand is good enough for (10 or 12 cards),
+      NO_GAME if none */
+  static int bestGameType(int hand)
+  {
+    int n = Integer.bitCount(hand);
+    int jacks = Integer.bitCount(trumps(hand, GameDeclaration.GRAND_GAME));
+    int aces = Integer.bitCount(aces(hand));
+
+    if (jacks >= 3 && aces >= 2 || jacks >= 2 && aces >= 3)
+      return GameDeclaration.GRAND_GAME;
+
+    int best = GameDeclaration.NO_GAME, bestStrength = 0;
+    for (int t=GameDeclaration.DIAMONDS_GAME; t <= GameDeclaration.CLUBS_GAME; t++) {
+      int tc = Integer.bitCount(trumps(hand, t));
+      int sideAces = Integer.bitCount(aces(hand) & ~trumps(hand, t));
+      int strength = 2 * tc + jacks + sideAces;
+      if (tc >= n/2 && tc + sideAces >= n*7/10 && strength > bestStrength) {
+        best = t;
+        bestStrength = strength;
+      }
+    }
+    return best;
+  }
+
+  /** @return highest bid for hand, 0 if we should pass */
+  static int bidLimit(int hand)
+  {
+    int t = bestGameType(hand);
+    if (t == GameDeclaration.NO_GAME) return 0;
+    return GameDeclaration.trumpMultiplier(hand, t) * GameDeclaration.baseValue(t);
+  }
+
+  /** @return MoveCode DECL_DISCARD move for 12 card hand */
+  static int chooseDeclDiscard(int hand, int maxBid)
+  {
+    int t = bestGameType(hand);
+
+    if (t == GameDeclaration.NO_GAME ||
+        GameDeclaration.trumpMultiplier(hand, t) * GameDeclaration.baseValue(t) < maxBid) {
+      // pick game type with most trumps and high enough value
+      int bestTrumps = -1;
+      for (int i=GameDeclaration.DIAMONDS_GAME; i <= GameDeclaration.GRAND_GAME; i++) {
+        if (GameDeclaration.trumpMultiplier(hand, i) * GameDeclaration.baseValue(i) < maxBid)
+          continue;
+        int tc = Integer.bitCount(trumps(hand, i));
+        if (i == GameDeclaration.GRAND_GAME) tc += Integer.bitCount(aces(hand));
+        if (tc > bestTrumps) {
+          t = i;
+          bestTrumps = tc;
+        }
+      }
+      if (t == GameDeclaration.NO_GAME) t = GameDeclaration.GRAND_GAME; // lost anyway
+    }
+
+    int d = chooseDiscard(hand, t);
+    return MoveCode.declDiscard(MoveCode.decl(t, false, false, false, false),
+                                MoveCode.cardIndex(d), MoveCode.cardIndex2(d));
+  }
+
+  /** @return MoveCode DISCARD move for 12 card hand in game type t */
+  static int chooseDiscard(int hand, int t)
+  {
+    // discard: no trumps and aces if possible; prefer unprotected tens,
+    // high cards and cards from short suits
+    int cand = hand & ~trumps(hand, t) & ~aces(hand);
+    if (Integer.bitCount(cand) < 2) cand = hand & ~aces(hand);
+    if (Integer.bitCount(cand) < 2) cand = hand;
+
+    int d0 = -1, d1 = -1, s0 = -1, s1 = -1;
+    for (int l = cand; l != 0; l &= l - 1) {
+      int c = Integer.numberOfTrailingZeros(l);
+      int suit = Card.index2Suit(c), rank = Card.index2Rank(c);
+      int suitCards = hand & Card.SUIT_MASK[suit] & ~trumps(hand, t);
+      int s = Card.points[rank] + 3 * (8 - Integer.bitCount(suitCards));
+      if (rank == Card.RANK_TEN && (aces(hand) & suitCards) == 0) s += 20;
+
+      if (s > s0) {
+        d1 = d0; s1 = s0;
+        d0 = c;  s0 = s;
+      } else if (s > s1) {
+        d1 = c;  s1 = s;
+      }
+    }
+
+    return MoveCode.discard(d0, d1);
+  }
+}
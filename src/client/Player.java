@@ -15,7 +15,7 @@ import common.*;
 public abstract class Player
 {
   String name;
-  boolean interrupted; // true => player must stop move computation
+  volatile boolean interrupted; // true => player must stop move computation (read by search threads)
   String context = ""; // for c++ to differentiate players
 
   SimpleGame currentGame; // The last game on which the player was working
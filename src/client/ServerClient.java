@@ -1,4 +1,6 @@
 // Card server client, adds network connection to ServiceClient
+//
+// uses a reader and a writer thread, or a shared ConnectionLoop
 
 // (c) Michael Buro, licensed under GPLv3
 
@@ -7,11 +9,16 @@ package client;
 import java.util.*;
 import java.io.*;
 import java.net.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
 import common.*;
 
 public class ServerClient
 {
   static final boolean DBG = true;
+  static final int QUEUE_WARN = 256;  // report writer backlog when reaching this size
+  static final int QUEUE_SIZE = 4096; // ... and every QUEUE_SIZE messages beyond
   
   private ServiceClient.ServiceMsgHandler handler;
   private String place;
@@ -23,9 +30,16 @@ public class ServerClient
   private BufferedReader input;
   private ReaderThread rt;
   private WriterThread wt;
+  private ConnectionLoop loop;            // null: use threads
+  private ConnectionLoop.Connection conn;
   
   ServiceClient client;
 
+  public ServerClient() { }
+
+  /** connection will be served by loop instead of own threads */
+  public ServerClient(ConnectionLoop loop) { this.loop = loop; }
+
   public final static String ERR_CONNECTION             = "_connection_error";
   public final static String ERR_LOGIN_EXPECTED_PW      = "_login_error_expected_pw";
   public final static String ERR_LOGIN_EXPECTED_WELCOME = "_login_error_expected_welcome";  
@@ -47,9 +61,13 @@ public class ServerClient
     clientId = clientId_;
 
     try {
-      socket = new Socket(host, port);
-      input = new BufferedReader(new InputStreamReader(new BufferedInputStream(socket.getInputStream()), "UTF8"));
-      output = new BufferedWriter(new OutputStreamWriter(new BufferedOutputStream(socket.getOutputStream()), "UTF8"));
+      if (loop != null) {
+        conn = loop.connect(this, host, port);
+      } else {
+        socket = new Socket(host, port);
+        input = new BufferedReader(new InputStreamReader(new BufferedInputStream(socket.getInputStream()), "UTF8"));
+        output = new BufferedWriter(new OutputStreamWriter(new BufferedOutputStream(socket.getOutputStream()), "UTF8"));
+      }
     }
     catch (Throwable e) {
       return ERR_CONNECTION;
@@ -57,18 +75,18 @@ public class ServerClient
 
     try {
     
-      output.write(clientId+"\n"); output.flush();
+      writeLine(clientId);
       Misc.msg("SENT: " + clientId);
-      String l = input.readLine();
+      String l = readLine();
       Misc.msg("RCVD: " + l);
       if (!l.equals("password:")) {
         return ERR_LOGIN_EXPECTED_PW;
       }
 
-      output.write(passwd_+"\n"); output.flush();      
+      writeLine(passwd_);
       Misc.msg("SENT: " + passwd_);
       
-      l = input.readLine();
+      l = readLine();
       Misc.msg("RCVD: " + l);
 
       if (!l.startsWith("Welcome")) {
@@ -103,7 +121,7 @@ public class ServerClient
 	    Misc.sleep(500);
 	  } else {
 	    String d = c.replace('_', ' ');
-	    output.write(d + '\n'); output.flush();
+	    writeLine(d);
 	    Misc.msg("SENT: " + d);
 	  }
 	}
@@ -113,30 +131,55 @@ public class ServerClient
       return "communication problem";
     }
 
+    if (loop != null) {
+      try {
+        loop.register(conn);
+      }
+      catch (IOException e) {
+        return ERR_CONNECTION;
+      }
+      return null; // OK
+    }
+
     // connected, start read/write threads
 
     rt = new ReaderThread();
     rt.start();
 
     wt = new WriterThread();
-    wt.start();
+    wt.start(); // messages sent before it runs wait in the queue
+
+    return null; // OK
+  }
 
-    // ensure writer thread is waiting on queue so that first message
-    // is sent right away
-    while (!wt.waiting) {
-      Misc.sleep(1);
+  // login: blocking line I/O
+
+  private void writeLine(String line) throws IOException
+  {
+    if (conn != null) {
+      conn.writeLine(line);
+    } else {
+      output.write(line + '\n');
+      output.flush();
     }
+  }
 
-    return null; // OK
+  private String readLine() throws IOException
+  {
+    return conn != null ? conn.readLine() : input.readLine();
   }
 
   public void terminate()
   {
+    if (conn != null) {
+      loop.close(conn);
+      handler.handleServiceMsg(client.newDisconnectMsg(), "");
+      return;
+    }
+
     rt.dead = true;
     wt.dead = true;
-    synchronized (wt.queue) {
-      wt.queue.notifyAll(); // wake up writer thread
-    }
+    wt.wakeUp();
 
     try {
       socket.close();
@@ -153,9 +196,54 @@ public class ServerClient
 
   synchronized public void send(String msg)
   {
+    if (conn != null) {
+      loop.send(conn, msg);
+      return;
+    }
     if (wt == null) return;
     wt.write(msg);
   }
+
+  // handle line received from server
+  void receivedLine(String line)
+  {
+    int l = line.length();
+    if (l < 1000) {
+      Misc.msg(AsyncLog.INFO, "RCVD: '", line, "'");
+    } else if (Misc.isLogged(AsyncLog.INFO)) {
+      Misc.msg(AsyncLog.INFO, "RCVD: '", line.substring(0, 1000), "' ...");
+    }
+          
+    ServiceClient.ServiceMsg sm;
+
+    try {
+
+      synchronized (this) { // if not synchronized, current trick gfx gets confused!
+        sm = client.received(line);
+      }
+
+      if (sm != null) {
+        handler.handleServiceMsg(sm, line);
+      } else {
+        Misc.msg("message " + line + " not handled!");
+      }
+    }
+    catch (Throwable e) {
+      Misc.exception(e);
+    }
+  }
+
+  // append log line for sent message to sb
+  static void appendSentLog(StringBuilder sb, String msg)
+  {
+    int l = msg.length();
+    sb.append("SENT: '");
+    if (l < 100) {
+      sb.append(msg).append('\'');
+    } else {
+      sb.append(msg, 0, 100).append("' ...");
+    }
+  }
   
   // read loop when client is connected
 
@@ -182,30 +270,7 @@ public class ServerClient
 	
           if (line == null) throw new IOException("empty line");
 
-          int l = line.length();
-          if (l < 1000) {
-            Misc.msg("RCVD: '" + line + "'");
-          } else {
-            Misc.msg("RCVD: '" + line.substring(0, 1000) + "' ...");
-          }
-          
-	  ServiceClient.ServiceMsg sm;
-
-          try {
-
-            synchronized (getThis()) { // if not synchronized, current trick gfx gets confused!
-              sm = client.received(line);
-            }
-
-            if (sm != null) {
-              handler.handleServiceMsg(sm, line);
-            } else {
-              Misc.msg("message " + line + " not handled!");
-            }
-          }
-          catch (Throwable e) {
-            Misc.exception(e);
-          }
+          receivedLine(line);
         }
       } 
 
@@ -232,20 +297,33 @@ public class ServerClient
 
   class WriterThread extends Thread
   {
-    public boolean dead = false; // true terminates loop  
-    public LinkedList<String> queue = new LinkedList<String>();
-    public boolean waiting = false;
+    public volatile boolean dead = false; // true terminates loop  
+
+    // lock-free: senders add and unpark the writer, which drains all
+    // queued messages and flushes once per batch
+    private final ConcurrentLinkedQueue<String> queue = new ConcurrentLinkedQueue<String>();
+    private final AtomicInteger queued = new AtomicInteger();
   
     public WriterThread()
     {
     }
 
+    // never blocks: senders include the reader thread (handlers answer
+    // messages), which must keep reading even if the server doesn't read
+    // our output for a while. A growing backlog is only reported
     public void write(String msg)
     {
-      synchronized (queue) {
-        queue.add(msg);
-        queue.notifyAll();
+      int n = queued.incrementAndGet();
+      if (n == QUEUE_WARN || n % QUEUE_SIZE == 0) {
+        Misc.warn("WriterThread: " + n + " messages queued");
       }
+      queue.add(msg);
+      LockSupport.unpark(this);
+    }
+
+    public void wakeUp()
+    {
+      LockSupport.unpark(this);
     }
   
     public void run()
@@ -253,44 +331,38 @@ public class ServerClient
       if (DBG)
         Misc.msg("WriterThread created");    
 
+      StringBuilder log = new StringBuilder();
+
       try {
 
         while (!dead) {
 
           // wait for message in queue
 
-          synchronized (queue) {
-            waiting = true;
-            queue.wait();
+          while (queue.isEmpty() && !dead) {
+            LockSupport.park(this);
           }
 
           if (dead) break;
-	
-          boolean done;
-        
-          do { 
-          
-            String msg = null;
-
-            synchronized (queue) {
-              done = queue.isEmpty();
-              if (!done) 
-                msg = queue.remove(0);
-            }
-
-            if (!done) {
-              output.write(msg + '\n');
-              output.flush();
 
-	      int l = msg.length();
-	      if (l < 100) {
-		Misc.msg("SENT: '" + msg + "'");
-	      } else {
-		Misc.msg("SENT: '" + msg.substring(0, 100) + "' ...");
-	      }
+          int n = 0;
+          String msg;
+          boolean logged = Misc.isLogged(AsyncLog.INFO);
+          log.setLength(0);
+        
+          while ((msg = queue.poll()) != null) {
+            output.write(msg);
+            output.write('\n');
+            if (logged) {
+              if (n > 0) log.append('\n');
+              appendSentLog(log, msg);
             }
+            n++;
+          }
 
-          } while (!done);
+          output.flush();
+          queued.addAndGet(-n);
+          if (logged) Misc.msg(log.toString());
         }
       }
       catch (Throwable e) {
@@ -305,6 +377,4 @@ public class ServerClient
         Misc.msg("WriterThread terminating");    
     }
   }
-
-  private ServerClient getThis() { return this; }
 }
@@ -38,6 +38,7 @@ public class ServiceClient implements TableCallbacks
   public String clientToInvite(String invPlayer, Table table) { Misc.err("not implemented 2"); return null; }
   public void saveGame(String sgf) { Misc.err("not implemented 3"); }
   public void saveTable(String id, StringBuffer sb) { Misc.err("not implemented 99"); }      
+  public String journalFile(String id) { return null; } // dummy
   public String archive(Table table, StringBuffer sb) { Misc.err("not implemented 100"); return ""; }
   public void send(String to, String what) { Misc.err("not implemented 4"); }
   public void sendToAll(String what) { Misc.err("not implemented 111"); }  
@@ -60,26 +61,65 @@ public class ServiceClient implements TableCallbacks
    */
   public ServiceMsg received(String msg)
   {
-    String[] parts = msg.split(" ");
-    SReader sr = new SReader(msg);
-
-    if (parts[0].equals("")) {  // empty message
-      ServiceMsg sm = new CatchAllMsg();
-      sm.parse(parts, sr);
-      return sm;
+    curMsg = msg;
+    curParts = null;
+    curReader = null;
+    tokens.reset(msg);
+
+    // only message types for the first word (and the table command) can
+    // match, everything else (including empty messages) is caught by
+    // catchAllMsg
+
+    ServiceMsg m = null;
+
+    if (tokens.next()) {
+      if (tokens.wordEquals("table")) {
+        if (tokens.skipWords(2) && tokens.next())
+          m = parse(tableMsgTypes.get(tokens.wordString()));
+        if (m == null) m = parse(tableStopMsg);
+      } else {
+        m = parse(msgTypesByWord.get(tokens.wordString()));
+      }
     }
 
-    for (ServiceMsg m : msgTypes) {
-      if (m.parse(parts, sr)) {
+    if (m == null) m = parse(catchAllMsg);
+    if (m == null) Misc.msg("RECEIVED BUT NOT HANDLED: " + msg);
+    
+    return m;
+  }
+
+  // @return first of types that parses message, null if none
+  private ServiceMsg parse(ServiceMsg[] types)
+  {
+    if (types == null) return null;
+    for (ServiceMsg m : types) {
+      if (parse(m) != null) {
 	return m;
       }
     }
-
-    Misc.msg("RECEIVED BUT NOT HANDLED: " + msg);
-    
     return null;
   }
 
+  private ServiceMsg parse(ServiceMsg type)
+  {
+    tokens.reset(curMsg);
+    return type.parse(tokens) ? type : null;
+  }
+
+  // split message and reader, only created for handlers that need them
+
+  private String[] parts()
+  {
+    if (curParts == null) curParts = curMsg.split(" ");
+    return curParts;
+  }
+
+  private SReader reader()
+  {
+    if (curReader == null) curReader = new SReader(curMsg);
+    return curReader;
+  }
+
 
   public interface ServiceMsgHandler
   {
@@ -87,6 +127,9 @@ public class ServiceClient implements TableCallbacks
   }
 
   abstract public class ServiceMsg {
+    // t: message from the beginning; by default the message is split
+    // into words and parsed by parse(String[], SReader)
+    boolean parse(Tokenizer t) { return parse(parts(), reader()); }
     abstract boolean parse(String[] s, SReader sr);
   }
 
@@ -220,10 +263,10 @@ public class ServiceClient implements TableCallbacks
         if (bn > 0) table.setTourny(bn);
 
         // skip prefix
-        for (int i=0; i < 5; i++) sr.nextWord();
+        tokens.skipWords(5);
 
         if (s.length >= 6) {
-          table.readScoreSheet(sr);
+          table.readScoreSheet(tokens);
         }
       }
       
@@ -416,21 +459,26 @@ public class ServiceClient implements TableCallbacks
     public String move;
     
     // table <tableid> <player> play <playmsg>
-    public boolean parse(String[] s, SReader sr)
+    public boolean parse(Tokenizer t)
     {
-      if (s.length < 4 || !s[0].equals("table") || !s[3].equals("play"))
+      if (!t.nextWordEquals("table")) return false;
+      String tableId = t.nextWord();
+      String viewer = t.nextWord();
+      if (viewer == null || !t.nextWordEquals("play"))
 	return false;
 
-      table = findTable(Table.getTableViewerId(s[1], s[2]));
+      table = findTable(Table.getTableViewerId(tableId, viewer));
 
-      sr.nextWord(); sr.nextWord(); sr.nextWord(); sr.nextWord();
-
-      player = s[4];
-      move   = s[5];
+      int m = t.mark();
+      player = t.nextWord();
+      move   = t.nextWord();
+      t.rewind(m);
       
-      table.handlePlayMsg(sr);
+      table.handlePlayMsg(t);
       return true;
     }
+
+    public boolean parse(String[] s, SReader sr) { return false; }
   }
 
   public class TableStartMsg extends ServiceMsg
@@ -478,19 +526,23 @@ public class ServiceClient implements TableCallbacks
     public Table table;
 
     // table <tableid> state <tableinfo...>
-    public boolean parse(String[] s, SReader sr)
+    public boolean parse(Tokenizer t)
     {
-      if (s.length < 4 || !s[0].equals("table") || !s[3].equals("state"))
+      if (!t.nextWordEquals("table")) return false;
+      String tableId = t.nextWord();
+      String viewer = t.nextWord();
+      if (viewer == null || !t.nextWordEquals("state"))
 	return false;
 
-      table = findTable(Table.getTableViewerId(s[1], s[2]));
+      table = findTable(Table.getTableViewerId(tableId, viewer));
 
       // update table state
       
-      sr.nextWord(); sr.nextWord(); sr.nextWord(); sr.nextWord(); 
-      table.handleStateMsg(sr);
+      table.handleStateMsg(t);
       return true;
     }
+
+    public boolean parse(String[] s, SReader sr) { return false; }
   }
 
   public class TableGoMsg extends ServiceMsg
@@ -552,14 +604,14 @@ public class ServiceClient implements TableCallbacks
       if (s.length < 14 || !s[0].equals("tour") || !s[1].equals("+"))
 	return false;
 
-      sr.nextWord(); sr.nextWord();
+      tokens.skipWords(2);
 
       td = new TournamentData();
-      String e = td.fromInfoString(sr);
+      String e = td.fromInfoString(tokens);
 
       if (e != null) return false;
 
-      e = sr.nextWord();
+      e = tokens.nextWord();
 
       if (e == null) return false;
       
@@ -632,32 +684,43 @@ public class ServiceClient implements TableCallbacks
     return new DisconnectMsg();
   }
   
-  ServiceMsg[] msgTypes = new ServiceMsg[] {
-    new ClientArrivedOrUpdateMsg(),
-    new ClientDepartedMsg(),
-    new YellMsg(),
-    new TellMsg(),
-    new TextMsg(),
-    new CreateMsg(),
-    new DestroyMsg(),
-    new TableAddedOrUpdateMsg(),
-    new TableRemovedMsg(),
-    new TablePlayMsg(),
-    new TableStateMsg(),
-    new TableTellMsg(),
-    new TableStartMsg(),    
-    new TableEndMsg(),
-    new TableErrorMsg(),
-    new TableGoMsg(),
-    new TableStopMsg(), 
-    new InviteMsg(),
-    new FingerMsg(),
-    new TimeMsg(),
-    new TourAddedOrUpdateMsg(),
-    new TourRemovedMsg(),    
-    new ErrorMsg(),
-    new CatchAllMsg()
-  };
+  // message objects are reused, received() dispatches on the first word
+
+  private HashMap<String, ServiceMsg[]> msgTypesByWord = new HashMap<String, ServiceMsg[]>();
+  {
+    msgTypesByWord.put("clients", new ServiceMsg[] { new ClientArrivedOrUpdateMsg(), new ClientDepartedMsg() });
+    msgTypesByWord.put("yell",    new ServiceMsg[] { new YellMsg() });
+    msgTypesByWord.put("tell",    new ServiceMsg[] { new TellMsg() });
+    msgTypesByWord.put("text",    new ServiceMsg[] { new TextMsg() });
+    msgTypesByWord.put("create",  new ServiceMsg[] { new CreateMsg() });
+    msgTypesByWord.put("destroy", new ServiceMsg[] { new DestroyMsg() });
+    msgTypesByWord.put("tables",  new ServiceMsg[] { new TableAddedOrUpdateMsg(), new TableRemovedMsg() });
+    msgTypesByWord.put("invite",  new ServiceMsg[] { new InviteMsg() });
+    msgTypesByWord.put("finger",  new ServiceMsg[] { new FingerMsg() });
+    msgTypesByWord.put("time",    new ServiceMsg[] { new TimeMsg() });
+    msgTypesByWord.put("tour",    new ServiceMsg[] { new TourAddedOrUpdateMsg(), new TourRemovedMsg() });
+    msgTypesByWord.put("error",   new ServiceMsg[] { new ErrorMsg() });
+  }
+
+  // table <tableid> <player> <cmd> ...
+  private HashMap<String, ServiceMsg[]> tableMsgTypes = new HashMap<String, ServiceMsg[]>();
+  {
+    tableMsgTypes.put("play",  new ServiceMsg[] { new TablePlayMsg() });
+    tableMsgTypes.put("state", new ServiceMsg[] { new TableStateMsg() });
+    tableMsgTypes.put("tell",  new ServiceMsg[] { new TableTellMsg() });
+    tableMsgTypes.put("start", new ServiceMsg[] { new TableStartMsg() });
+    tableMsgTypes.put("end",   new ServiceMsg[] { new TableEndMsg() });
+    tableMsgTypes.put("error", new ServiceMsg[] { new TableErrorMsg() });
+    tableMsgTypes.put("go",    new ServiceMsg[] { new TableGoMsg() });
+  }
+
+  private TableStopMsg tableStopMsg = new TableStopMsg(); // table <tableid> stop
+  private CatchAllMsg catchAllMsg = new CatchAllMsg();
+
+  private Tokenizer tokens = new Tokenizer(""); // reset for each message
+  private String curMsg;      // message being parsed
+  private String[] curParts;  // ... split into words, see parts()
+  private SReader curReader;  // see reader()
 
   ServiceClient getThis() { return this; }
 }
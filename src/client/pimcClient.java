@@ -0,0 +1,36 @@
+/**
+   pimcClient.java
+
+   Java Skat client using the parallel PIMC player (PIMCPlayer).
+
+   invoke like so:
+   
+   java -jar dist/pimcClient.jar "$@"
+
+   licensed under GPLv3
+*/
+
+package client;
+
+public class pimcClient extends AIClient
+{
+
+  public Player newPlayer()
+  {
+    return new PIMCPlayer();
+  }
+
+  public pimcClient(String[] args)
+  {
+    init(args);
+  }
+
+  /**
+   * @param args
+   *            the command line arguments
+   */
+  public static void main(String[] args)
+  {
+    pimcClient c = new pimcClient(args);
+  }
+}
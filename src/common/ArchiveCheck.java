@@ -0,0 +1,552 @@
+// re-validates SGF game archives in parallel and writes a diff report
+//
+// files (directories are scanned recursively) are cut into blocks of
+// BLOCK_GAMES games; table archives (starting with #info) form one
+// block each because their header totals depend on all games. Blocks
+// are checked by a thread pool, the report is written in input order.
+//
+// each game is replayed with RE fixing (SgfParser VALIDATE mode, same
+// rules as SimpleGame.makeMove(..., fixResign)) and reported if
+//
+//   - it is illegal or incomplete
+//   - it doesn't end
+//   - the stored result R[...] differs from the recomputed GameResult
+//
+// for table archives the series statistics of the (last) #info header
+// (played, wins, last and total points per player) are recomputed like
+// in Table and compared; the recomputed ScoreSheet totals are listed
+// with differences. The stored scoresheet rows (rows= section, see
+// TableJournal) are compared with the recomputed ScoreSheet rows.
+//
+// report lines: "- " stored, "+ " recomputed. With -fix, files with
+// differences in results, totals, or rows are written to <file>.fixed
+// with R[...], header values, and the rows= section replaced (moves are
+// not rewritten). A rows= section that can't be recomputed (illegal or
+// unfinished games) but is wrong is dropped, Table.load() then replays
+// the games.
+//
+// usage:
+//   java -cp skatgui.jar common.ArchiveCheck [-fix] [-threads n] <report> <file|dir>...
+
+package common;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+public class ArchiveCheck
+{
+  static final int BLOCK_GAMES = 1000;
+  static final String HEADER_TAG = "#info";
+
+  static final int MAX_PLAYER_NUM = 4;
+  static final int HEADER_PLAYERS = 10; // index of first player in header tokens
+
+  private final boolean fix;
+  private final int threads;
+
+  // totals
+  private int fileNum, gameNum, illegalNum, unfinishedNum, resultNum, tableNum, totalsNum, rowsNum;
+
+  public ArchiveCheck(boolean fix, int threads)
+  {
+    this.fix = fix;
+    this.threads = threads;
+  }
+
+  // a piece of a file, checked by one task
+  static class Block
+  {
+    String file;
+    int firstGame;  // number of first game in file
+    String text;
+    boolean table;  // complete table archive
+  }
+
+  // result of checking a block
+  static class BlockResult
+  {
+    StringBuilder report = new StringBuilder();
+    String fixed;   // text with results and header repaired
+    boolean changed;
+    int games, illegal, unfinished, results, tables, totals, rows;
+  }
+
+  // collects what the check needs from a game
+  static class GameCheck extends SgfParser.Handler
+  {
+    String id, result, error;
+    String[] names = new String[3];
+    SimpleState end = new SimpleState(SimpleState.WORLD_VIEW);
+
+    public void gameStart()
+    {
+      id = result = error = null;
+      names[0] = names[1] = names[2] = null;
+    }
+
+    public void property(String label, String value)
+    {
+      if (label.equals("ID")) id = value;
+      else if (label.equals("R")) result = value;
+      else if (label.equals("P0")) names[0] = value;
+      else if (label.equals("P1")) names[1] = value;
+      else if (label.equals("P2")) names[2] = value;
+    }
+
+    public boolean gameEnd(String error, SimpleState s)
+    {
+      this.error = error;
+      end.inPlaceCopy(s);
+      return true;
+    }
+  }
+
+  // file being checked
+  static class FileState
+  {
+    String file;
+    Writer fixed;   // <file>.fixed, null if not fixing
+    boolean changed;
+  }
+
+  // submitted block
+  static class Pending
+  {
+    Future<BlockResult> result;
+    FileState fs;
+    boolean last;   // last block of file
+  }
+
+  /** check files and directories in paths, write report to reportFile
+      @return null if OK, error message otherwise */
+  public String run(List<String> paths, String reportFile)
+  {
+    ArrayList<String> files = new ArrayList<String>();
+    for (String p : paths) ArchiveIndex.collectFiles(new File(p), files);
+    Collections.sort(files);
+
+    ExecutorService pool = Executors.newFixedThreadPool(threads);
+    LinkedList<Pending> pending = new LinkedList<Pending>();
+
+    try {
+      PrintWriter report = new PrintWriter(new OutputStreamWriter(new FileOutputStream(reportFile), "UTF-8"));
+      try {
+        for (String file : files) {
+          if (file.endsWith(".fixed")) continue;
+          checkFile(file, pool, pending, report);
+        }
+        drain(pending, 0, report);
+        report.println(String.format("# %d files %d games: %d illegal %d unfinished %d results, " +
+                                     "%d tables: %d totals %d rows",
+                                     fileNum, gameNum, illegalNum, unfinishedNum, resultNum,
+                                     tableNum, totalsNum, rowsNum));
+      }
+      finally {
+        report.close();
+      }
+    }
+    catch (Exception e) {
+      return "check failed: " + e;
+    }
+    finally {
+      pool.shutdownNow();
+    }
+    return null;
+  }
+
+  // cut file into blocks and submit them, writes finished results
+  private void checkFile(String file, ExecutorService pool, LinkedList<Pending> pending,
+                         PrintWriter report)
+    throws Exception
+  {
+    fileNum++;
+    FileState fs = new FileState();
+    fs.file = file;
+    if (fix) fs.fixed = new OutputStreamWriter(new FileOutputStream(file + ".fixed"), "UTF-8");
+
+    BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"), 1 << 16);
+    try {
+      StringBuilder sb = new StringBuilder();
+      int games = 0, first = 0, c, last = 0;
+
+      br.mark(HEADER_TAG.length());
+      char[] head = new char[HEADER_TAG.length()];
+      int n = br.read(head);
+      boolean table = n == head.length && new String(head).equals(HEADER_TAG);
+      br.reset();
+
+      while ((c = br.read()) >= 0) {
+        sb.append((char)c);
+        if (c == ')' && last == ';') {
+          games++;
+          if (!table && games - first == BLOCK_GAMES) {
+            submit(fs, first, sb.toString(), false, false, pool, pending);
+            sb.setLength(0);
+            first = games;
+            drain(pending, threads * 2, report);
+          }
+        }
+        last = c;
+      }
+      submit(fs, first, sb.toString(), table, true, pool, pending);
+      drain(pending, threads * 2, report);
+    }
+    finally {
+      br.close();
+    }
+  }
+
+  private void submit(FileState fs, final int first, final String text, final boolean table,
+                      boolean last, ExecutorService pool, LinkedList<Pending> pending)
+  {
+    final String file = fs.file;
+    Pending p = new Pending();
+    p.fs = fs;
+    p.last = last;
+    p.result = pool.submit(new Callable<BlockResult>() {
+        public BlockResult call() {
+          Block b = new Block();
+          b.file = file;
+          b.firstGame = first;
+          b.text = text;
+          b.table = table;
+          return checkBlock(b);
+        }
+      });
+    pending.add(p);
+  }
+
+  // write results in order until at most n blocks are pending
+  private void drain(LinkedList<Pending> pending, int n, PrintWriter report)
+    throws Exception
+  {
+    while (pending.size() > n) {
+      Pending p = pending.removeFirst();
+      BlockResult r = p.result.get();
+      report.print(r.report);
+      gameNum += r.games;
+      illegalNum += r.illegal;
+      unfinishedNum += r.unfinished;
+      resultNum += r.results;
+      tableNum += r.tables;
+      totalsNum += r.totals;
+      rowsNum += r.rows;
+
+      FileState fs = p.fs;
+      if (fs.fixed == null) continue;
+
+      fs.fixed.write(r.fixed);
+      fs.changed |= r.changed;
+
+      if (p.last) {
+        fs.fixed.close();
+        String f = fs.file + ".fixed";
+        if (!fs.changed && !new File(f).delete())
+          Misc.msg("ArchiveCheck: can't delete " + f);
+      }
+    }
+  }
+
+  /** check games in b */
+  static BlockResult checkBlock(Block b)
+  {
+    BlockResult r = new BlockResult();
+    GameCheck gc = new GameCheck();
+    SgfParser parser = new SgfParser(gc, SgfParser.VALIDATE);
+    parser.setFixResign(true);
+    GameResult gr = new GameResult();
+    StringBuilder fixed = new StringBuilder();
+
+    String text = b.text;
+    String header = null;
+    int headerStart = -1;
+    SeriesStats stats = null;
+    ScoreSheet sheet = null;
+    ArrayList<ScoreSheet.Row> gameRows = null; // per game, null: not recomputed
+
+    if (b.table) {
+      headerStart = text.lastIndexOf(HEADER_TAG);
+      int end = text.indexOf('\n', headerStart);
+      header = text.substring(headerStart, end < 0 ? text.length() : end).trim();
+      stats = SeriesStats.fromHeader(header);
+      if (stats == null) {
+        r.report.append(b.file + ": illegal header\n- " + header + "\n");
+        b.table = false;
+      } else {
+        r.tables++;
+        sheet = new ScoreSheet(stats.playerNum, stats.names);
+        gameRows = new ArrayList<ScoreSheet.Row>();
+      }
+    }
+
+    int pos = 0;
+    int gameIndex = b.firstGame;
+
+    for (;;) {
+      int start = text.indexOf("(;", pos);
+      if (start < 0) break;
+      int end = text.indexOf(";)", start + 2);
+      if (end < 0) break;
+      end += 2;
+
+      fixed.append(text, pos, start);
+      String game = text.substring(start, end);
+      pos = end;
+      r.games++;
+
+      parser.parse(game);
+      String where = b.file + ": game " + gameIndex + " (ID " + gc.id + ")";
+      gameIndex++;
+
+      if (gc.error != null) {
+        r.illegal++;
+        r.report.append(where + ": illegal\n- " + gc.error + "\n");
+        fixed.append(game);
+        if (b.table) gameRows.add(null);
+        continue;
+      }
+
+      if (!gc.end.isFinished()) {
+        r.unfinished++;
+        r.report.append(where + ": not finished\n");
+        fixed.append(game);
+        if (b.table) gameRows.add(null);
+        continue;
+      }
+
+      gc.end.gameResult(gr);
+      String res = gr.toString();
+
+      if (gc.result == null || !gc.result.equals(res)) {
+        r.results++;
+        r.report.append(where + ": result\n- R[" + gc.result + "]\n+ R[" + res + "]\n");
+        game = replaceResult(game, res);
+      }
+      fixed.append(game);
+
+      if (b.table) {
+        stats.add(gc.names, gr);
+        ScoreSheet.Row row = sheet.new Row();
+        row.fromState(gc.end);
+        sheet.addRow(row);
+        gameRows.add(row);
+      }
+    }
+    int tail = fixed.length();
+    fixed.append(text, pos, text.length());
+
+    if (b.table) {
+      RowsSection rs = RowsSection.find(text, pos);
+      if (rs != null) {
+        String rows = checkRows(b, rs, gameRows, r);
+        if (rows != null) fixed.replace(tail + rs.start - pos, tail + rs.end - pos, rows);
+      }
+    }
+
+    if (b.table) {
+      String h = stats.toHeader(header);
+      if (!h.equals(header)) {
+        r.totals++;
+        StringBuilder sb = new StringBuilder();
+        for (int i=0; i < stats.playerNum; i++) {
+          sb.append(" " + sheet.totalsRow.cumulative[i].score);
+        }
+        r.report.append(b.file + ": totals\n- " + header + "\n+ " + h + "\n  scoresheet:" + sb + "\n");
+        fixed.replace(headerStart, headerStart + header.length(), h);
+      }
+    }
+
+    r.changed = r.results > 0 || r.totals > 0 || r.rows > 0;
+    r.fixed = fixed.toString();
+    return r;
+  }
+
+  // compare stored rows with recomputed rows (gameRows, one per game)
+  // @return replacement for the rows section, null if it is OK
+  static String checkRows(Block b, RowsSection rs, ArrayList<ScoreSheet.Row> gameRows, BlockResult r)
+  {
+    int gn = gameRows.size();
+    boolean complete = true;
+    int diffs = 0;
+
+    if (rs.size != gn || rs.rows.size() != gn) {
+      r.report.append(b.file + ": rows\n- " + TableJournal.ROWS_TAG + " " + rs.size +
+                      " (" + rs.rows.size() + " rows)\n+ " + TableJournal.ROWS_TAG + " " + gn + "\n");
+      diffs++;
+    }
+
+    StringBuilder sb = new StringBuilder();
+    sb.append(TableJournal.ROWS_TAG + " " + gn + "\n");
+
+    for (int i=0; i < gn; i++) {
+      String stored = i < rs.rows.size() ? rs.rows.get(i) : null;
+      ScoreSheet.Row row = gameRows.get(i);
+      if (row == null) {
+        if (stored == null) complete = false;
+        else sb.append(stored + "\n");
+        continue;
+      }
+      String res = row.toString();
+      if (stored != null && !stored.equals(res)) {
+        r.report.append(b.file + ": game " + (b.firstGame + i) + ": row\n- " + stored + "\n+ " + res + "\n");
+        diffs++;
+      }
+      sb.append(res + "\n");
+    }
+
+    if (diffs == 0) return null;
+    r.rows += diffs;
+    return complete ? sb.toString() : "";
+  }
+
+  // rows= section following the games of a table archive
+  static class RowsSection
+  {
+    int start, end; // text range
+    int size;       // n in "rows= n"
+    ArrayList<String> rows = new ArrayList<String>();
+
+    // @return section in text starting at pos, null if there is none
+    static RowsSection find(String text, int pos)
+    {
+      int i = text.indexOf(TableJournal.ROWS_TAG, pos);
+      if (i < 0 || text.substring(pos, i).trim().length() > 0) return null;
+
+      RowsSection rs = new RowsSection();
+      rs.start = i;
+      int e = text.indexOf('\n', i);
+      if (e < 0) e = text.length();
+      try {
+        rs.size = Integer.parseInt(text.substring(i + TableJournal.ROWS_TAG.length(), e).trim());
+      }
+      catch (NumberFormatException ex) {
+        rs.size = -1;
+      }
+      rs.end = e < text.length() ? e+1 : e;
+
+      // followed by R: lines
+      while (rs.end < text.length()) {
+        e = text.indexOf('\n', rs.end);
+        if (e < 0) e = text.length();
+        String line = text.substring(rs.end, e).trim();
+        if (!line.startsWith(TableJournal.ROW_TAG)) break;
+        rs.rows.add(line);
+        rs.end = e < text.length() ? e+1 : e;
+      }
+      return rs;
+    }
+  }
+
+  // @return game with R[...] value replaced by res
+  static String replaceResult(String game, String res)
+  {
+    int i = 0;
+    for (;;) {
+      i = game.indexOf("R[", i);
+      if (i < 0) return game;
+      char c = i > 0 ? game.charAt(i-1) : ';';
+      if (c == ']' || c == ';' || Character.isWhitespace(c)) break;
+      i += 2;
+    }
+    int j = game.indexOf(']', i);
+    if (j < 0) return game;
+    return game.substring(0, i+2) + res + game.substring(j);
+  }
+
+  // series statistics of a table, updated like in Table
+  static class SeriesStats
+  {
+    int playerNum;
+    String[] tokens;
+    String[] names = new String[MAX_PLAYER_NUM];
+    int[] played = new int[MAX_PLAYER_NUM];
+    int[] wins = new int[MAX_PLAYER_NUM];
+    int[] lastPts = new int[MAX_PLAYER_NUM];
+    int[] totalPts = new int[MAX_PLAYER_NUM];
+
+    // @return stats with names of header, null if header is illegal
+    static SeriesStats fromHeader(String header)
+    {
+      SeriesStats s = new SeriesStats();
+      s.tokens = header.split("\\s+");
+      try {
+        s.playerNum = Integer.parseInt(s.tokens[7]);
+        if (s.playerNum < 3 || s.playerNum > MAX_PLAYER_NUM ||
+            s.tokens.length < HEADER_PLAYERS + 5 * s.playerNum)
+          return null;
+      }
+      catch (RuntimeException e) {
+        return null;
+      }
+      for (int i=0; i < s.playerNum; i++) {
+        s.names[i] = s.tokens[HEADER_PLAYERS + 5 * i];
+      }
+      return s;
+    }
+
+    int index(String name)
+    {
+      for (int i=0; i < playerNum; i++) {
+        if (names[i].equals(name)) return i;
+      }
+      return -1;
+    }
+
+    // names: players in game
+    void add(String[] inGame, GameResult gr)
+    {
+      int[] resultIndex = new int[3];
+      for (int i=0; i < 3; i++) {
+        resultIndex[i] = index(inGame[i]);
+      }
+      // unknown players are skipped, like before
+      Table.addSeriesResult(gr, playerNum, names, resultIndex, played, wins, lastPts, totalPts);
+    }
+
+    // @return header with statistics replaced
+    String toHeader(String header)
+    {
+      String[] t = tokens.clone();
+      for (int i=0; i < playerNum; i++) {
+        int k = HEADER_PLAYERS + 5 * i;
+        t[k+1] = "" + played[i];
+        t[k+2] = "" + wins[i];
+        t[k+3] = "" + lastPts[i];
+        t[k+4] = "" + totalPts[i];
+      }
+      if (Arrays.equals(t, tokens)) return header; // keep original spacing
+
+      StringBuilder sb = new StringBuilder();
+      for (int i=0; i < t.length; i++) {
+        if (i > 0) sb.append(' ');
+        sb.append(t[i]);
+      }
+      return sb.toString();
+    }
+  }
+
+  public static void main(String[] args)
+  {
+    boolean fix = false;
+    int threads = Runtime.getRuntime().availableProcessors();
+    int i = 0;
+
+    for (; i < args.length; i++) {
+      if (args[i].equals("-fix")) fix = true;
+      else if (args[i].equals("-threads") && i+1 < args.length) threads = Integer.parseInt(args[++i]);
+      else break;
+    }
+
+    if (args.length - i < 2) {
+      Misc.msg("usage: java common.ArchiveCheck [-fix] [-threads n] <report> <file|dir>...");
+      return;
+    }
+
+    long t0 = System.currentTimeMillis();
+    ArchiveCheck ac = new ArchiveCheck(fix, threads);
+    String r = ac.run(Arrays.asList(args).subList(i+1, args.length), args[i]);
+    if (r != null) Misc.err(r);
+    Misc.msg(ac.gameNum + " games checked in " + (System.currentTimeMillis() - t0) + " msecs");
+  }
+}
@@ -0,0 +1,492 @@
+// sorted, memory-mapped index over SGF game archives
+//
+// build() scans SGF files (single games, saveGame outputs and table
+// archives archive/table/<date>/<table>/results.html.table; directories
+// are scanned recursively) and writes one entry per game and player,
+// sorted by (player, date, game type, table, file, offset). Queries
+// like "all grand games of player X in 2011" are a binary search plus
+// a short scan; readGame() then reads only the game's bytes.
+//
+// index file:
+//   int MAGIC, int VERSION, int fileNum, int nameNum, int tableNum,
+//   int entryNum, long entry offset
+//   strings: files, player names (sorted), table ids (sorted)
+//            (short length + UTF-8 bytes)
+//   entries (ENTRY_SIZE bytes each, starting at entry offset):
+//     int player, int date (yyyymmdd, 0: unknown), byte game type,
+//     byte seat (0..2), byte declarer (-1: none), byte 0, int table,
+//     int file, long offset of "(;", int length (up to ";)")
+//
+// usage:
+//   java -cp skatgui.jar common.ArchiveIndex build <index> <file|dir>...
+//   java -cp skatgui.jar common.ArchiveIndex query <index> <player>
+//        [<game type> [<from yyyymmdd> <to yyyymmdd>]]
+
+package common;
+
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+
+public class ArchiveIndex
+{
+  public static final int MAGIC   = 0x534b4958; // "SKIX"
+  public static final int VERSION = 1;
+  static final int ENTRY_SIZE = 32;
+
+  static final int E_PLAYER   = 0;
+  static final int E_DATE     = 4;
+  static final int E_TYPE     = 8;
+  static final int E_SEAT     = 9;
+  static final int E_DECLARER = 10;
+  static final int E_TABLE    = 12;
+  static final int E_FILE     = 16;
+  static final int E_OFFSET   = 20;
+  static final int E_LENGTH   = 28;
+
+  /** query result */
+  public static class Hit
+  {
+    public String file, player, table;
+    public long offset;
+    public int length, date, gameType, seat, declarer;
+
+    public String toString()
+    {
+      return file + " " + offset + " " + length + " " + date + " " + player +
+        " seat " + seat + " type " + gameType + " decl " + declarer + " table " + table;
+    }
+  }
+
+  private final RandomAccessFile raf;
+  private final MappedByteBuffer buf;
+  private final String[] files, names, tables;
+  private final HashMap<String, Integer> nameIds = new HashMap<String, Integer>();
+  private final int entryNum;
+  private final int entryOffset;
+
+  /** open index file */
+  public ArchiveIndex(String file) throws IOException
+  {
+    raf = new RandomAccessFile(file, "r");
+    FileChannel ch = raf.getChannel();
+    if (ch.size() > Integer.MAX_VALUE) {
+      raf.close();
+      throw new IOException("index too large: " + file);
+    }
+    buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+
+    if (buf.getInt(0) != MAGIC || buf.getInt(4) != VERSION) {
+      raf.close();
+      throw new IOException("not an archive index: " + file);
+    }
+
+    files  = new String[buf.getInt(8)];
+    names  = new String[buf.getInt(12)];
+    tables = new String[buf.getInt(16)];
+    entryNum = buf.getInt(20);
+    entryOffset = (int)buf.getLong(24);
+
+    buf.position(32);
+    for (int i=0; i < files.length; i++)  files[i] = readString();
+    for (int i=0; i < names.length; i++) {
+      names[i] = readString();
+      nameIds.put(names[i], i);
+    }
+    for (int i=0; i < tables.length; i++) tables[i] = readString();
+  }
+
+  private String readString() throws IOException
+  {
+    byte[] b = new byte[buf.getShort() & 0xffff];
+    buf.get(b);
+    return new String(b, "UTF-8");
+  }
+
+  public void close() throws IOException { raf.close(); }
+
+  /** @return number of entries (games * 3) */
+  public int size() { return entryNum; }
+
+  private int entryInt(int i, int field) { return buf.getInt(entryOffset + i * ENTRY_SIZE + field); }
+  private int entryByte(int i, int field) { return buf.get(entryOffset + i * ENTRY_SIZE + field); }
+
+  // @return first entry >= (player, date, type)
+  private int lowerBound(int player, int date, int type)
+  {
+    int lo = 0, hi = entryNum;
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      int c = entryInt(mid, E_PLAYER) - player;
+      if (c == 0) c = Integer.compare(entryInt(mid, E_DATE), date);
+      if (c == 0) c = entryByte(mid, E_TYPE) - type;
+      if (c < 0) lo = mid + 1; else hi = mid;
+    }
+    return lo;
+  }
+
+  /** @return games of player with given game type (-1: any) and date
+      in [fromDate, toDate] (yyyymmdd, inclusive), sorted by date */
+  public ArrayList<Hit> query(String player, int gameType, int fromDate, int toDate)
+  {
+    ArrayList<Hit> hits = new ArrayList<Hit>();
+    Integer id = nameIds.get(player);
+    if (id == null) return hits;
+
+    int p = id;
+    for (int i=lowerBound(p, fromDate, -128); i < entryNum; i++) {
+      if (entryInt(i, E_PLAYER) != p || entryInt(i, E_DATE) > toDate) break;
+      if (gameType >= 0 && entryByte(i, E_TYPE) != gameType) continue;
+      hits.add(hit(i));
+    }
+    return hits;
+  }
+
+  private Hit hit(int i)
+  {
+    int o = entryOffset + i * ENTRY_SIZE;
+    Hit h = new Hit();
+    h.player   = names[buf.getInt(o + E_PLAYER)];
+    h.date     = buf.getInt(o + E_DATE);
+    h.gameType = buf.get(o + E_TYPE);
+    h.seat     = buf.get(o + E_SEAT);
+    h.declarer = buf.get(o + E_DECLARER);
+    h.table    = tables[buf.getInt(o + E_TABLE)];
+    h.file     = files[buf.getInt(o + E_FILE)];
+    h.offset   = buf.getLong(o + E_OFFSET);
+    h.length   = buf.getInt(o + E_LENGTH);
+    return h;
+  }
+
+  /** read game of hit into g
+      @return null if OK, error message otherwise */
+  public static String readGame(Hit h, SimpleGame g)
+  {
+    byte[] b = new byte[h.length];
+    try {
+      RandomAccessFile f = new RandomAccessFile(h.file, "r");
+      try {
+        f.seek(h.offset);
+        f.readFully(b);
+      }
+      finally {
+        f.close();
+      }
+      String r = g.fromSgf(new BufferedReader(new InputStreamReader(new ByteArrayInputStream(b), "UTF-8")));
+      if (r == null) return "game not found";
+      if (!r.equals("")) return r;
+      return null;
+    }
+    catch (IOException e) {
+      return "can't read " + h.file + ": " + e;
+    }
+  }
+
+  // building ----------------------------------------------------------
+
+  // game occurrence found while scanning
+  static class RawEntry
+  {
+    String player, table;
+    int file, date, type, seat, declarer, length;
+    long offset;
+    int playerId, tableId;
+  }
+
+  // collects what the index needs from a game
+  static class GameInfo extends SgfParser.Handler
+  {
+    String[] names = new String[3];
+    String date, error;
+    int type, declarer;
+
+    public void gameStart()
+    {
+      names[0] = names[1] = names[2] = null;
+      date = null;
+    }
+
+    public void property(String label, String value)
+    {
+      if (label.equals("DT")) date = value;
+      else if (label.equals("P0")) names[0] = value;
+      else if (label.equals("P1")) names[1] = value;
+      else if (label.equals("P2")) names[2] = value;
+    }
+
+    public boolean gameEnd(String error, SimpleState s)
+    {
+      this.error = error;
+      type = s.getGameDeclaration().type;
+      declarer = s.getDeclarer();
+      return true;
+    }
+  }
+
+  /** scan files and directories in paths and write index
+      @return null if OK, error message otherwise */
+  public static String build(List<String> paths, String indexFile)
+  {
+    ArrayList<String> files = new ArrayList<String>();
+    for (String p : paths) collectFiles(new File(p), files);
+    Collections.sort(files);
+
+    ArrayList<RawEntry> entries = new ArrayList<RawEntry>();
+    GameInfo info = new GameInfo();
+    SgfParser parser = new SgfParser(info, SgfParser.VALIDATE);
+    int bad = 0;
+
+    for (int i=0; i < files.size(); i++) {
+      try {
+        bad += scanFile(files.get(i), i, parser, info, entries);
+      }
+      catch (IOException e) {
+        return "can't read " + files.get(i) + ": " + e;
+      }
+    }
+    if (bad > 0) Misc.msg("ArchiveIndex: skipped " + bad + " unreadable games");
+
+    // string ids in sorted order, so sorting by id = sorting by name
+    String[] names  = assignIds(entries, true);
+    String[] tables = assignIds(entries, false);
+
+    Collections.sort(entries, new Comparator<RawEntry>() {
+        public int compare(RawEntry a, RawEntry b) {
+          if (a.playerId != b.playerId) return Integer.compare(a.playerId, b.playerId);
+          if (a.date != b.date) return Integer.compare(a.date, b.date);
+          if (a.type != b.type) return Integer.compare(a.type, b.type);
+          if (a.tableId != b.tableId) return Integer.compare(a.tableId, b.tableId);
+          if (a.file != b.file) return Integer.compare(a.file, b.file);
+          return Long.compare(a.offset, b.offset);
+        }
+      });
+
+    try {
+      ByteArrayOutputStream sbos = new ByteArrayOutputStream();
+      DataOutputStream s = new DataOutputStream(sbos);
+      for (String f : files) writeString(s, f);
+      for (String n : names) writeString(s, n);
+      for (String t : tables) writeString(s, t);
+      s.flush();
+
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile), 1 << 16));
+      try {
+        long entryOffset = (32 + sbos.size() + 7) & ~7L;
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(files.size());
+        out.writeInt(names.length);
+        out.writeInt(tables.length);
+        out.writeInt(entries.size());
+        out.writeLong(entryOffset);
+        sbos.writeTo(out);
+        for (long i=32 + sbos.size(); i < entryOffset; i++) out.writeByte(0);
+
+        for (RawEntry e : entries) {
+          out.writeInt(e.playerId);
+          out.writeInt(e.date);
+          out.writeByte(e.type);
+          out.writeByte(e.seat);
+          out.writeByte(e.declarer);
+          out.writeByte(0);
+          out.writeInt(e.tableId);
+          out.writeInt(e.file);
+          out.writeLong(e.offset);
+          out.writeInt(e.length);
+        }
+      }
+      finally {
+        out.close();
+      }
+    }
+    catch (IOException e) {
+      return "can't write " + indexFile + ": " + e;
+    }
+    return null;
+  }
+
+  static void collectFiles(File f, ArrayList<String> files)
+  {
+    if (f.isDirectory()) {
+      File[] list = f.listFiles();
+      if (list == null) return;
+      for (File g : list) collectFiles(g, files);
+    } else if (f.isFile()) {
+      files.add(f.getPath());
+    }
+  }
+
+  // assign sorted ids to player names (or table ids)
+  // @return id -> string
+  static String[] assignIds(ArrayList<RawEntry> entries, boolean players)
+  {
+    TreeMap<String, Integer> ids = new TreeMap<String, Integer>();
+    for (RawEntry e : entries) ids.put(players ? e.player : e.table, 0);
+
+    String[] strings = new String[ids.size()];
+    int n = 0;
+    for (Map.Entry<String, Integer> me : ids.entrySet()) {
+      me.setValue(n);
+      strings[n++] = me.getKey();
+    }
+
+    for (RawEntry e : entries) {
+      if (players) e.playerId = ids.get(e.player);
+      else         e.tableId  = ids.get(e.table);
+    }
+    return strings;
+  }
+
+  static void writeString(DataOutputStream out, String s) throws IOException
+  {
+    byte[] b = s.getBytes("UTF-8");
+    out.writeShort(b.length);
+    out.write(b);
+  }
+
+  // find games "(; ... ;)" in file, outside of games "#info" lines set
+  // the table id (table archives), other # comments are skipped like
+  // in SimpleGame.readGameString
+  // @return number of unreadable games
+  static int scanFile(String file, int fileIndex, SgfParser parser, GameInfo info,
+                      ArrayList<RawEntry> entries)
+    throws IOException
+  {
+    InputStream in = new BufferedInputStream(new FileInputStream(file), 1 << 16);
+    ByteArrayOutputStream game = new ByteArrayOutputStream(1024);
+    ByteArrayOutputStream line = new ByteArrayOutputStream(256);
+    String table = "";
+    int bad = 0;
+
+    try {
+      long pos = 0, start = 0;
+      int c, last = -1;
+      boolean inGame = false, lineStart = true;
+
+      while ((c = in.read()) >= 0) {
+        pos++;
+
+        if (!inGame) {
+          if (lineStart && c == '#') {
+            // header or comment line
+            line.reset();
+            while ((c = in.read()) >= 0) {
+              pos++;
+              if (c == '\n') break;
+              line.write(c);
+            }
+            String l = line.toString("UTF-8");
+            if (l.startsWith("info ")) {
+              String[] parts = l.split(" ");
+              if (parts.length > 3) table = parts[3];
+            }
+            lineStart = true;
+            last = '\n';
+            continue;
+          }
+          if (c == ';' && last == '(') {
+            inGame = true;
+            start = pos - 2;
+            game.reset();
+            game.write('(');
+            game.write(';');
+          }
+        } else {
+          game.write(c);
+          if (c == ')' && last == ';') {
+            inGame = false;
+            if (!addGame(game, parser, info, fileIndex, start, (int)(pos - start), table, entries))
+              bad++;
+          }
+        }
+
+        lineStart = c == '\n';
+        last = c;
+      }
+    }
+    finally {
+      in.close();
+    }
+    return bad;
+  }
+
+  static boolean addGame(ByteArrayOutputStream game, SgfParser parser, GameInfo info,
+                         int fileIndex, long offset, int length, String table,
+                         ArrayList<RawEntry> entries)
+    throws IOException
+  {
+    // only moves are checked, no game is built
+    Reader r = new InputStreamReader(new ByteArrayInputStream(game.toByteArray()), "UTF-8");
+    if (parser.parse(r) != 1 || info.error != null) return false;
+
+    int date = parseDate(info.date);
+
+    for (int p=0; p < 3; p++) {
+      String name = info.names[p];
+      if (name == null || name.equals("")) continue;
+
+      RawEntry e = new RawEntry();
+      e.player = name;
+      e.table = table;
+      e.file = fileIndex;
+      e.date = date;
+      e.type = info.type;
+      e.seat = p;
+      e.declarer = info.declarer;
+      e.offset = offset;
+      e.length = length;
+      entries.add(e);
+    }
+    return true;
+  }
+
+  /** @return yyyymmdd of date "yyyy-mm-dd...", 0 if not a date */
+  static int parseDate(String dt)
+  {
+    if (dt == null || dt.length() < 10 || dt.charAt(4) != '-' || dt.charAt(7) != '-')
+      return 0;
+    try {
+      return
+        Integer.parseInt(dt.substring(0, 4)) * 10000 +
+        Integer.parseInt(dt.substring(5, 7)) * 100 +
+        Integer.parseInt(dt.substring(8, 10));
+    }
+    catch (NumberFormatException e) {
+      return 0;
+    }
+  }
+
+  public static void main(String[] args)
+  {
+    if (args.length >= 3 && args[0].equals("build")) {
+      long t0 = System.currentTimeMillis();
+      String r = build(Arrays.asList(args).subList(2, args.length), args[1]);
+      if (r != null) Misc.err(r);
+      Misc.msg("index built in " + (System.currentTimeMillis() - t0) + " msecs");
+      return;
+    }
+
+    if (args.length >= 3 && args[0].equals("query")) {
+      try {
+        ArchiveIndex index = new ArchiveIndex(args[1]);
+        int type = args.length > 3 ? Integer.parseInt(args[3]) : -1;
+        int from = args.length > 5 ? Integer.parseInt(args[4]) : 0;
+        int to   = args.length > 5 ? Integer.parseInt(args[5]) : Integer.MAX_VALUE;
+        long t0 = System.nanoTime();
+        ArrayList<Hit> hits = index.query(args[2], type, from, to);
+        long t1 = System.nanoTime();
+        for (Hit h : hits) System.out.println(h);
+        Misc.msg(hits.size() + " games in " + (t1 - t0) / 1000 + " usecs");
+        index.close();
+      }
+      catch (IOException e) {
+        Misc.err("" + e);
+      }
+      return;
+    }
+
+    Misc.msg("usage: java common.ArchiveIndex build <index> <file|dir>...");
+    Misc.msg("       java common.ArchiveIndex query <index> <player> [<game type> [<from yyyymmdd> <to yyyymmdd>]]");
+  }
+}
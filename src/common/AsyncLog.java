@@ -0,0 +1,291 @@
+// leveled logger behind Misc.msg/warn/err
+//
+// messages are written to stdout and, if set, to the log file. In
+// synchronous mode (default) this happens in the calling thread. In
+// asynchronous mode callers only claim a slot in a ring buffer (lock-free)
+// and a background thread formats and writes batches of messages, so
+// network and move threads don't serialize on the log monitor and don't
+// wait for console/file I/O. When the buffer is full callers write
+// pending messages themselves, nothing is lost.
+//
+// messages below the current level are discarded before any string is
+// built. Messages given as parts (Misc.msg(level, a, b, ...)) or as
+// AsyncLog.Message are concatenated/created by the writer, i.e. not at
+// all if discarded. DEBUG and INFO messages can be rate limited
+// (setMaxPerSecond, off by default), the number of dropped messages is
+// reported.
+
+// (c) Michael Buro, licensed under GPLv3
+
+package common;
+
+import java.io.*;
+import java.text.*;
+import java.util.*;
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.LockSupport;
+
+public class AsyncLog
+{
+  public static final int DEBUG = 0;
+  public static final int INFO  = 1;
+  public static final int WARN  = 2;
+  public static final int ERR   = 3;
+  public static final String[] levelNames = { "debug", "info", "warn", "err" };
+
+  static final int RING_SIZE = 8192; // power of 2
+  static final int MASK = RING_SIZE - 1;
+  static final long IDLE_NANOS = 100000000L; // writer wakes up at least every 100ms
+
+  /** message created when it is written */
+  public interface Message
+  {
+    String text();
+  }
+
+  private static volatile int level = INFO;
+  private static volatile int maxPerSecond = 0; // no limit
+  private static volatile boolean async;
+
+  // ring: slot i holds message with sequence number seq iff seqs[i] == seq
+  private static final AtomicLongArray seqs = new AtomicLongArray(RING_SIZE);
+  private static final Object[] msgs = new Object[RING_SIZE];
+  private static final int[] levels = new int[RING_SIZE];
+  private static final long[] times = new long[RING_SIZE];
+  private static final AtomicLong tail = new AtomicLong(); // next sequence to claim
+  private static final AtomicLong head = new AtomicLong(); // next sequence to write
+
+  // rate limit
+  private static volatile long window; // current second
+  private static final AtomicInteger windowCount = new AtomicInteger();
+  private static final AtomicInteger dropped = new AtomicInteger();
+
+  // output, only used while holding writeLock
+  private static final Object writeLock = new Object();
+  private static DataOutputStream file;
+  private static final DateFormat df = new SimpleDateFormat("yyyy-MM-dd/HH:mm:ss/z");
+  private static long dateSecond = -1;
+  private static String date;
+
+  private static Thread writer;
+  private static volatile boolean writerWaiting;
+
+  static {
+    for (int i=0; i < RING_SIZE; i++) seqs.set(i, -1);
+    df.setTimeZone(TimeZone.getTimeZone("UTC"));
+  }
+
+  public static int getLevel() { return level; }
+
+  /** messages below l are discarded */
+  public static void setLevel(int l) { level = l; }
+
+  /** @return level for name (debug/info/warn/err), -1 if unknown */
+  public static int levelOf(String name)
+  {
+    for (int i=0; i < levelNames.length; i++) {
+      if (levelNames[i].equals(name)) return i;
+    }
+    return -1;
+  }
+
+  /** @return true iff messages of level l are written */
+  public static boolean isLogged(int l) { return l >= level; }
+
+  /** limit DEBUG and INFO messages, 0 = no limit */
+  public static void setMaxPerSecond(int n) { maxPerSecond = n; }
+
+  public static final int ASYNC_MAX_PER_SECOND = 10000; // suggested limit for async mode
+
+  /** switch to asynchronous mode (can't be undone) */
+  public static synchronized void startAsync()
+  {
+    if (async) return;
+
+    writer = new Thread("AsyncLog") {
+        public void run() { writerLoop(); }
+      };
+    writer.setDaemon(true);
+    writer.start();
+
+    Runtime.getRuntime().addShutdownHook(new Thread() {
+        public void run() { flush(); }
+      });
+
+    async = true;
+  }
+
+  /** messages are also written to f (null: stop) */
+  static void setFile(DataOutputStream f)
+  {
+    flush();
+    synchronized (writeLock) {
+      file = f;
+    }
+  }
+
+  /** write pending messages and close log file */
+  static void closeFile()
+  {
+    flush();
+    synchronized (writeLock) {
+      if (file != null) {
+        try { file.close(); }
+        catch (IOException e) { }
+        file = null;
+      }
+    }
+  }
+
+  /** log message (String, Message, or Object[] of parts) */
+  public static void log(int l, Object msg)
+  {
+    if (l < level) return;
+
+    if (l < WARN && maxPerSecond > 0) {
+      long now = System.currentTimeMillis() / 1000;
+      if (now != window) {
+        window = now;
+        windowCount.set(0);
+      }
+      if (windowCount.incrementAndGet() > maxPerSecond) {
+        dropped.incrementAndGet();
+        return;
+      }
+    }
+
+    if (!async) {
+      synchronized (writeLock) {
+        write(l, System.currentTimeMillis(), msg);
+        flushOutput();
+      }
+      return;
+    }
+
+    // claim slot, write pending messages ourselves if ring is full
+    long seq;
+    for (;;) {
+      seq = tail.get();
+      if (seq - head.get() >= RING_SIZE) {
+        drain();
+        continue;
+      }
+      if (tail.compareAndSet(seq, seq+1)) break;
+    }
+
+    int i = (int)seq & MASK;
+    msgs[i] = msg;
+    levels[i] = l;
+    times[i] = System.currentTimeMillis();
+    seqs.set(i, seq); // publish
+
+    if (writerWaiting) LockSupport.unpark(writer);
+  }
+
+  /** write all messages logged so far */
+  public static void flush()
+  {
+    if (!async) return;
+
+    long end = tail.get();
+    while (head.get() < end) {
+      if (drain() == 0) Thread.yield(); // slot claimed but not published yet
+    }
+  }
+
+  private static void writerLoop()
+  {
+    for (;;) {
+      if (drain() > 0) continue;
+      writerWaiting = true;
+      if (!pending()) LockSupport.parkNanos(IDLE_NANOS);
+      writerWaiting = false;
+    }
+  }
+
+  private static boolean pending()
+  {
+    long h = head.get();
+    return seqs.get((int)h & MASK) == h;
+  }
+
+  // write published messages in order
+  // @return number of messages written
+  private static int drain()
+  {
+    int n = 0;
+
+    synchronized (writeLock) {
+      for (;;) {
+        long h = head.get();
+        int i = (int)h & MASK;
+        if (seqs.get(i) != h) break;
+        Object msg = msgs[i];
+        int l = levels[i];
+        long time = times[i];
+        msgs[i] = null;
+        head.set(h+1); // before writing: Message.text() may log, too
+        write(l, time, msg);
+        n++;
+      }
+      if (n > 0) flushOutput();
+    }
+    return n;
+  }
+
+  // holding writeLock
+  private static void write(int l, long time, Object msg)
+  {
+    int d = dropped.getAndSet(0);
+    if (d > 0) write(WARN, time, "log rate limit: " + d + " messages dropped");
+
+    String text;
+    if (msg instanceof Object[]) {
+      StringBuilder sb = new StringBuilder();
+      for (Object o : (Object[])msg) sb.append(o);
+      text = sb.toString();
+    } else if (msg instanceof Message) {
+      text = ((Message)msg).text();
+    } else {
+      text = String.valueOf(msg);
+    }
+
+    System.out.println(text);
+
+    if (file != null) {
+      long sec = time / 1000;
+      if (sec != dateSecond) {
+        dateSecond = sec;
+        date = df.format(new Date(time));
+      }
+      try {
+        file.writeBytes("[" + date + "] " + text + "\n");
+      }
+      catch (IOException e) {
+        fileError(e);
+      }
+    }
+  }
+
+  // holding writeLock
+  private static void flushOutput()
+  {
+    System.out.flush();
+    if (file != null) {
+      try {
+        file.flush();
+      }
+      catch (IOException e) {
+        fileError(e);
+      }
+    }
+  }
+
+  // holding writeLock: stop logging to file (exiting here could
+  // deadlock with the shutdown hook)
+  private static void fileError(IOException e)
+  {
+    System.err.println("error logging to file " + Misc.getLogFile() + ": " + e);
+    file = null;
+  }
+}
@@ -0,0 +1,392 @@
+// block-compressed SGF game archive with random access
+//
+// games (SGF text "(;...;)") are collected in blocks of blockGames
+// games, each block is compressed separately (raw deflate). A block
+// index at the end of the file locates blocks and games within them,
+// so game K is read by inflating only its block. reader() returns a
+// BufferedReader over all games for the usual SimpleGame.fromSgf loop.
+//
+// file:
+//   int MAGIC, int VERSION, int blockGames
+//   blocks: deflated UTF-8 text, games separated by '\n'
+//   index: per block: long offset, int compressed length,
+//          int uncompressed length, int number of games,
+//          per game: int offset in uncompressed block
+//   trailer: long index offset, int blockNum, int gameNum, int MAGIC
+//
+// usage:
+//   java -cp skatgui.jar common.CompressedArchive pack <archive> <sgf file>...
+//   java -cp skatgui.jar common.CompressedArchive get <archive> <game>
+//   java -cp skatgui.jar common.CompressedArchive cat <archive>
+
+package common;
+
+import java.io.*;
+import java.util.*;
+import java.util.zip.*;
+
+public class CompressedArchive
+{
+  public static final int MAGIC   = 0x534b5a41; // "SKZA"
+  public static final int VERSION = 1;
+  public static final int BLOCK_GAMES = 256;
+  static final int TRAILER_SIZE = 20;
+
+  // block index entry
+  static class Block
+  {
+    long offset;
+    int length, rawLength;
+    int firstGame;
+    int[] games; // game offsets in uncompressed block
+  }
+
+  /** writes archive, games are appended in order */
+  public static class Writer
+  {
+    private final DataOutputStream out;
+    private final int blockGames;
+    private final ArrayList<Block> blocks = new ArrayList<Block>();
+    private final ByteArrayOutputStream raw = new ByteArrayOutputStream();
+    private final Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+    private final byte[] buf = new byte[1 << 16];
+    private int[] gameOffsets;
+    private int blockGameNum, gameNum;
+    private long pos;
+
+    public Writer(String file) throws IOException
+    {
+      this(file, BLOCK_GAMES);
+    }
+
+    public Writer(String file, int blockGames) throws IOException
+    {
+      this.blockGames = blockGames;
+      gameOffsets = new int[blockGames];
+      out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeInt(blockGames);
+      pos = 12;
+    }
+
+    /** @return number of games written */
+    public int getGameNum() { return gameNum; }
+
+    /** append game text "(;...;)" */
+    public void append(String sgf) throws IOException
+    {
+      if (!sgf.startsWith("(;")) Misc.err("CompressedArchive: not a game " + sgf);
+      gameOffsets[blockGameNum++] = raw.size();
+      byte[] b = (sgf + "\n").getBytes("UTF-8");
+      raw.write(b, 0, b.length);
+      gameNum++;
+      if (blockGameNum == blockGames) flushBlock();
+    }
+
+    /** append world view game */
+    public void append(SimpleGame g) throws IOException
+    {
+      append(g.toSgf(true, SimpleState.WORLD_VIEW));
+    }
+
+    private void flushBlock() throws IOException
+    {
+      if (blockGameNum == 0) return;
+
+      Block bl = new Block();
+      bl.offset = pos;
+      bl.rawLength = raw.size();
+      bl.firstGame = gameNum - blockGameNum;
+      bl.games = Arrays.copyOf(gameOffsets, blockGameNum);
+
+      deflater.reset();
+      deflater.setInput(raw.toByteArray());
+      deflater.finish();
+      int len = 0;
+      while (!deflater.finished()) {
+        int n = deflater.deflate(buf);
+        out.write(buf, 0, n);
+        len += n;
+      }
+      bl.length = len;
+      pos += len;
+
+      blocks.add(bl);
+      raw.reset();
+      blockGameNum = 0;
+    }
+
+    /** write last block and index */
+    public void close() throws IOException
+    {
+      flushBlock();
+      deflater.end();
+
+      long indexOffset = pos;
+      for (Block bl : blocks) {
+        out.writeLong(bl.offset);
+        out.writeInt(bl.length);
+        out.writeInt(bl.rawLength);
+        out.writeInt(bl.games.length);
+        for (int g : bl.games) out.writeInt(g);
+      }
+      out.writeLong(indexOffset);
+      out.writeInt(blocks.size());
+      out.writeInt(gameNum);
+      out.writeInt(MAGIC);
+      out.close();
+    }
+  }
+
+  /** append all games "(;...;)" in r to w
+      @return number of games */
+  public static int pack(java.io.Reader r, Writer w) throws IOException
+  {
+    StringBuilder sb = new StringBuilder();
+    int c, last = 0, n = 0;
+    boolean inGame = false;
+
+    while ((c = r.read()) >= 0) {
+      if (!inGame) {
+        if (c == ';' && last == '(') {
+          inGame = true;
+          sb.setLength(0);
+          sb.append("(;");
+          c = 0;
+        }
+      } else {
+        sb.append((char)c);
+        if (c == ')' && last == ';') {
+          inGame = false;
+          w.append(sb.toString());
+          n++;
+          c = 0;
+        }
+      }
+      last = c;
+    }
+    return n;
+  }
+
+  // reading -----------------------------------------------------------
+
+  private final RandomAccessFile raf;
+  private final Block[] blocks;
+  private final int gameNum;
+
+  // last inflated block
+  private int cachedBlock = -1;
+  private byte[] cached;
+
+  /** open archive, reads block index */
+  public CompressedArchive(String file) throws IOException
+  {
+    raf = new RandomAccessFile(file, "r");
+    try {
+      long size = raf.length();
+      if (size < 12 + TRAILER_SIZE) throw new IOException("not a compressed archive: " + file);
+
+      raf.seek(0);
+      if (raf.readInt() != MAGIC || raf.readInt() != VERSION)
+        throw new IOException("not a compressed archive: " + file);
+
+      raf.seek(size - TRAILER_SIZE);
+      long indexOffset = raf.readLong();
+      int blockNum = raf.readInt();
+      gameNum = raf.readInt();
+      if (raf.readInt() != MAGIC) throw new IOException("archive index missing: " + file);
+
+      byte[] index = new byte[(int)(size - TRAILER_SIZE - indexOffset)];
+      raf.seek(indexOffset);
+      raf.readFully(index);
+      DataInputStream in = new DataInputStream(new ByteArrayInputStream(index));
+
+      blocks = new Block[blockNum];
+      int first = 0;
+      for (int i=0; i < blockNum; i++) {
+        Block bl = new Block();
+        bl.offset = in.readLong();
+        bl.length = in.readInt();
+        bl.rawLength = in.readInt();
+        bl.games = new int[in.readInt()];
+        for (int j=0; j < bl.games.length; j++) bl.games[j] = in.readInt();
+        bl.firstGame = first;
+        first += bl.games.length;
+        blocks[i] = bl;
+      }
+    }
+    catch (IOException e) {
+      raf.close();
+      throw e;
+    }
+  }
+
+  public void close() throws IOException { raf.close(); }
+
+  /** @return number of games */
+  public int getGameNum() { return gameNum; }
+
+  /** @return number of blocks */
+  public int getBlockNum() { return blocks.length; }
+
+  // @return compressed bytes of block i
+  private synchronized byte[] readBlock(int i) throws IOException
+  {
+    Block bl = blocks[i];
+    byte[] b = new byte[bl.length];
+    raf.seek(bl.offset);
+    raf.readFully(b);
+    return b;
+  }
+
+  // @return uncompressed block i (cached)
+  private synchronized byte[] inflate(int i) throws IOException
+  {
+    if (i == cachedBlock) return cached;
+
+    byte[] raw = new byte[blocks[i].rawLength];
+    Inflater inf = new Inflater(true);
+    try {
+      inf.setInput(readBlock(i));
+      int n = 0;
+      while (n < raw.length) {
+        int k = inf.inflate(raw, n, raw.length - n);
+        if (k == 0 && (inf.finished() || inf.needsInput()))
+          throw new IOException("corrupt block " + i);
+        n += k;
+      }
+    }
+    catch (DataFormatException e) {
+      throw new IOException("corrupt block " + i + ": " + e);
+    }
+    finally {
+      inf.end();
+    }
+
+    cachedBlock = i;
+    cached = raw;
+    return raw;
+  }
+
+  // @return block containing game k
+  private int blockOf(int k)
+  {
+    int lo = 0, hi = blocks.length - 1;
+    while (lo < hi) {
+      int mid = (lo + hi + 1) >>> 1;
+      if (blocks[mid].firstGame <= k) lo = mid; else hi = mid - 1;
+    }
+    return lo;
+  }
+
+  /** @return text of game k (0 <= k < getGameNum()) */
+  public String getGameString(int k) throws IOException
+  {
+    if (k < 0 || k >= gameNum) throw new IOException("game index out of range: " + k);
+
+    int i = blockOf(k);
+    Block bl = blocks[i];
+    byte[] raw = inflate(i);
+    int j = k - bl.firstGame;
+    int start = bl.games[j];
+    int end = j+1 < bl.games.length ? bl.games[j+1] : bl.rawLength;
+    return new String(raw, start, end - start - 1, "UTF-8"); // without '\n'
+  }
+
+  /** read game k into g
+      @return null if OK, error message otherwise */
+  public String readGame(int k, SimpleGame g)
+  {
+    try {
+      String r = g.fromSgf(new BufferedReader(new StringReader(getGameString(k))));
+      if (r == null) return "game not found";
+      if (!r.equals("")) return r;
+      return null;
+    }
+    catch (IOException e) {
+      return "can't read game " + k + ": " + e;
+    }
+  }
+
+  /** @return reader over all games (inflates block by block), e.g. for
+      SimpleGame.fromSgf(BufferedReader) */
+  public BufferedReader reader() throws IOException
+  {
+    // one inflater for all blocks, released when the stream of the last
+    // block is closed (SequenceInputStream closes each exhausted stream,
+    // and all remaining ones on close())
+    final Inflater inf = new Inflater(true);
+    if (blocks.length == 0) inf.end();
+
+    Enumeration<InputStream> e = new Enumeration<InputStream>() {
+        int next = 0;
+
+        public boolean hasMoreElements() { return next < blocks.length; }
+
+        public InputStream nextElement()
+        {
+          try {
+            final boolean last = next == blocks.length - 1;
+            inf.reset();
+            return new InflaterInputStream(new ByteArrayInputStream(readBlock(next++)), inf) {
+                public void close() throws IOException
+                {
+                  super.close();
+                  if (last) inf.end();
+                }
+              };
+          }
+          catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+          }
+        }
+      };
+
+    return new BufferedReader(new InputStreamReader(new SequenceInputStream(e), "UTF-8"), 1 << 16);
+  }
+
+  public static void main(String[] args)
+  {
+    try {
+      if (args.length >= 3 && args[0].equals("pack")) {
+        Writer w = new Writer(args[1]);
+        for (int i=2; i < args.length; i++) {
+          java.io.Reader r = new BufferedReader(new InputStreamReader(new FileInputStream(args[i]), "UTF-8"));
+          try {
+            pack(r, w);
+          }
+          finally {
+            r.close();
+          }
+        }
+        w.close();
+        Misc.msg(w.getGameNum() + " games packed");
+        return;
+      }
+
+      if (args.length == 3 && args[0].equals("get")) {
+        CompressedArchive a = new CompressedArchive(args[1]);
+        System.out.println(a.getGameString(Integer.parseInt(args[2])));
+        a.close();
+        return;
+      }
+
+      if (args.length == 2 && args[0].equals("cat")) {
+        CompressedArchive a = new CompressedArchive(args[1]);
+        BufferedReader br = a.reader();
+        String line;
+        while ((line = br.readLine()) != null) System.out.println(line);
+        a.close();
+        return;
+      }
+    }
+    catch (IOException e) {
+      Misc.err("" + e);
+    }
+
+    Misc.msg("usage: java common.CompressedArchive pack <archive> <sgf file>...");
+    Misc.msg("       java common.CompressedArchive get <archive> <game>");
+    Misc.msg("       java common.CompressedArchive cat <archive>");
+  }
+}
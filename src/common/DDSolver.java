@@ -0,0 +1,406 @@
+// double dummy cardplay solver
+//
+// computes the result of a cardplay position with all hands known
+// (world view) assuming perfect play by all players
+//
+// - suit and grand games: declarer card points (tricks + skat)
+// - null games: 1 if declarer wins, 0 otherwise
+//
+// MTD(f) on null-window alpha-beta searches over SimpleState using
+// playLegalCard/saveState/restoreState, with move ordering,
+// equivalent card pruning and a transposition table (SimpleState
+// Zobrist keys). Values stored in the table are the card points the
+// declarer gets from the position on, and keys include game type and
+// declarer, so a table can be shared by solvers (threads) working on
+// the same or different games, e.g. in sampling players.
+//
+// not thread-safe: use one solver per thread
+
+package common;
+
+import java.util.*;
+
+public class DDSolver
+{
+  static final int MAX_PLY = 31;
+
+  private final TransTable tt;
+  private final SimpleState s = new SimpleState(SimpleState.WORLD_VIEW);
+  private final SimpleStateUndo[] undo = new SimpleStateUndo[MAX_PLY];
+  private final int[][] moves = new int[MAX_PLY][10];
+  private final int[][] scores = new int[MAX_PLY][10];
+
+  private int declarer, gameType;
+  private boolean nullGame;
+  private boolean announced; // schneider/schwarz announced
+  private long nodes;
+
+  // [game type][card index] groups of cards in descending order
+  // (trump, suits) and card strength (higher = stronger)
+  static int[][][] groups;
+  static int[][] strength;
+
+  // card bits of each rank
+  static final int RANK_MASK = 0x01010101;
+
+  public DDSolver()
+  {
+    this(new TransTable(18));
+  }
+
+  /** use (shared) transposition table tt */
+  public DDSolver(TransTable tt)
+  {
+    this.tt = tt;
+    for (int i=0; i < MAX_PLY; i++)
+      undo[i] = new SimpleStateUndo();
+  }
+
+  public TransTable getTransTable() { return tt; }
+
+  /** @return number of nodes visited since construction */
+  public long getNodes() { return nodes; }
+
+  /** @return game value of cardplay position state with perfect play:
+      declarer card points including skat (suit, grand) or 1/0 if
+      declarer wins/loses (null). All hands must be known. */
+  public int solve(SimpleState state)
+  {
+    init(state);
+    return base() + mtd(0, nullGame ? 1 : remainingPoints());
+  }
+
+  /** computes values (see solve) of all legal moves in state
+      @return number of moves, card indexes stored in cards, values in values */
+  public int solveMoves(SimpleState state, int[] cards, int[] values)
+  {
+    init(state);
+
+    int legal = s.legalCards();
+    int n = 0;
+
+    while (legal != 0) {
+      int c = Integer.numberOfTrailingZeros(legal);
+      legal &= legal - 1;
+
+      s.saveState(undo[0], c);
+      s.playLegalCard(c);
+      int v = base() + mtd(1, nullGame ? 1 : remainingPoints());
+      s.restoreState(undo[0]);
+
+      cards[n] = c;
+      values[n] = v;
+      n++;
+    }
+    return n;
+  }
+
+  private void init(SimpleState state)
+  {
+    if (state.getPhase() != SimpleState.CARDPLAY &&
+        state.getPhase() != SimpleState.FINISHED)
+      Misc.err("DDSolver: not in cardplay");
+
+    s.inPlaceCopy(state);
+    s.updateZobristKey();
+
+    GameDeclaration d = s.getGameDeclaration();
+    declarer = s.getDeclarer();
+    gameType = d.type;
+    nullGame = gameType == GameDeclaration.NULL_GAME;
+    announced = d.schneiderAnnounced || d.schwarzAnnounced;
+  }
+
+  // value of finished part of the game: declarer points so far
+  // (suit, grand), 0 for null games (all in search value)
+  private int base()
+  {
+    if (nullGame) return 0;
+    return s.getPartyPoints(1);
+  }
+
+  // MTD(f): exact value of position in [0,hi] from null window searches
+  private int mtd(int ply, int hi)
+  {
+    int lo = 0;
+    int g = nullGame ? 1 : hi / 2;
+
+    while (lo < hi) {
+      int beta = (g == lo) ? g + 1 : g;
+      g = search(beta - 1, beta, ply);
+      if (g < beta) hi = g; else lo = g;
+    }
+    return lo;
+  }
+
+  // @return points declarer gets from now on (null: 1 if declarer
+  // wins), fail-soft alpha-beta
+  private int search(int alpha, int beta, int ply)
+  {
+    nodes++;
+
+    if (s.isFinished()) {
+      if (nullGame) return s.getTricksWon(declarer) == 0 ? 1 : 0;
+      return 0;
+    }
+
+    int hi = nullGame ? 1 : remainingPoints();
+    if (hi <= alpha) return hi;
+    if (beta <= 0) return 0;
+
+    long key = s.getZobristKey();
+    if (announced)
+      key ^= (s.getTrickPoints(declarer) + 1) * 0x9e3779b97f4a7c15L; // early game end depends on points
+
+    int ttMove = -1;
+    long d = tt.probe(key);
+    if (d != TransTable.MISS) {
+      int v = TransTable.value(d);
+      int b = TransTable.bound(d);
+      if (b == TransTable.EXACT) return v;
+      if (b == TransTable.LOWER && v >= beta) return v;
+      if (b == TransTable.UPPER && v <= alpha) return v;
+      ttMove = TransTable.move(d);
+    }
+
+    int n = genMoves(ply, ttMove);
+    int[] mv = moves[ply];
+    boolean max = s.getToMove() == declarer;
+    int best = max ? -1 : Integer.MAX_VALUE;
+    int bestMove = -1;
+    int a = alpha, b = beta;
+    SimpleStateUndo ui = undo[ply];
+
+    for (int i=0; i < n; i++) {
+      int c = mv[i];
+      int before = nullGame ? 0 : s.getTrickPoints(declarer);
+
+      s.saveState(ui, c);
+      s.playLegalCard(c);
+      int gain = nullGame ? 0 : s.getTrickPoints(declarer) - before;
+      int v = gain + search(a - gain, b - gain, ply+1);
+      s.restoreState(ui);
+
+      if (max) {
+        if (v > best) { best = v; bestMove = c; }
+        if (best > a) a = best;
+        if (a >= beta) break;
+      } else {
+        if (v < best) { best = v; bestMove = c; }
+        if (best < b) b = best;
+        if (b <= alpha) break;
+      }
+    }
+
+    int bound;
+    if      (best <= alpha) bound = TransTable.UPPER;
+    else if (best >= beta)  bound = TransTable.LOWER;
+    else                    bound = TransTable.EXACT;
+
+    tt.store(key, best, bound, cardsLeft(), bestMove);
+    return best;
+  }
+
+  private int cardsLeft()
+  {
+    return Integer.bitCount(s.getHand(0) | s.getHand(1) | s.getHand(2));
+  }
+
+  // cards in hands and current trick
+  private int cardsInPlay()
+  {
+    int cards = s.getHand(0) | s.getHand(1) | s.getHand(2);
+    int tcn = s.getTrickCardNum();
+    if (tcn == 1 || tcn == 2) {
+      cards |= 1 << s.getTrickCard0NoCheck().getIndex();
+      if (tcn == 2) cards |= 1 << s.getTrickCard(1).getIndex();
+    }
+    return cards;
+  }
+
+  // @return card points of cards in bit set
+  static int points(int cards)
+  {
+    return
+      11 * Integer.bitCount(cards & (RANK_MASK << Card.RANK_ACE)) +
+      10 * Integer.bitCount(cards & (RANK_MASK << Card.RANK_TEN)) +
+      4  * Integer.bitCount(cards & (RANK_MASK << Card.RANK_KING)) +
+      3  * Integer.bitCount(cards & (RANK_MASK << Card.RANK_QUEEN)) +
+      2  * Integer.bitCount(cards & (RANK_MASK << Card.RANK_JACK));
+  }
+
+  private int remainingPoints()
+  {
+    return points(cardsInPlay());
+  }
+
+  // generate legal moves (one per group of equivalent cards), ttMove
+  // first, then ordered by heuristic score
+  // @return number of moves
+  private int genMoves(int ply, int ttMove)
+  {
+    int legal = s.legalCards();
+    int inPlay = cardsInPlay();
+    int[] mv = moves[ply];
+    int[] sc = scores[ply];
+    int n = 0;
+
+    // equivalent cards: neighbours in the same group (ignoring played
+    // cards) held by the same player with the same points
+    for (int[] g : groups[gameType]) {
+      int prev = -1;
+      for (int c : g) {
+        int bit = 1 << c;
+        if ((inPlay & bit) == 0) continue;
+        if ((legal & bit) == 0) { prev = -1; continue; }
+        if (prev < 0 || (!nullGame && Card.points[prev & 7] != Card.points[c & 7])) {
+          mv[n] = c;
+          sc[n] = (c == ttMove) ? Integer.MAX_VALUE : score(c);
+          n++;
+        }
+        prev = c;
+      }
+    }
+
+    // insertion sort, best first
+    for (int i=1; i < n; i++) {
+      int m = mv[i], v = sc[i], j = i-1;
+      while (j >= 0 && sc[j] < v) {
+        mv[j+1] = mv[j];
+        sc[j+1] = sc[j];
+        j--;
+      }
+      mv[j+1] = m;
+      sc[j+1] = v;
+    }
+    return n;
+  }
+
+  // move ordering heuristic: take tricks cheaply, give points to
+  // partner, throw low cards to opponents, lead strong cards
+  private int score(int c)
+  {
+    int tcn = s.getTrickCardNum();
+    int toMove = s.getToMove();
+    int str = strength[gameType][c];
+    int pts = Card.points[c & 7];
+
+    if (tcn == 0 || tcn == 3) return str;
+
+    boolean wins;
+    int t0 = s.getTrickCard0NoCheck().getIndex();
+    if (tcn == 1) {
+      wins = SimpleState.lookupTrickWinner(gameType, SimpleState.trickIndex(t0, c, c)) == 1;
+    } else {
+      int t1 = s.getTrickCard(1).getIndex();
+      wins = SimpleState.lookupTrickWinner(gameType, SimpleState.trickIndex(t0, t1, c)) == 2;
+    }
+
+    int winner = wins ? toMove : s.getTrickWinner();
+    boolean ownParty = (winner == declarer) == (toMove == declarer);
+
+    if (nullGame) {
+      // declarer wants to lose tricks, defenders want declarer to win one
+      if (toMove == declarer) return (wins ? -1000 : 0) + str;
+      return (winner == declarer ? 1000 : 0) - str;
+    }
+
+    if (ownParty) return 1000 + 10 * pts - (wins ? str : 0);
+    return -10 * pts - str;
+  }
+
+  static {
+
+    // suit order (descending rank), without jacks
+    final int[] suitRanks = {
+      Card.RANK_ACE, Card.RANK_TEN, Card.RANK_KING, Card.RANK_QUEEN,
+      Card.RANK_NINE, Card.RANK_EIGHT, Card.RANK_SEVEN
+    };
+    final int[] nullRanks = {
+      Card.RANK_ACE, Card.RANK_KING, Card.RANK_QUEEN, Card.RANK_JACK,
+      Card.RANK_TEN, Card.RANK_NINE, Card.RANK_EIGHT, Card.RANK_SEVEN
+    };
+    final int[] jacks = new int[4];
+    for (int i=0; i < 4; i++)
+      jacks[i] = (3-i) * 8 + Card.RANK_JACK; // clubs .. diamonds
+
+    groups = new int[GameDeclaration.NULL_GAME+1][][];
+    strength = new int[GameDeclaration.NULL_GAME+1][32];
+
+    for (int t=0; t <= GameDeclaration.NULL_GAME; t++) {
+
+      ArrayList<int[]> gl = new ArrayList<int[]>();
+
+      if (t == GameDeclaration.NULL_GAME) {
+        for (int s=0; s < 4; s++) {
+          int[] g = new int[8];
+          for (int i=0; i < 8; i++) g[i] = s * 8 + nullRanks[i];
+          gl.add(g);
+        }
+      } else {
+        // trump: jacks + trump suit
+        int tn = (t == GameDeclaration.GRAND_GAME) ? 4 : 11;
+        int[] g = new int[tn];
+        for (int i=0; i < 4; i++) g[i] = jacks[i];
+        if (t != GameDeclaration.GRAND_GAME) {
+          for (int i=0; i < 7; i++) g[4+i] = t * 8 + suitRanks[i];
+        }
+        gl.add(g);
+
+        for (int s=0; s < 4; s++) {
+          if (s == t) continue;
+          g = new int[7];
+          for (int i=0; i < 7; i++) g[i] = s * 8 + suitRanks[i];
+          gl.add(g);
+        }
+      }
+
+      groups[t] = gl.toArray(new int[gl.size()][]);
+
+      // strength: trump cards above all others
+      for (int[] g : groups[t]) {
+        boolean trump = t != GameDeclaration.NULL_GAME && g == groups[t][0];
+        for (int i=0; i < g.length; i++) {
+          strength[t][g[i]] = (trump ? 100 : 0) + g.length - i;
+        }
+      }
+    }
+  }
+
+  /** solves n random deals after 0..9 random tricks (world view)
+      and prints timing */
+  public static void testSolver(Random rng, int n)
+  {
+    DDSolver solver = new DDSolver();
+    int[] mv = new int[MoveCode.MAX_MOVES];
+    long time = 0;
+
+    for (int k=0; k < n; k++) {
+      SimpleState st = new SimpleState(SimpleState.WORLD_VIEW);
+      st.makeMove(SimpleState.WORLD_MOVE, st.generateWorldMove(rng), null);
+
+      // random bidding/declaration, then random cardplay
+      int tricks = rng.nextInt(10);
+      while (!st.isFinished() &&
+             !(st.getPhase() == SimpleState.CARDPLAY &&
+               (st.getTrickNum() >= tricks && st.getTrickCardNum() % 3 == 0))) {
+        int p = st.getToMove();
+        if (p == SimpleState.WORLD_MOVE) {
+          st.makeMove(p, st.generateWorldMove(rng), null);
+          continue;
+        }
+        int m = st.genMoves(mv);
+        st.makeMove(p, mv[rng.nextInt(m)]);
+      }
+      if (st.isFinished()) continue;
+
+      solver.getTransTable().clear();
+      long t0 = System.nanoTime();
+      solver.solve(st);
+      time += System.nanoTime() - t0;
+    }
+
+    Misc.msg(String.format(Misc.locEn, "%d solves %.1f ms/solve  %d nodes",
+                           n, time / 1e6 / n, solver.getNodes()));
+  }
+}
@@ -0,0 +1,677 @@
+// binary game archive
+//
+// compact alternative to SGF text lines for world view games: reading a
+// game's deal, declaration and result is just a few buffer accesses
+// (Reader, memory-mapped), moves are byte codes. Replaying a game
+// (Reader.toGame) is only needed if states are required.
+//
+// file: int MAGIC, short VERSION, short 0, followed by game records
+//
+// record:
+//   int    length of rest of record
+//   byte   flags (FINISHED, HAS_DEAL)
+//   byte   declarer (-1: none)
+//   byte   game type (GameDeclaration, -1: none)
+//   byte   declaration flags (DECL_*)
+//   short  declarer game value (GameResult.declValue)
+//   short  maximum bid
+//   byte   declarer card points, declarer tricks, matadors
+//   byte   result flags (RES_*)
+//   byte   left, timeout (-1: none)
+//   short  penalty0..2
+//   byte[32] deal: card indexes in deal move order
+//            (hand 0: 0..9, hand 1: 10..19, hand 2: 20..29, skat: 30,31)
+//   short  number of move bytes
+//   moves  (see below)
+//   strings: place, date, comment, series id, game id, player names 0..2,
+//            ratings 0..2 (short length (NULL_STRING: null) + UTF-8 bytes)
+//
+// move: byte (source << 6) | code, source 3 = world, code:
+//   0..31 card index (cardplay)
+//   DEAL (deal from header), PASS, YES, BID + byte value-BID_OFFSET, SKAT,
+//   SKAT_CARDS + 2 card bytes, DECL + declaration byte,
+//   DISCARD + 2 card bytes, DECL_DISCARD + declaration byte + 2 card bytes,
+//   RE, SC, TI0..2, LE0..2,
+//   RAW + string (anything else, e.g. ouvert declarations with card list)
+//
+// declaration byte: type | hand << 3 | ouvert << 4 | schneider << 5 | schwarz << 6
+//
+// all numbers are big-endian
+
+package common;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.util.*;
+
+public class GameArchive
+{
+  public GameArchive()
+  {
+    Misc.err("GameArchive is a static class");
+  }
+
+  public static final int MAGIC   = 0x534b4741; // "SKGA"
+  public static final int VERSION = 1;
+  public static final int FILE_HEADER_SIZE = 8;
+
+  // record flags
+  public static final int FINISHED = 1;
+  public static final int HAS_DEAL = 2;
+
+  // declaration flags
+  public static final int DECL_HAND      = 1;
+  public static final int DECL_OUVERT    = 2;
+  public static final int DECL_SCHNEIDER = 4;
+  public static final int DECL_SCHWARZ   = 8;
+
+  // result flags
+  public static final int RES_UNKNOWN   = 1;
+  public static final int RES_PASSED    = 2;
+  public static final int RES_PENALTY   = 4;
+  public static final int RES_SCHNEIDER = 8;
+  public static final int RES_SCHWARZ   = 16;
+  public static final int RES_OVERBID   = 32;
+  public static final int RES_RESIGNED  = 64;
+
+  // fixed record header offsets (after length)
+  static final int R_FLAGS      = 0;
+  static final int R_DECLARER   = 1;
+  static final int R_TYPE       = 2;
+  static final int R_DECL_FLAGS = 3;
+  static final int R_VALUE      = 4;
+  static final int R_MAX_BID    = 6;
+  static final int R_POINTS     = 8;
+  static final int R_TRICKS     = 9;
+  static final int R_MATADORS   = 10;
+  static final int R_RESULT     = 11;
+  static final int R_LEFT       = 12;
+  static final int R_TIMEOUT    = 13;
+  static final int R_PENALTY    = 14;
+  static final int R_DEAL       = 20;
+  static final int R_MOVE_BYTES = 52;
+  static final int R_MOVES      = 54;
+
+  public static final int STRING_NUM = 11;
+  public static final int S_PLACE = 0, S_DATE = 1, S_COMMENT = 2, S_SERIES = 3,
+    S_ID = 4, S_NAME0 = 5, S_RATING0 = 8;
+
+  static final int NULL_STRING = 0xffff;
+  static final int MAX_RECORD = 1 << 20;
+
+  // move codes (>= 32)
+  static final int M_DEAL         = 32;
+  static final int M_PASS         = 33;
+  static final int M_YES          = 34;
+  static final int M_BID          = 35;
+  static final int M_SKAT         = 36;
+  static final int M_SKAT_CARDS   = 37;
+  static final int M_DECL         = 38;
+  static final int M_DISCARD      = 39;
+  static final int M_DECL_DISCARD = 40;
+  static final int M_RE           = 41;
+  static final int M_SC           = 42;
+  static final int M_TI           = 43; // + player
+  static final int M_LE           = 46; // + player
+  static final int M_RAW          = 63;
+
+  static final int WORLD_SOURCE = 3;
+  static final int BID_OFFSET = 18;
+
+  // encoding ----------------------------------------------------------
+
+  /** @return record for world view game g (without length) */
+  public static byte[] encode(SimpleGame g)
+  {
+    if (g.getOwner() != SimpleState.WORLD_VIEW)
+      Misc.err("GameArchive: world view game expected");
+
+    ByteArrayOutputStream bos = new ByteArrayOutputStream(256);
+    DataOutputStream out = new DataOutputStream(bos);
+
+    try {
+      SimpleState s = g.getCurrentState();
+      GameResult gr = new GameResult();
+      s.gameResult(gr);
+      GameDeclaration d = s.getGameDeclaration();
+
+      int[] deal = new int[32];
+      boolean hasDeal = false;
+      if (g.getNumMoves() > 0 && g.getMove(0).source == SimpleState.WORLD_MOVE)
+        hasDeal = parseDeal(g.getMove(0).action, deal);
+
+      int flags = 0;
+      if (s.isFinished()) flags |= FINISHED;
+      if (hasDeal) flags |= HAS_DEAL;
+
+      int declFlags = 0;
+      if (d.hand)               declFlags |= DECL_HAND;
+      if (d.ouvert)             declFlags |= DECL_OUVERT;
+      if (d.schneiderAnnounced) declFlags |= DECL_SCHNEIDER;
+      if (d.schwarzAnnounced)   declFlags |= DECL_SCHWARZ;
+
+      int res = 0;
+      if (gr.unknown)   res |= RES_UNKNOWN;
+      if (gr.passed)    res |= RES_PASSED;
+      if (gr.penalty)   res |= RES_PENALTY;
+      if (gr.schneider) res |= RES_SCHNEIDER;
+      if (gr.schwarz)   res |= RES_SCHWARZ;
+      if (gr.overbid)   res |= RES_OVERBID;
+      if (gr.resigned)  res |= RES_RESIGNED;
+
+      out.writeByte(flags);
+      out.writeByte(s.getDeclarer());
+      out.writeByte(d.type);
+      out.writeByte(declFlags);
+      out.writeShort(gr.declValue);
+      out.writeShort(s.getMaxBid());
+      out.writeByte(gr.declCardPoints);
+      out.writeByte(gr.declTricks);
+      out.writeByte(gr.matadors);
+      out.writeByte(res);
+      out.writeByte(s.getLeft());
+      out.writeByte(s.getTimeOut());
+      out.writeShort(gr.penalty0);
+      out.writeShort(gr.penalty1);
+      out.writeShort(gr.penalty2);
+      for (int i=0; i < 32; i++) {
+        out.writeByte(hasDeal ? deal[i] : -1);
+      }
+
+      ByteArrayOutputStream mbos = new ByteArrayOutputStream(64);
+      DataOutputStream mout = new DataOutputStream(mbos);
+      int n = g.getNumMoves();
+      for (int i=0; i < n; i++) {
+        // fixed RE moves may not have their own state
+        SimpleState before = i < g.getStateNum() ? g.getState(i) : s;
+        encodeMove(g.getMove(i), before, i == 0 && hasDeal, mout);
+      }
+      mout.flush();
+      if (mbos.size() > 0xffff)
+        Misc.err("GameArchive: too many moves");
+      out.writeShort(mbos.size());
+      mbos.writeTo(out);
+
+      writeString(out, g.getPlace());
+      writeString(out, g.getDateTime());
+      writeString(out, g.getComment());
+      writeString(out, g.getSeriesId());
+      writeString(out, g.getId());
+      for (int i=0; i < 3; i++) writeString(out, g.getPlayerName(i));
+      for (int i=0; i < 3; i++) writeString(out, g.getRating(i));
+      out.flush();
+    }
+    catch (IOException e) {
+      Misc.err("GameArchive: " + e); // can't happen
+    }
+
+    return bos.toByteArray();
+  }
+
+  // @return true if move is a standard 32 card deal, card indexes in deal
+  static boolean parseDeal(String move, int[] deal)
+  {
+    ArrayList<Card> cv = Card.cardListFromString(move);
+    if (cv == null || cv.size() != 32) return false;
+
+    int seen = 0;
+    for (int i=0; i < 32; i++) {
+      Card c = cv.get(i);
+      if (c == null || !c.isKnown()) return false;
+      deal[i] = c.getIndex();
+      seen |= 1 << deal[i];
+    }
+    return seen == -1 && Card.cardListToString(cv).equals(move);
+  }
+
+  // write move m made in state s
+  static void encodeMove(Move m, SimpleState s, boolean deal, DataOutputStream out)
+    throws IOException
+  {
+    int src = m.source == SimpleState.WORLD_MOVE ? WORLD_SOURCE : m.source;
+    if (src < 0 || src > WORLD_SOURCE)
+      Misc.err("GameArchive: illegal move source " + m.source);
+
+    String a = m.action;
+    src <<= 6;
+
+    if (deal) { out.writeByte(src | M_DEAL); return; }
+
+    if (a.equals("RE")) { out.writeByte(src | M_RE); return; }
+    if (a.equals("SC")) { out.writeByte(src | M_SC); return; }
+
+    if (m.source == SimpleState.WORLD_MOVE && a.length() == 4 && a.charAt(2) == '.') {
+      int p = a.charAt(3) - '0';
+      if (p >= 0 && p < 3) {
+        if (a.startsWith("TI")) { out.writeByte(src | (M_TI + p)); return; }
+        if (a.startsWith("LE")) { out.writeByte(src | (M_LE + p)); return; }
+      }
+    }
+
+    int code = MoveCode.fromString(a, s.getPhase(), s.getDiscardHalfPhase());
+
+    // only use code if it reproduces the move string exactly
+    if (code != MoveCode.NONE && MoveCode.toString(code).equals(a)) {
+
+      switch (MoveCode.kind(code)) {
+
+      case MoveCode.CARD:
+        out.writeByte(src | MoveCode.cardIndex(code));
+        return;
+
+      case MoveCode.PASS: out.writeByte(src | M_PASS); return;
+      case MoveCode.YES:  out.writeByte(src | M_YES);  return;
+      case MoveCode.SKAT: out.writeByte(src | M_SKAT); return;
+
+      case MoveCode.BID: {
+        int v = MoveCode.bidValue(code) - BID_OFFSET;
+        if (v < 0 || v > 255) break;
+        out.writeByte(src | M_BID);
+        out.writeByte(v);
+        return;
+      }
+
+      case MoveCode.SKAT_CARDS:
+        out.writeByte(src | M_SKAT_CARDS);
+        out.writeByte(MoveCode.cardIndex(code));
+        out.writeByte(MoveCode.cardIndex2(code));
+        return;
+
+      case MoveCode.DECL:
+        out.writeByte(src | M_DECL);
+        out.writeByte(declByte(code));
+        return;
+
+      case MoveCode.DISCARD:
+        out.writeByte(src | M_DISCARD);
+        out.writeByte(MoveCode.cardIndex(code));
+        out.writeByte(MoveCode.cardIndex2(code));
+        return;
+
+      case MoveCode.DECL_DISCARD:
+        out.writeByte(src | M_DECL_DISCARD);
+        out.writeByte(declByte(code));
+        out.writeByte(MoveCode.cardIndex(code));
+        out.writeByte(MoveCode.cardIndex2(code));
+        return;
+      }
+    }
+
+    out.writeByte(src | M_RAW);
+    writeString(out, a);
+  }
+
+  static int declByte(int code)
+  {
+    return
+      MoveCode.gameType(code) |
+      (MoveCode.hand(code)      ? 1 << 3 : 0) |
+      (MoveCode.ouvert(code)    ? 1 << 4 : 0) |
+      (MoveCode.schneider(code) ? 1 << 5 : 0) |
+      (MoveCode.schwarz(code)   ? 1 << 6 : 0);
+  }
+
+  static int declCode(int b)
+  {
+    return MoveCode.decl(b & 7, (b & (1 << 3)) != 0, (b & (1 << 4)) != 0,
+                         (b & (1 << 5)) != 0, (b & (1 << 6)) != 0);
+  }
+
+  static void writeString(DataOutputStream out, String s) throws IOException
+  {
+    if (s == null) { out.writeShort(NULL_STRING); return; }
+    byte[] b = s.getBytes("UTF-8");
+    if (b.length >= NULL_STRING)
+      Misc.err("GameArchive: string too long");
+    out.writeShort(b.length);
+    out.write(b);
+  }
+
+  // writing -----------------------------------------------------------
+
+  /** appends game records to an archive file */
+  public static class Writer
+  {
+    private final DataOutputStream out;
+    private long games;
+
+    /** opens file for appending, creates it if needed */
+    public Writer(String file) throws IOException
+    {
+      File f = new File(file);
+      boolean fresh = !f.exists() || f.length() == 0;
+
+      if (!fresh) {
+        DataInputStream in = new DataInputStream(new FileInputStream(f));
+        try {
+          if (in.readInt() != MAGIC)
+            throw new IOException("not a game archive: " + file);
+        }
+        finally {
+          in.close();
+        }
+      }
+
+      out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(f, true), 1 << 16));
+
+      if (fresh) {
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeShort(0);
+      }
+    }
+
+    /** appends world view game g */
+    public void append(SimpleGame g) throws IOException
+    {
+      byte[] rec = encode(g);
+      out.writeInt(rec.length);
+      out.write(rec);
+      games++;
+    }
+
+    /** @return number of games appended so far */
+    public long getGameNum() { return games; }
+
+    public void flush() throws IOException { out.flush(); }
+
+    public void close() throws IOException { out.close(); }
+  }
+
+  /** reads SGF games from br and appends them to w, games that can't
+      be read are reported and skipped
+      @return number of games appended */
+  public static int convertSgf(BufferedReader br, Writer w) throws IOException
+  {
+    int n = 0, line = 0;
+
+    for (;;) {
+      SimpleGame g = new SimpleGame(SimpleState.WORLD_VIEW);
+      String r = g.fromSgf(br);
+      if (r == null) break;
+      line++;
+      if (!r.equals("")) {
+        Misc.msg("GameArchive: skipping game " + line + ": " + r);
+        continue;
+      }
+      w.append(g);
+      n++;
+    }
+    return n;
+  }
+
+  // reading -----------------------------------------------------------
+
+  /** sequential and random access to archive records via a memory
+      mapped window into the file (not thread-safe, use one reader per
+      thread) */
+  public static class Reader
+  {
+    static final long WINDOW = 1L << 30;
+
+    private final RandomAccessFile raf;
+    private final FileChannel ch;
+    private final long size;
+    private MappedByteBuffer buf;
+    private long base;     // file offset of buf
+    private long pos = -1; // file offset of current record
+    private long nextPos = FILE_HEADER_SIZE;
+    private int off;       // buffer offset of current record data (after length)
+    private int len;       // current record data length
+    private int strOff;    // buffer offset of strings
+
+    public Reader(String file) throws IOException
+    {
+      raf = new RandomAccessFile(file, "r");
+      ch = raf.getChannel();
+      size = ch.size();
+
+      if (size < FILE_HEADER_SIZE || raf.readInt() != MAGIC) {
+        raf.close();
+        throw new IOException("not a game archive: " + file);
+      }
+      int v = raf.readShort();
+      if (v != VERSION) {
+        raf.close();
+        throw new IOException("unsupported archive version " + v);
+      }
+      map(0);
+    }
+
+    private void map(long at) throws IOException
+    {
+      base = at;
+      buf = ch.map(FileChannel.MapMode.READ_ONLY, at, Math.min(WINDOW, size - at));
+    }
+
+    // make [at, at+n) accessible
+    private void ensure(long at, int n) throws IOException
+    {
+      if (at < base || at + n > base + buf.limit()) map(at);
+    }
+
+    /** advance to next record
+        @return false at end of file */
+    public boolean next() throws IOException
+    {
+      return seek(nextPos);
+    }
+
+    /** move to record starting at file offset at (from position())
+        @return false if at is the end of the file */
+    public boolean seek(long at) throws IOException
+    {
+      if (at >= size) return false;
+      if (at + 4 > size)
+        throw new IOException("truncated record at " + at);
+
+      ensure(at, 4);
+      int n = buf.getInt((int)(at - base));
+      if (n < R_MOVES || n > MAX_RECORD || at + 4 + n > size)
+        throw new IOException("corrupt record at " + at);
+
+      ensure(at, 4 + n);
+      pos = at;
+      off = (int)(at - base) + 4;
+      len = n;
+      nextPos = at + 4 + n;
+      strOff = off + R_MOVES + getMoveBytes();
+      return true;
+    }
+
+    /** @return file offset of current record */
+    public long position() { return pos; }
+
+    /** @return size of current record in bytes */
+    public int recordSize() { return len + 4; }
+
+    private int u8(int i)  { return buf.get(off + i) & 0xff; }
+    private int s8(int i)  { return buf.get(off + i); }
+    private int s16(int i) { return buf.getShort(off + i); }
+
+    public boolean isFinished() { return (u8(R_FLAGS) & FINISHED) != 0; }
+    public boolean hasDeal()    { return (u8(R_FLAGS) & HAS_DEAL) != 0; }
+    public int getDeclarer()    { return s8(R_DECLARER); }
+    public int getGameType()    { return s8(R_TYPE); }
+    public int getDeclFlags()   { return u8(R_DECL_FLAGS); }
+    public int getDeclValue()   { return s16(R_VALUE); }
+    public int getMaxBid()      { return s16(R_MAX_BID); }
+    public int getDeclCardPoints() { return u8(R_POINTS); }
+    public int getDeclTricks()  { return u8(R_TRICKS); }
+    public int getMatadors()    { return s8(R_MATADORS); }
+    public int getResultFlags() { return u8(R_RESULT); }
+    public int getLeft()        { return s8(R_LEFT); }
+    public int getTimeOut()     { return s8(R_TIMEOUT); }
+    public int getPenalty(int p) { return s16(R_PENALTY + 2*p); }
+
+    /** @return card index of i-th card in deal (-1 if no deal) */
+    public int getDealCard(int i) { return s8(R_DEAL + i); }
+
+    /** @return initial hand of player (0..2), 3: original skat */
+    public int getInitialHand(int p)
+    {
+      if (!hasDeal()) return 0;
+      int h = 0;
+      int from = p * 10, to = p < 3 ? from + 10 : 32;
+      for (int i=from; i < to; i++) {
+        h |= 1 << u8(R_DEAL + i);
+      }
+      return h;
+    }
+
+    /** fill in declarer's result (GameResult.toString() is identical
+        to the one of the archived game) */
+    public void getResult(GameResult gr)
+    {
+      int res = getResultFlags();
+      gr.init();
+      gr.unknown   = (res & RES_UNKNOWN) != 0;
+      gr.passed    = (res & RES_PASSED) != 0;
+      gr.penalty   = (res & RES_PENALTY) != 0;
+      gr.schneider = (res & RES_SCHNEIDER) != 0;
+      gr.schwarz   = (res & RES_SCHWARZ) != 0;
+      gr.overbid   = (res & RES_OVERBID) != 0;
+      gr.resigned  = (res & RES_RESIGNED) != 0;
+      gr.declarer  = getDeclarer();
+      gr.declValue = getDeclValue();
+      gr.matadors  = getMatadors();
+      gr.declCardPoints = getDeclCardPoints();
+      gr.declTricks = getDeclTricks();
+      gr.left = getLeft();
+      gr.timeout = getTimeOut();
+      gr.penalty0 = getPenalty(0);
+      gr.penalty1 = getPenalty(1);
+      gr.penalty2 = getPenalty(2);
+    }
+
+    /** @return number of bytes used by moves */
+    public int getMoveBytes() { return buf.getShort(off + R_MOVE_BYTES) & 0xffff; }
+
+    /** @return string i (S_* constants, name/rating of player p: S_NAME0+p, S_RATING0+p) */
+    public String getString(int i)
+    {
+      int o = strOff;
+      for (int j=0; j < i; j++) {
+        int n = buf.getShort(o) & 0xffff;
+        o += 2 + (n == NULL_STRING ? 0 : n);
+      }
+      return readString(o);
+    }
+
+    public String getPlayerName(int p) { return getString(S_NAME0 + p); }
+
+    private String readString(int o)
+    {
+      int n = buf.getShort(o) & 0xffff;
+      if (n == NULL_STRING) return null;
+      byte[] b = new byte[n];
+      for (int i=0; i < n; i++) b[i] = buf.get(o + 2 + i);
+      try { return new String(b, "UTF-8"); }
+      catch (UnsupportedEncodingException e) { return null; }
+    }
+
+    /** appends moves of current record to moves
+        @return null if OK, error message otherwise */
+    public String getMoves(ArrayList<Move> moves)
+    {
+      int o = off + R_MOVES;
+      int end = o + getMoveBytes();
+
+      while (o < end) {
+        int b = buf.get(o++) & 0xff;
+        int src = b >>> 6;
+        int c = b & 63;
+        int player = src == WORLD_SOURCE ? SimpleState.WORLD_MOVE : src;
+        String a;
+
+        if (c < 32) {
+          a = Card.fromIndex(c).toString();
+        } else {
+          switch (c) {
+          case M_DEAL: {
+            if (!hasDeal()) return "deal missing";
+            StringBuilder sb = new StringBuilder();
+            for (int i=0; i < 32; i++) {
+              if (i > 0) sb.append(Card.cardSep);
+              sb.append(Card.fromIndex(getDealCard(i)).toString());
+            }
+            a = sb.toString();
+            break;
+          }
+          case M_PASS: a = "p"; break;
+          case M_YES:  a = "y"; break;
+          case M_SKAT: a = "s"; break;
+          case M_BID:  a = "" + ((buf.get(o++) & 0xff) + BID_OFFSET); break;
+          case M_SKAT_CARDS:
+            a = MoveCode.toString(MoveCode.skatCards(buf.get(o), buf.get(o+1)));
+            o += 2;
+            break;
+          case M_DECL:
+            a = MoveCode.toString(declCode(buf.get(o++) & 0xff));
+            break;
+          case M_DISCARD:
+            a = MoveCode.toString(MoveCode.discard(buf.get(o), buf.get(o+1)));
+            o += 2;
+            break;
+          case M_DECL_DISCARD:
+            a = MoveCode.toString(MoveCode.declDiscard(declCode(buf.get(o) & 0xff),
+                                                       buf.get(o+1), buf.get(o+2)));
+            o += 3;
+            break;
+          case M_RE: a = "RE"; break;
+          case M_SC: a = "SC"; break;
+          case M_TI: case M_TI+1: case M_TI+2: a = "TI." + (c - M_TI); break;
+          case M_LE: case M_LE+1: case M_LE+2: a = "LE." + (c - M_LE); break;
+          case M_RAW: {
+            a = readString(o);
+            o += 2 + (buf.getShort(o) & 0xffff);
+            if (a == null) return "bad raw move";
+            break;
+          }
+          default:
+            return "unknown move code " + c;
+          }
+        }
+
+        moves.add(new Move(player, a));
+      }
+
+      if (o != end) return "move bytes corrupt";
+      return null;
+    }
+
+    /** replays current record into g
+        @return null if OK, error message otherwise */
+    public String toGame(SimpleGame g)
+    {
+      g.reset(SimpleState.WORLD_VIEW);
+
+      ArrayList<Move> moves = new ArrayList<Move>();
+      String r = getMoves(moves);
+      if (r != null) return r;
+
+      for (Move m : moves) {
+        r = g.makeMove(m.source, m.action, null);
+        if (r != null) return "move error: " + r;
+      }
+
+      g.setPlace(getString(S_PLACE));
+      g.setDateTime(getString(S_DATE));
+      g.setComment(getString(S_COMMENT));
+      g.setSeriesId(getString(S_SERIES));
+      g.setId(getString(S_ID));
+      for (int p=0; p < 3; p++) {
+        g.setPlayerName(p, getString(S_NAME0 + p));
+        g.setRating(p, getString(S_RATING0 + p));
+      }
+      return null;
+    }
+
+    public void close() throws IOException
+    {
+      buf = null;
+      raf.close();
+    }
+  }
+}
@@ -108,6 +108,12 @@ public class GameDeclaration implements Serializable
   /** @return The suit of a card in the context of the current game type (4 for Jacks in Grand game)
   */
   public int tellCardSuit(Card c) {
+    return tellCardSuit(c, type);
+  }
+
+  /** @return The suit of a card in the context of game type
+  */
+  public static int tellCardSuit(Card c, int type) {
     if (c.getRank() == Card.RANK_JACK) {
       if (type == GRAND_GAME || type == NO_GAME) {
         return 4;
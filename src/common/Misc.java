@@ -511,7 +511,7 @@ public class Misc
     return newMsg.toString();
   }
 
-  synchronized public static void msg(String msg)
+  public static void msg(String msg)
   {
     /*
       if (msg.equals("H")) {
@@ -521,16 +521,29 @@ public class Misc
       }
     */
     
-    System.out.println(msg);
-    log(msg);
+    AsyncLog.log(AsyncLog.INFO, msg);
   }
 
-  synchronized public static void warn(String msg)
+  /** log concatenation of parts at level (see AsyncLog), parts are only
+      converted to strings if the message is written */
+  public static void msg(int level, Object... parts)
   {
-    msg("WARN: " + msg);
+    AsyncLog.log(level, parts);
   }
 
-  synchronized public static void err(String s)
+  /** @return true iff messages of level are written (to avoid building
+      expensive messages) */
+  public static boolean isLogged(int level)
+  {
+    return AsyncLog.isLogged(level);
+  }
+
+  public static void warn(String msg)
+  {
+    AsyncLog.log(AsyncLog.WARN, "WARN: " + msg);
+  }
+
+  public static void err(String s)
   {
     err(s, 20);
   }
@@ -544,14 +557,15 @@ public class Misc
       s = s + "\n" + stack2string(e);
     }
 
-    msg("ERR: " + s);
+    AsyncLog.log(AsyncLog.ERR, "ERR: " + s);
+    AsyncLog.flush();
 
     if (logging) {
 
       // rename logfile to bugreport file
 
       try {
-	out.close(); out.flush();
+        AsyncLog.closeFile();
         (new File(getReportFile())).delete();
         File rf = new File(getReportFile());        
 	File lf = new File(getLogFile());
@@ -572,19 +586,6 @@ public class Misc
     Misc.err("EXCEPTION - STOP");
   }
 
-  static void log(String s)
-  {
-    if (!logging) return;
-
-    try {
-      out.writeBytes("["+currentUTCdate()+"] " + s + "\n");
-    }
-    catch (Exception f) {
-      System.err.println("error logging to file " + logBaseName + logFileExt);
-      System.exit(-1);
-    }
-  }
-
 
   public static String currentUTCdate()
   {
@@ -658,12 +659,13 @@ public class Misc
 
     try {
       myFile.delete();
-      out = new DataOutputStream(new FileOutputStream(name, true));
+      out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(name, true), 1 << 16));
     }
     catch (Exception f) {
       Misc.err("error opening logfile " + name);
       return;
     }
+    AsyncLog.setFile(out);
     logging = true;
     Misc.msg("logging to file " + name);
   }
@@ -729,6 +731,9 @@ public class Misc
     if (m > n || m < 0 || n < 0) {
       return 0;
     }
+    if (n <= 32) {
+      return WorldIndexer.choose(n, m); // table lookup
+    }
     int ans=1;
     for (int x = 0; x < m; x++)
       ans=(ans*(n-x))/(x+1);
@@ -737,106 +742,19 @@ public class Misc
 
   /** Unranks the deal corresponding to index in state s, and stores the result in h.  H must be of size 4.
       No regard to any particular player's perspective.
+      Thread-safe, see WorldIndexer.
   */
   public static void unrank(int index, SimpleState s, int[] h) {
-
-    int pubCards = Misc.getPublicCards(s);
-
-    // Disassembling the mixed radix number into hand ranks
-    for (int p = 0; p < 3; p++) {
-      int mult = 1;      
-      
-      int numOut = 32 - Misc.popCount(pubCards);
-      for (int p2 = 0; p2 < p+1; p2++) {
-        if ( !((s.getGameDeclaration().ouvert) && (p2 == s.getDeclarer())) ) {
-          numOut -= s.numCards(p2);
-        }
-      }
-      for (int p2 = p+1; p2 < 3; p2++) {
-        if ( !((s.getGameDeclaration().ouvert) && (p2 == s.getDeclarer())) ) {
-          mult *= Misc.choose(numOut, s.numCards(p2));
-          numOut -= s.numCards(p2);
-        }
-      }
-      
-      if ( !((s.getGameDeclaration().ouvert) && (p == s.getDeclarer())) ) {
-        ranks[p] = index / mult;
-        index -= (ranks[p] * mult);
-      } 
-      else { 
-        ranks[p] = 0;
-      }
-    }
-
-    for (int p = 0; p < 3; p++) {
-      //Misc.msg("Trying to unrank: " + ranks[p]);
-      if ( !((s.getGameDeclaration().ouvert) && (p == s.getDeclarer())) ) {
-        h[p] = Hand.colexUnrank(ranks[p], s.numCards(p), pubCards);
-        pubCards ^= h[p];
-      }
-      else {
-        h[p] = s.getHand(p);
-      }
-    }
-
-    // h[3] (the skat) must be whatever's left
-    h[3] = -1 ^ s.getPlayedCards() ^ h[0] ^ h[1] ^ h[2];
-
+    WorldIndexer wi = WorldIndexer.get();
+    wi.setState(s);
+    wi.unrank(index, h);
   }
 
   /** @return The rank of a given world in its entirety, with no regard to any particular player's perspective.
+      Thread-safe, see WorldIndexer.
    */
-  static int[] hands = new int[3];
-  static int[] ranks = new int[3];
-
   public static int rank(SimpleState s) {
-
-    int finalRank = 0;
-
-    // Remember, the skat is implicit given the other cards
-    for (int p = 0; p < 3; p++) {
-      hands[p] = s.getHand(p);
-    }
-   
-    int pubCards = Misc.getPublicCards(s);
-
-    for (int p = 0; p < 3; p++) {
-    
-      //Misc.msg("Rank should be: " + Hand.colexRank(hands[p], pubCards));
-      if ((s.getGameDeclaration().ouvert) && (p == s.getDeclarer())) {
-        ranks[p] = 0;
-      }
-      else {
-        ranks[p] = Hand.colexRank(hands[p], pubCards);
-        pubCards ^= hands[p];
-      }
-    }
-
-    // Now forming the mixed radix number
-
-    for (int p = 0; p < 3; p++) {
-      int mult = 1;      
-      
-      int numOut = 32 - Misc.popCount(Misc.getPublicCards(s));
-      for (int p2 = 0; p2 < p+1; p2++) {
-        if ( !((s.getGameDeclaration().ouvert) && (p2 == s.getDeclarer())) ) {          
-          numOut -= s.numCards(p2);
-        }
-      }
-      for (int p2 = p+1; p2 < 3; p2++) {
-        if ( !((s.getGameDeclaration().ouvert) && (p2 == s.getDeclarer())) ) {
-          mult *= Misc.choose( numOut, s.numCards(p2));
-          //Misc.msg("Mult is: " + mult);
-          numOut -= s.numCards(p2);
-        }
-      }  
-      
-      finalRank += ranks[p] * mult;
-      //Misc.msg("Final rank is now: " + finalRank);      
-    }
-
-    return finalRank;
-    
+    return (int)WorldIndexer.get().rank(s);
   }
 
   public static HandDeal unrank(int index, SimpleState s, int p) {
@@ -0,0 +1,233 @@
+// int-coded moves for SimpleState (search code doesn't need to touch Strings)
+//
+// layout:
+//   bits  0..4  : card index (cardplay), 1st discarded card / skat card
+//   bits  5..9  : 2nd discarded card / skat card
+//   bits  0..9  : bid value (BID)
+//   bits 10..12 : game type (DECL, DECL_DISCARD)
+//   bits 13..16 : hand, ouvert, schneider, schwarz flags
+//   bits 20..23 : move kind
+//
+// card moves are just the card index (kind CARD = 0)
+
+package common;
+
+public class MoveCode
+{
+  public MoveCode()
+  {
+    Misc.err("MoveCode is a static class");
+  }
+
+  // move kinds, don't change (used in binary game files)
+  public static final int CARD         = 0; // card index
+  public static final int PASS         = 1; // p
+  public static final int YES          = 2; // y
+  public static final int BID          = 3; // bid value
+  public static final int SKAT         = 4; // s (request skat)
+  public static final int SKAT_CARDS   = 5; // world move: skat revealed to declarer
+  public static final int DECL         = 6; // game declaration only (hand game or half move)
+  public static final int DISCARD      = 7; // discarded cards only (half move)
+  public static final int DECL_DISCARD = 8; // declaration + discarded cards
+
+  public static final int NONE = -1; // no move
+
+  // enough room for genMoves(int[]) in any phase (66 discards * 7 declarations)
+  public static final int MAX_MOVES = 66 * 7;
+
+  static final int KIND_POS  = 20;
+  static final int TYPE_POS  = 10;
+  static final int HAND_BIT      = 1 << 13;
+  static final int OUVERT_BIT    = 1 << 14;
+  static final int SCHNEIDER_BIT = 1 << 15;
+  static final int SCHWARZ_BIT   = 1 << 16;
+  static final int DECL_MASK =
+    (7 << TYPE_POS) | HAND_BIT | OUVERT_BIT | SCHNEIDER_BIT | SCHWARZ_BIT;
+
+  public static final int PASS_CODE = PASS << KIND_POS;
+  public static final int YES_CODE  = YES  << KIND_POS;
+  public static final int SKAT_CODE = SKAT << KIND_POS;
+
+  static public int kind(int code) { return code >>> KIND_POS; }
+
+  static public int card(int index) { return index; }
+  static public int card(Card c) { return c.getIndex(); }
+  static public int cardIndex(int code) { return code & 31; }
+
+  // 2nd card of a DISCARD/DECL_DISCARD/SKAT_CARDS move
+  static public int cardIndex2(int code) { return (code >>> 5) & 31; }
+
+  static public int bid(int value) { return (BID << KIND_POS) | value; }
+  static public int bidValue(int code) { return code & 1023; }
+
+  static public int skatCards(int i0, int i1)
+  {
+    return (SKAT_CARDS << KIND_POS) | i0 | (i1 << 5);
+  }
+
+  /** @return declaration code, normalized like GameDeclaration.fromString */
+  static public int decl(int type, boolean hand, boolean ouvert,
+                         boolean schneider, boolean schwarz)
+  {
+    if (ouvert && type != GameDeclaration.NULL_GAME) {
+      hand = schneider = schwarz = true;
+    }
+    if (schwarz) schneider = true;
+
+    int code = (DECL << KIND_POS) | (type << TYPE_POS);
+    if (hand)      code |= HAND_BIT;
+    if (ouvert)    code |= OUVERT_BIT;
+    if (schneider) code |= SCHNEIDER_BIT;
+    if (schwarz)   code |= SCHWARZ_BIT;
+    return code;
+  }
+
+  static public int decl(GameDeclaration d)
+  {
+    return decl(d.type, d.hand, d.ouvert, d.schneiderAnnounced, d.schwarzAnnounced);
+  }
+
+  static public int discard(int i0, int i1)
+  {
+    return (DISCARD << KIND_POS) | i0 | (i1 << 5);
+  }
+
+  /** @return declaration + discard move, declCode from decl() */
+  static public int declDiscard(int declCode, int i0, int i1)
+  {
+    return (DECL_DISCARD << KIND_POS) | (declCode & DECL_MASK) | i0 | (i1 << 5);
+  }
+
+  static public int gameType(int code) { return (code >>> TYPE_POS) & 7; }
+  static public boolean hand(int code) { return (code & HAND_BIT) != 0; }
+  static public boolean ouvert(int code) { return (code & OUVERT_BIT) != 0; }
+  static public boolean schneider(int code) { return (code & SCHNEIDER_BIT) != 0; }
+  static public boolean schwarz(int code) { return (code & SCHWARZ_BIT) != 0; }
+
+  /** store declaration part of code in d */
+  static public void toDeclaration(int code, GameDeclaration d)
+  {
+    d.type = gameType(code);
+    d.hand = hand(code);
+    d.ouvert = ouvert(code);
+    d.schneiderAnnounced = schneider(code);
+    d.schwarzAnnounced = schwarz(code);
+  }
+
+  /** @return move string as used by SimpleState.makeMove(int, String, String[])
+      (ouvert declarations without card list, see toString(int, int)) */
+  static public String toString(int code)
+  {
+    return toString(code, 0);
+  }
+
+  /** same as above, but appends declarerHand to ouvert declarations
+      if declarerHand != 0 (needed if viewers don't know the hand) */
+  static public String toString(int code, int declarerHand)
+  {
+    switch (kind(code)) {
+
+    case CARD:
+      return Card.fromIndex(cardIndex(code)).toString();
+
+    case PASS: return "p";
+    case YES:  return "y";
+    case SKAT: return "s";
+    case BID:  return "" + bidValue(code);
+
+    case SKAT_CARDS:
+    case DISCARD:
+      return
+        Card.fromIndex(cardIndex(code)).toString() + Card.cardSep +
+        Card.fromIndex(cardIndex2(code)).toString();
+
+    case DECL:
+    case DECL_DISCARD: {
+      GameDeclaration d = new GameDeclaration();
+      toDeclaration(code, d);
+      StringBuilder sb = new StringBuilder(d.toString());
+      if (kind(code) == DECL_DISCARD) {
+        sb.append(Card.cardSep);
+        sb.append(Card.fromIndex(cardIndex(code)).toString());
+        sb.append(Card.cardSep);
+        sb.append(Card.fromIndex(cardIndex2(code)).toString());
+      }
+      if (d.ouvert && declarerHand != 0) {
+        sb.append(Card.cardSep);
+        sb.append(Card.cardListToString(Hand.toCardList(declarerHand)));
+      }
+      return sb.toString();
+    }
+    }
+
+    return "?";
+  }
+
+  /** @return code of move string in the given phase (card lists
+      appended to ouvert declarations are ignored), NONE if not
+      representable (deal, RE, SC, TI, LE moves) */
+  static public int fromString(String move, int phase, boolean discardHalfPhase)
+  {
+    switch (phase) {
+
+    case SimpleState.CARDPLAY: {
+      Card c = Card.fromStringAccurate(move);
+      if (c == null || !c.isKnown()) return NONE;
+      return card(c);
+    }
+
+    case SimpleState.BID:
+      if (move.equals("p")) return PASS_CODE;
+      try { return bid(Integer.parseInt(move)); }
+      catch (NumberFormatException e) { return NONE; }
+
+    case SimpleState.ANSWER:
+      if (move.equals("y")) return YES_CODE;
+      if (move.equals("p")) return PASS_CODE;
+      return NONE;
+
+    case SimpleState.SKAT_OR_HAND_DECL: {
+      if (move.equals("s")) return SKAT_CODE;
+      return declFromString(Misc.split(move, "\\.")[0]);
+    }
+
+    case SimpleState.GET_SKAT: {
+      String[] parts = Misc.split(move, "\\.");
+      if (parts.length != 2) return NONE;
+      Card c0 = Card.fromStringAccurate(parts[0]);
+      Card c1 = Card.fromStringAccurate(parts[1]);
+      if (c0 == null || c1 == null || !c0.isKnown() || !c1.isKnown()) return NONE;
+      return skatCards(c0.getIndex(), c1.getIndex());
+    }
+
+    case SimpleState.DISCARD_AND_DECL: {
+      String[] parts = Misc.split(move, "\\.");
+
+      if (discardHalfPhase) {
+        if (parts.length < 2) return NONE;
+        Card c0 = Card.fromStringAccurate(parts[0]);
+        Card c1 = Card.fromStringAccurate(parts[1]);
+        if (c0 == null || c1 == null || !c0.isKnown() || !c1.isKnown()) return NONE;
+        return discard(c0.getIndex(), c1.getIndex());
+      }
+
+      int dc = declFromString(parts[0]);
+      if (dc == NONE || parts.length == 1) return dc;
+      if (parts.length < 3) return NONE;
+      Card c0 = Card.fromStringAccurate(parts[1]);
+      Card c1 = Card.fromStringAccurate(parts[2]);
+      if (c0 == null || c1 == null || !c0.isKnown() || !c1.isKnown()) return NONE;
+      return declDiscard(dc, c0.getIndex(), c1.getIndex());
+    }
+    }
+
+    return NONE;
+  }
+
+  static int declFromString(String s)
+  {
+    GameDeclaration d = new GameDeclaration();
+    if (d.fromString(s) != null) return NONE;
+    return decl(d);
+  }
+}
@@ -121,29 +121,27 @@ public class ScoreSheet
                            score);
     }
 
-    public void load(SReader sr)
+    public void load(Tokenizer t)
     {
       init();
 
       try {
-        String t = sr.nextWord();
-        if (t == null || !t.equals("R:")) throw new Exception("expected R:, but got " + t);
-        declarer = Integer.parseInt(sr.nextWord());
-        baseValue = Integer.parseInt(sr.nextWord());        
-        matadors = Integer.parseInt(sr.nextWord());
-        t = sr.nextWord();
-        if (t == null || t.length() != 7) throw new Exception("expected mod. string, but got " + t);
-        hand = t.charAt(0) == '1';
-        schneider = t.charAt(1) == '1';
-        schneiderAnnounced = t.charAt(2) == '1';
-        schwarz = t.charAt(3) == '1';
-        schwarzAnnounced = t.charAt(4) == '1';
-        open = t.charAt(5) == '1';
-        overbid = t.charAt(6) == '1';
-        p0 = Integer.parseInt(sr.nextWord());
-        p1 = Integer.parseInt(sr.nextWord());        
-        p2 = Integer.parseInt(sr.nextWord());
-        score = Integer.parseInt(sr.nextWord());
+        if (!t.nextWordEquals("R:")) throw new Exception("expected R:, but got " + t.wordString());
+        declarer = t.nextInt();
+        baseValue = t.nextInt();
+        matadors = t.nextInt();
+        if (!t.next() || t.wordLength() != 7) throw new Exception("expected mod. string, but got " + t.wordString());
+        hand = t.wordChar(0) == '1';
+        schneider = t.wordChar(1) == '1';
+        schneiderAnnounced = t.wordChar(2) == '1';
+        schwarz = t.wordChar(3) == '1';
+        schwarzAnnounced = t.wordChar(4) == '1';
+        open = t.wordChar(5) == '1';
+        overbid = t.wordChar(6) == '1';
+        p0 = t.nextInt();
+        p1 = t.nextInt();
+        p2 = t.nextInt();
+        score = t.nextInt();
       }
       catch (Throwable e) { Misc.err(""+e); return; }
     }
@@ -168,12 +166,18 @@ public class ScoreSheet
 
     public void fromGame(SimpleGame g)
     {
-      init();
       if (!g.isFinished()) Misc.err("game not finished");
+      fromState(g.getCurrentState());
+    }
+
+    // s: final game state
+    public void fromState(SimpleState s)
+    {
+      init();
 
-      GameDeclaration gd = g.getGameDeclaration();
+      GameDeclaration gd = s.getGameDeclaration();
       GameResult gr = new GameResult();
-      g.getCurrentState().gameResult(gr);
+      s.gameResult(gr);
 
       if (gd.type != GameDeclaration.NO_GAME) {
 
@@ -309,22 +313,22 @@ public class ScoreSheet
     return sb.toString();
   }
 
-  public void load(SReader sr)
+  public void load(Tokenizer t)
   {
-    playerNum = Integer.parseInt(sr.nextWord());
+    playerNum = t.nextInt();
     names = new String[playerNum];
 
     for (int i=0; i < playerNum; i++) {
-      names[i] = sr.nextWord();
+      names[i] = t.nextWord();
     }
 
-    int n = Integer.parseInt(sr.nextWord()); // #rows
+    int n = t.nextInt(); // #rows
     
     rows = new Vector<Row>();
 
     for (int i=0; i < n; i++) {
       Row l = new Row();
-      l.load(sr);
+      l.load(t);
       addRow(l);
     }
   }
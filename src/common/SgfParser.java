@@ -0,0 +1,319 @@
+// streaming SGF game parser
+//
+// SimpleGame.fromSgf reads a game into a StringBuffer and replays it
+// with SimpleGame.makeMove, which stores a SimpleState copy per move.
+// SgfParser reads games directly from a Reader and reports them to a
+// Handler as events (header properties, deal, bid, skat, declaration,
+// card and other moves) without building a game:
+//
+//   NO_STATE : moves are classified syntactically, no state at all
+//   VALIDATE : moves are also checked by playing them on one reused
+//              SimpleState (cards via the int move API), the final
+//              state is passed to Handler.gameEnd
+//
+// card moves are reported as card indexes, no strings are created for
+// them. # comments are skipped like in SimpleGame.readGameString.
+//
+// usage:
+//   SgfParser p = new SgfParser(new SgfParser.Handler() {
+//       public void declare(int player, String move) { ... }
+//       public boolean gameEnd(String error, SimpleState s) { ...; return true; }
+//     }, SgfParser.VALIDATE);
+//   int n = p.parse(reader);
+
+package common;
+
+import java.io.*;
+
+public class SgfParser
+{
+  public static final int NO_STATE = 0;
+  public static final int VALIDATE = 1;
+
+  /** event receiver, override what you need */
+  public static abstract class Handler
+  {
+    /** new game starts */
+    public void gameStart() { }
+
+    /** header property (GM, PC, DT, P0, R, ...), MV is reported as moves */
+    public void property(String label, String value) { }
+
+    /** world move dealing the cards */
+    public void deal(int player, String move) { }
+
+    /** bid, yes (y) or pass (p) */
+    public void bid(int player, String move) { }
+
+    /** skat request (s) or world move revealing the skat */
+    public void skat(int player, String move) { }
+
+    /** declaration, possibly with discarded cards (or discard only) */
+    public void declare(int player, String move) { }
+
+    /** card played */
+    public void card(int player, int cardIndex) { }
+
+    /** RE, SC, TI, LE moves */
+    public void other(int player, String move) { }
+
+    /** game ended
+        @param error null if game was read (and validated) successfully
+        @param s final state in VALIDATE mode, null otherwise
+        @return false to stop parsing */
+    public boolean gameEnd(String error, SimpleState s) { return true; }
+  }
+
+  private final Handler h;
+  private final int mode;
+  private boolean fixResign;
+
+  private final SimpleState initial = new SimpleState(SimpleState.WORLD_VIEW);
+  private final SimpleState state = new SimpleState(SimpleState.WORLD_VIEW);
+
+  // input
+  private Reader in;
+  private final char[] buf = new char[1 << 16];
+  private int bufPos, bufLen;
+  private int last; // previous character
+  private int moveNum; // moves read in current game
+
+  private final StringBuilder label = new StringBuilder();
+  private final StringBuilder value = new StringBuilder();
+
+  public SgfParser(Handler h, int mode)
+  {
+    this.h = h;
+    this.mode = mode;
+  }
+
+  /** fix RE moves like SimpleGame.makeMove(..., fixResign) (VALIDATE mode) */
+  public void setFixResign(boolean b) { fixResign = b; }
+
+  /** parse all games in r
+      @return number of games read */
+  public int parse(Reader r) throws IOException
+  {
+    in = r;
+    bufPos = bufLen = 0;
+    int n = 0;
+
+    while (skipToGame()) {
+      n++;
+      h.gameStart();
+      String err = parseGame();
+      if (!h.gameEnd(err, mode == VALIDATE ? state : null)) break;
+    }
+    return n;
+  }
+
+  /** parse games in string */
+  public int parse(String s)
+  {
+    try { return parse(new StringReader(s)); }
+    catch (IOException e) { return 0; } // can't happen
+  }
+
+  private int read() throws IOException
+  {
+    if (bufPos == bufLen) {
+      bufLen = in.read(buf, 0, buf.length);
+      bufPos = 0;
+      if (bufLen <= 0) {
+        bufLen = 0;
+        return -1;
+      }
+    }
+    return buf[bufPos++];
+  }
+
+  // read character inside a game, skipping # comments
+  private int readGameChar() throws IOException
+  {
+    int c = read();
+    if (c == '#') {
+      while (c >= 0 && c != '\n') c = read();
+    }
+    return c;
+  }
+
+  // skip to after next (;
+  // @return false if end of input
+  private boolean skipToGame() throws IOException
+  {
+    int c, l = 0;
+    while ((c = read()) >= 0) {
+      if (c == ';' && l == '(') return true;
+      l = c;
+    }
+    return false;
+  }
+
+  // read rest of game up to ;) and report it
+  // @return null if OK, error message otherwise
+  private String parseGame() throws IOException
+  {
+    String err = null;
+    state.inPlaceCopy(initial);
+    moveNum = 0;
+
+    for (;;) {
+      // label
+      label.setLength(0);
+      int c;
+      last = -1;
+      while ((c = readGameChar()) >= 0 && c != '[') {
+        if (c == ')' && last == ';') return err;
+        label.append((char)c);
+        last = c;
+      }
+      if (c < 0) return "unexpected end of file";
+
+      // value
+      value.setLength(0);
+      while ((c = readGameChar()) >= 0 && c != ']') {
+        value.append((char)c);
+      }
+      if (c < 0) return "unexpected end of file";
+
+      if (err != null) continue; // skip rest of game
+
+      String l = label.toString().trim();
+
+      if (l.equals("MV")) {
+        err = moves();
+        continue;
+      }
+
+      if (mode == VALIDATE && !knownLabel(l)) {
+        err = "unrecognized label " + l;
+        continue;
+      }
+
+      h.property(l, value.toString().trim());
+    }
+  }
+
+  static boolean knownLabel(String l)
+  {
+    return
+      l.equals("GM") || l.equals("PC") || l.equals("CO") || l.equals("SE") ||
+      l.equals("ID") || l.equals("DT") || l.equals("OW") ||
+      l.equals("P0") || l.equals("P1") || l.equals("P2") ||
+      l.equals("R0") || l.equals("R1") || l.equals("R2") || l.equals("R");
+  }
+
+  // handle moves in value
+  // @return null if OK, error message otherwise
+  private String moves()
+  {
+    int n = value.length();
+    int i = 0;
+
+    for (;;) {
+      // player
+      while (i < n && isSpace(value.charAt(i))) i++;
+      if (i == n) return null;
+      int start = i;
+      while (i < n && !isSpace(value.charAt(i))) i++;
+
+      int who;
+      if (i - start != 1) return "illegal player id: " + value.substring(start, i);
+      switch (value.charAt(start)) {
+      case 'w': who = SimpleState.WORLD_MOVE; break;
+      case '0': who = SimpleState.FORE_HAND; break;
+      case '1': who = SimpleState.MIDDLE_HAND; break;
+      case '2': who = SimpleState.REAR_HAND; break;
+      default: return "illegal player id: " + value.substring(start, i);
+      }
+
+      // move
+      while (i < n && isSpace(value.charAt(i))) i++;
+      if (i == n) return "incomplete move";
+      start = i;
+      while (i < n && !isSpace(value.charAt(i))) i++;
+
+      String r = move(who, start, i);
+      if (r != null) return "move error: " + r;
+      moveNum++;
+    }
+  }
+
+  static boolean isSpace(char c)
+  {
+    return c == ' ' || c == '\n' || c == '\r' || c == '\t';
+  }
+
+  // @return card index of value[start,end), -1 if not a card
+  private int cardIndex(int start, int end)
+  {
+    if (end - start != 2) return -1;
+    int s = "DHSC".indexOf(value.charAt(start));
+    int r = "789TJQKA".indexOf(value.charAt(start+1));
+    if (s < 0 || r < 0) return -1;
+    return s * 8 + r;
+  }
+
+  // classify, check and report move value[start,end)
+  // @return null if OK, error message otherwise
+  private String move(int who, int start, int end)
+  {
+    int card = cardIndex(start, end);
+
+    if (card >= 0 && who != SimpleState.WORLD_MOVE) {
+      if (mode == VALIDATE) {
+        String r = state.makeMove(who, MoveCode.card(card));
+        if (r != null) return r;
+      }
+      h.card(who, card);
+      return null;
+    }
+
+    String m = value.substring(start, end);
+
+    if (m.equals("RE") && mode == VALIDATE && fixResign) {
+      return fixedResign(m);
+    }
+
+    if (mode == VALIDATE) {
+      String r = state.makeMove(who, m, null);
+      if (r != null) return r;
+    }
+
+    if (who == SimpleState.WORLD_MOVE) {
+      if (moveNum == 0)                              h.deal(who, m);
+      else if (m.startsWith("TI") || m.startsWith("LE")) h.other(who, m);
+      else                                           h.skat(who, m);
+    } else {
+      char c = m.charAt(0);
+      if (m.equals("p") || m.equals("y") || (c >= '0' && c <= '9')) h.bid(who, m);
+      else if (m.equals("s"))                        h.skat(who, m);
+      else if (m.equals("RE") || m.startsWith("SC")) h.other(who, m);
+      else                                           h.declare(who, m);
+    }
+    return null;
+  }
+
+  // RE handling of SimpleGame.makeMove(..., fixResign): the player to
+  // move resigns, the other defender follows, RE after the game end is
+  // ignored
+  private String fixedResign(String m)
+  {
+    int player = state.getToMove();
+    String r = state.makeMove(player, m, null);
+
+    if (r != null) {
+      if (state.isFinished()) return null;
+      return r;
+    }
+    h.other(player, m);
+
+    if (player != state.getDeclarer()) {
+      int other = 3 - state.getDeclarer() - player;
+      r = state.makeMove(other, m, null);
+      if (r != null) return "error when adding RE move " + r;
+      h.other(other, m);
+    }
+    return null;
+  }
+}
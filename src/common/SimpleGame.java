@@ -33,7 +33,22 @@ public class SimpleGame
 
   int owner; // The player in whose view this SimpleGame exists.  
   
-  public ArrayList<SimpleState> stateHist = new ArrayList<SimpleState>();
+  // stateHist[i]: state before move i. Only checkpoints are stored (game
+  // start, phase and trick bookmarks, current state), the other entries
+  // are null and getState() reconstructs them by replaying moves from
+  // the preceding checkpoint. This keeps finished games small.
+  private ArrayList<SimpleState> stateHist = new ArrayList<SimpleState>();
+
+  // single-line SGF move lists ("w <deal> 0 p ...") per view, built by
+  // the first toSgf call and appended to in makeMove after that, so that
+  // live games don't have to replay the game for every toSgf(true, view)
+  // and replayed games (fromSgf, getState, ...) don't pay for them.
+  // World view games keep all views, others only the owner's.
+  // null: not built yet or dropped (after undoing moves or changing the owner)
+  private StringBuilder[] sgfMoves;
+  private int sgfOwner;              // owner sgfMoves was built for
+  private int sgfShared;             // see appendSgfMove
+  private String[] sgfViews = new String[SimpleState.VIEW_NUM]; // scratch
 
   /** Creates a new instance of SimpleGame */
   public SimpleGame()
@@ -77,6 +92,7 @@ public class SimpleGame
     stateHist.add(new SimpleState(owner));
 
     moveHist.clear();
+    sgfMoves = null;
   }
 
   /** keeps initialMoves */
@@ -134,6 +150,8 @@ public class SimpleGame
     this.comment = comment;
   }
 
+  public String getComment() { return comment; }
+
   /** set name string */
   public void setName(int index, String name) {
     names[index] = name;
@@ -160,19 +178,78 @@ public class SimpleGame
   /** Deletes the last state from the state history.  Use with care! */
   public void removeLastState() {
     stateHist.remove(stateHist.size()-1);
+    restoreLastState();
   }
 
   /** Adds the SimpleState s to the end of the state history.  Use with care! */
   public void appendState(SimpleState s) {
+    dropState(stateHist.size()-1);
     stateHist.add(s);
   }
-  
+
+  /** @return state before move index. States in between checkpoints
+      are reconstructed, changing them has no effect on the game */
   public SimpleState getState(int index)
   { 
     if (index < 0 || index >= stateHist.size())
       throw new RuntimeException("stateHist index out of range");
-    
-    return stateHist.get(index);
+
+    SimpleState s = stateHist.get(index);
+    if (s != null) return s;
+
+    int i = index;
+    while (stateHist.get(i) == null) i--;
+
+    s = SimpleState.createCopy(stateHist.get(i));
+    for (; i < index; i++) {
+      Move m = moveHist.get(i);
+      s.makeMove(m.source, m.action, null);
+    }
+    return s;
+  }
+
+  // @return state index+1 given state s = state index. If it isn't
+  // stored, it is computed in scratch (s may be scratch)
+  private SimpleState nextState(int index, SimpleState s, SimpleState scratch)
+  {
+    SimpleState t = stateHist.get(index+1);
+    if (t != null) return t;
+
+    if (s != scratch) scratch.inPlaceCopy(s);
+    Move m = moveHist.get(index);
+    scratch.makeMove(m.source, m.action, null);
+    return scratch;
+  }
+
+  // @return true if state index is kept when it is no longer the current state
+  private boolean isCheckpoint(int index)
+  {
+    if (index == 0) return true;
+
+    for (int i=0; i < GI_INDICESCOUNT; i++) {
+      if (bookmarks[i] == index) return true;
+    }
+
+    for (int i=0; i < 10; i++) {
+      if (trickBookmarks[i] == index) return true;
+    }
+
+    return false;
+  }
+
+  // forget state index unless it's a checkpoint
+  private void dropState(int index)
+  {
+    if (index >= 0 && !isCheckpoint(index))
+      stateHist.set(index, null);
+  }
+
+  // reconstruct current state after removing states
+  private void restoreLastState()
+  {
+    int n = stateHist.size();
+    if (n > 0 && stateHist.get(n-1) == null)
+      stateHist.set(n-1, getState(n-1));
   }
   
   public int getStateNum()
@@ -304,6 +381,8 @@ public class SimpleGame
   
     stateHist.remove(stateHist.size()-1);
     moveHist.remove(moveHist.size() -1);
+    restoreLastState();
+    sgfMoves = null;
   }
   
   /** Plays a certain move. The most recent game state is cloned and
@@ -333,7 +412,8 @@ public class SimpleGame
       // convert.C doesn't know anything about skat, so fix it
       player = getCurrentState().getToMove();
 
-      String ret = getCurrentState().makeMove(player, move, views);
+      String[] rv = sgfViews();
+      String ret = getCurrentState().makeMove(player, move, rv);
       int n = stateHist.size();
 
       if (ret != null) {
@@ -344,6 +424,10 @@ public class SimpleGame
       }
 
       moveHist.add(new Move(player, move)); // append fixed RE move
+      if (ret == null) {
+        dropState(n-2);
+        appendSgfMove(player, move, rv);
+      }
     
       if (player != getCurrentState().getDeclarer()) {
 
@@ -353,12 +437,14 @@ public class SimpleGame
         stateHist.add(cloneLastState());
 
         int other = 3 - getCurrentState().getDeclarer() - player;
-        ret = getCurrentState().makeMove(other, move, views);
+        ret = getCurrentState().makeMove(other, move, rv);
         if (ret != null) {
           return "error when adding RE move " + ret;
         }
 
         moveHist.add(new Move(other, "RE"));
+        dropState(stateHist.size()-2);
+        appendSgfMove(other, "RE", rv);
       }
       
       return null; // OK
@@ -372,6 +458,7 @@ public class SimpleGame
     
     int trickNum = st.getTrickNum();
     // Misc.msg("move= " + move);
+    if (views == null) views = sgfViews();
     String ret = st.makeMove(player, move, views);
     int n = stateHist.size();
     
@@ -407,10 +494,96 @@ public class SimpleGame
       if (bookmarks[GI_SKAT_OR_HAND] == -1)
 	bookmarks[GI_SKAT_OR_HAND] = n-1;
     }
-    
+
+    dropState(n-2);
+    appendSgfMove(player, move, views);
     return null;
   }
 
+  // @return scratch array for move views if the single-line SGF move
+  // lists of a world view game are kept up to date, null otherwise
+  private String[] sgfViews()
+  {
+    if (sgfMoves == null || owner != SimpleState.WORLD_VIEW) return null;
+    return sgfViews;
+  }
+
+  // append move to single-line SGF move lists if they have been built
+  private void appendSgfMove(int player, String move, String[] views)
+  {
+    if (sgfMoves == null) return;
+    if (sgfOwner != owner) {
+      sgfMoves = null;
+      return;
+    }
+
+    String source = player == SimpleState.WORLD_MOVE ? "w " : player + " ";
+    StringBuilder own = sgfMoves[owner];
+
+    if (owner == SimpleState.WORLD_VIEW) {
+
+      // other views only differ in a few moves before cardplay: they
+      // share the world view list from sgfShared on
+      boolean same = true;
+      for (int v=0; v < SimpleState.WORLD_VIEW; v++) {
+        if (!views[v].equals(move)) same = false;
+      }
+
+      if (!same) {
+        for (int v=0; v < SimpleState.WORLD_VIEW; v++) {
+          sgfMoves[v].append(own, sgfShared, own.length());
+          sgfMoves[v].append(source).append(views[v]).append(' ');
+        }
+        own.append(source).append(move).append(' ');
+        sgfShared = own.length();
+        return;
+      }
+    }
+
+    own.append(source).append(move).append(' ');
+
+    if (getCurrentState().isFinished()) {
+      for (StringBuilder b : sgfMoves) {
+        if (b != null) b.trimToSize();
+      }
+    }
+  }
+
+  // append single-line SGF move list of view to sb, rebuild it if necessary
+  private void appendSgfMoves(StringBuffer sb, int view)
+  {
+    if (sgfMoves == null || sgfOwner != owner) {
+
+      sgfOwner = owner;
+      sgfShared = 0;
+      sgfMoves = new StringBuilder[SimpleState.VIEW_NUM];
+      for (int v=0; v < SimpleState.VIEW_NUM; v++) {
+        if (owner == SimpleState.WORLD_VIEW || v == owner)
+          sgfMoves[v] = new StringBuilder();
+      }
+
+      // replay world view game in order to create move views
+      SimpleState rs = owner == SimpleState.WORLD_VIEW ? new SimpleState(SimpleState.WORLD_VIEW) : null;
+      String[] views = new String[SimpleState.VIEW_NUM];
+
+      for (int i=0; i < moveHist.size(); i++) {
+        Move m = moveHist.get(i);
+        if (rs != null) {
+          String r = rs.makeMove(m.source, m.action, views);
+          if (r != null)
+            Misc.err("error filtering move " + m.source + " " + m.action + " (view=" + view + ") : " + r);
+        }
+        appendSgfMove(m.source, m.action, views);
+      }
+    }
+
+    sb.append(sgfMoves[view]);
+    if (view != owner) {
+      StringBuilder own = sgfMoves[owner];
+      sb.append(own, sgfShared, own.length());
+    }
+  }
+
   /** Strips all game info then returns the game in sgf format
    */
   public String toSgfClean(boolean singleLine, int view)
@@ -473,6 +646,14 @@ public class SimpleGame
     
     // 3. Write the moves with formatting based on the given state's phase.
 
+    sb.append("MV[" + delimiter);
+
+    if (singleLine) {
+      // incrementally built
+      appendSgfMoves(sb, view);
+      return sgfResult(sb, delimiter);
+    }
+
     int trickCount = 0; // How far along we are in a particular trick
 
     SimpleGame rg = null; // replay game
@@ -482,9 +663,9 @@ public class SimpleGame
       // replay world view game in view of specific player
       rg = new SimpleGame(SimpleState.WORLD_VIEW);
     }
-      
-    sb.append("MV[" + delimiter);
+    
     int hl = moveHist.size();
+    SimpleState st = getState(0), scratch = new SimpleState(SimpleState.WORLD_VIEW);
 
     // create move sequence according to view
     
@@ -511,10 +692,11 @@ public class SimpleGame
          
       // Add some phase-specific pretty printing.
 
-      if (singleLine)
-        sb.append(" ");
+      int phase = st.getPhase();
+      st = nextState(i, st, scratch);
+      int nextPhase = st.getPhase();
       
-      else if (stateHist.get(i).getPhase() == SimpleState.CARDPLAY) {
+      if (phase == SimpleState.CARDPLAY) {
 
         // Cardplay: group the cards played in a particular trick together
         
@@ -527,13 +709,13 @@ public class SimpleGame
           sb.append(" ");
         }
 
-      } else if (stateHist.get(i).getPhase() == SimpleState.DEAL) {
+      } else if (phase == SimpleState.DEAL) {
 
         sb.append("\n");
         
-      } else if (stateHist.get(i+1).getPhase() == SimpleState.ANSWER || 
-                 stateHist.get(i+1).getPhase() == SimpleState.BID ||
-                 stateHist.get(i+1).getPhase() == SimpleState.GET_SKAT) {
+      } else if (nextPhase == SimpleState.ANSWER || 
+                 nextPhase == SimpleState.BID ||
+                 nextPhase == SimpleState.GET_SKAT) {
         // Bidding: keep the bid/answer moves on a single line.
         sb.append(" ");
 
@@ -543,7 +725,13 @@ public class SimpleGame
     
     // Write endgame result.
 
-    if (!singleLine && trickCount != 0) sb.append("\n");
+    if (trickCount != 0) sb.append("\n");
+    return sgfResult(sb, delimiter);
+  }
+
+  // append move list end and result
+  private String sgfResult(StringBuffer sb, String delimiter)
+  {
     sb.append("]");
     sb.append(delimiter);
     sb.append("R[");
@@ -785,25 +973,25 @@ public class SimpleGame
 
   /** @return a player's initial hand, prior to bidding */
   public int getHandInitial(int player) {
-    return stateHist.get(bookmarks[GI_BIDDINGSTART]).getHand(player);
+    return getState(bookmarks[GI_BIDDINGSTART]).getHand(player);
   }
 
   /** @return hand of player prior to trick */
   public int getHandPriorToTrick(int player, int trick) {
     if (trickBookmarks[trick] < 0) return 0;    
-    return stateHist.get(trickBookmarks[trick]).getHand(player);
+    return getState(trickBookmarks[trick]).getHand(player);
   }
 
   /** @return state prior to trick */
   public SimpleState getStatePriorToTrick(int trick) {
     if (trickBookmarks[trick] < 0) return null;    
-    return stateHist.get(trickBookmarks[trick]);
+    return getState(trickBookmarks[trick]);
   }
   
   /** @return hand of player prior to trick */
   public int getPlayedCardsPriorToTrick(int player, int trick) {
     if (trickBookmarks[trick] < 0) return 0;
-    return stateHist.get(trickBookmarks[trick]).getPlayedCards(player);
+    return getState(trickBookmarks[trick]).getPlayedCards(player);
   }
 
   /** @return The state in which the listed trick-card was just played
@@ -814,14 +1002,14 @@ public class SimpleGame
 
     index = index + 1 + card;
     if (index >= stateHist.size()) return null;
-    SimpleState s = stateHist.get(index);
+    SimpleState s = getState(index);
     while (s.getTrickCardNum() != (card +1)) {
       index++;
       if (index >= stateHist.size()) return null;
-      s = stateHist.get(index);
+      s = getState(index);
     }
 
-    return stateHist.get(index);
+    return s;
   }
 
   /** @return The state in which the listed trick-card is played;
@@ -838,7 +1026,7 @@ public class SimpleGame
 
       if (index >= stateHist.size()) return -1;
       
-      SimpleState s = stateHist.get(index);
+      SimpleState s = getState(index);
       assert s != null;
 
       int tcn = s.getTrickCardNum();
@@ -857,7 +1045,7 @@ public class SimpleGame
     int index = trickBookmarks[trick];
     index = index + card;
     if (index >= stateHist.size()) return -1;
-    return stateHist.get(index).getToMove();
+    return getState(index).getToMove();
   }
 
   /** @return bookmark for trick i */
@@ -885,7 +1073,7 @@ public class SimpleGame
     int move = bookmarks[GI_CARDPLAY];
     move += trick * 3;
   
-    return stateHist.get(move).getTrickPoints(player);
+    return getState(move).getTrickPoints(player);
   }
 
   /**
@@ -947,7 +1135,7 @@ public class SimpleGame
 
     ArrayList<Card> theTrick = new ArrayList<Card>();
     
-    stateHist.get(move).getCurrentTrick(theTrick);
+    getState(move).getCurrentTrick(theTrick);
     return theTrick;
   }
 
@@ -975,7 +1163,7 @@ public class SimpleGame
         Misc.err("Can't get original skat: cards haven't been dealt yet!");
   
     //1. Get the pre-bidding state from the vector.
-    SimpleState s = stateHist.get(loc);
+    SimpleState s = getState(loc);
     if (index == 0) return s.getSkat0(); else return s.getSkat1();
   }
 
@@ -1036,8 +1224,8 @@ public class SimpleGame
 
     sb.append("\nSimpleStateVector " + sg.stateHist.size());
 
-    for (SimpleState s : sg.stateHist) {
-      SimpleState.serialize(s, sb);
+    for (int i=0; i < sg.stateHist.size(); i++) {
+      SimpleState.serialize(sg.getState(i), sb);
     }
   }
 
@@ -1053,8 +1241,9 @@ public class SimpleGame
       return new Card[] { st.getSkat0(), st.getSkat1() };
     }
 
+    SimpleState s = getState(0), scratch = new SimpleState(SimpleState.WORLD_VIEW);
     for (int i=0; i < stateHist.size(); i++) {
-      SimpleState s = stateHist.get(i);
+      if (i > 0) s = nextState(i-1, s, scratch);
       int phase = s.getPhase();
       if (phase == SimpleState.DISCARD_AND_DECL) {
         return new Card[] { s.getSkat0(), s.getSkat1() };
@@ -1265,10 +1454,11 @@ public class SimpleGame
     
     StringBuffer sb = new StringBuffer();
     int cc = 0; // card counter
+    SimpleState s = getState(0), scratch = new SimpleState(SimpleState.WORLD_VIEW);
 
     for (int i=0; i < moveHist.size(); i++) {
       // print 3 card moves in a row
-      SimpleState s = stateHist.get(i);
+      if (i > 0) s = nextState(i-1, s, scratch);
       if (s.getPhase() == SimpleState.CARDPLAY) {
         sb.append(moveHist.get(i) + " ");
         cc++;
@@ -1281,8 +1471,8 @@ public class SimpleGame
 
     // write skat cards in order so that they match with xskat outputs
     Card[] ca = new Card[2];
-    ca[0] = stateHist.get(1).getSkat0();
-    ca[1] = stateHist.get(1).getSkat1();
+    ca[0] = getState(1).getSkat0();
+    ca[1] = getState(1).getSkat1();
     xskatSort(ca);
     sb.append("orig skat: " + ca[0] + " " + ca[1] + "\n");
 
@@ -1360,8 +1550,9 @@ public class SimpleGame
     // played cards
 
     int n = 0;
+    SimpleState t = getState(0), scratch = new SimpleState(SimpleState.WORLD_VIEW);
     for (int i=0; i < moveHist.size(); i++) {
-      SimpleState t = stateHist.get(i);
+      if (i > 0) t = nextState(i-1, t, scratch);
       if (t.getPhase() == SimpleState.CARDPLAY) {
 
         Card card = Card.fromString(moveHist.get(i).action);
@@ -72,49 +72,74 @@ public class SimpleState implements Serializable
 
   static public String[][][] suitCardStrings;
   static int[][] voidMasks;
+  static int[][] followMasks; // [gameType][led card index]
+
+  // trick tables indexed by trickIndex(c0,c1,c2) (c0 led)
+  static byte[][] trickWinners; // [gameType][trick]: index of winning card
+  static byte[] trickPoints;    // [trick]: card points
+
+  // Zobrist keys (see getZobristKey())
+  static long[][] zobristHand;   // [player][card index]
+  static long[][] zobristTrick;  // [trick position 0,1][card index]
+  static long[] zobristToMove;   // [player]
+  static long[] zobristGame;     // [game type]
+  static long[] zobristPoints;   // [declarer trick point bucket]
+  static long[] zobristDeclarer; // [player]
 
   // IMPORTANT: if you change members here, you need to update
-  // serialize() and copy() below and also the C++ wrapper in src/c++
-
-  class PlayerInfo
-  {
-    long p1,p2,p3,p4,p5,p6,p7,p8; // mitigates false sharing!    
-    int  hand;
-    int  playedCards;
-    byte tricksWon;
-    byte trickPoints;
-    byte resigned;
-    byte voids;       // flags: 1<<suit, 1<<5 = jacks (in trump games)
-    int  maxBid;      // 0: no bid yet, 1: passed right away
-    // int sloughs; // cards that the player threw off when they were losing the trick
-    // store this somewhere else. SimpleState only contains data necessary for making moves
-    // ALSO: if you add things here you need to change serialize() AND deserialize() in
-    // Wrapper.h! Otherwise, C++ clients BREAK!!!
-    long q1,q2,q3,q4,q5,q6,q7,q8; // mitigates false sharing!
-  }
+  // serialize(), inPlaceCopy() and equals() below and also the C++
+  // wrapper in src/c++ if the serialization changes
 
   // all data members -------------------
+  //
+  // packed representation: cards are stored as card indices (-1: no
+  // card/unknown, see Card.fromIndex), the game declaration as type +
+  // flags and player information as one int per player, so copying a
+  // state is a handful of primitive stores
   
-  long q1,q2,q3,q4,q5,q6,q7,q8; // mitigates false sharing!  
   private byte view; // view on game, see VIEW_* above
   private byte phase, prevPhase; // prev for scoring
   private byte declarer; // >=0 just means bidding is over
-  // (decl.type != NO_GAME indicates that a game was announced)
-  private int maxBid;
+  // (declType != NO_GAME indicates that a game was announced)
+  private short maxBid;
   private byte asked, toMove, bidder, trickWinner;
   private byte left, timeout; // >= 0: player left or exceeded time
-  private Card winningCard;
-  private GameDeclaration decl;
+  private byte winningCard;
+  private byte declType;  // GameDeclaration type
+  private byte declFlags; // DECL_* bits
   private int declarerHandBeforeCardplay; // needed in declResult
-  private PlayerInfo[] pinfos; // information about individual players
-  private Card skat0, skat1;  // original skat or discarded cards
-  private Card trick0, trick1, trick2;  // cards in trick
+  private int hand0, hand1, hand2;         // cards in hands
+  private int played0, played1, played2;   // cards played by players
+  private int info0, info1, info2;         // packed player info, see INFO_*
+  private byte skat0, skat1;  // original skat or discarded cards
+  private byte trick0, trick1, trick2;  // cards in trick
   private byte trickCardNum; // number of cards in trick
   private boolean discardHalfPhase;
 
-  long p1,p2,p3,p4,p5,p6,p7,p8; // mitigates false sharing!
-
+  // not part of the state: cardplay position key, see getZobristKey()
+  private long zobristKey;
+  
   // ---------------------------------------
+
+  // declFlags bits
+  private static final int DECL_HAND      = 1;
+  private static final int DECL_OUVERT    = 2;
+  private static final int DECL_SCHNEIDER = 4;
+  private static final int DECL_SCHWARZ   = 8;
+
+  // player info bit fields
+  // (int sloughs; // cards that the player threw off when they were losing the trick
+  // store this somewhere else. SimpleState only contains data necessary for making moves)
+  private static final int INFO_TRICKS_POS   = 0;  // tricks won
+  private static final int INFO_TRICKS_MASK  = 0xf;
+  private static final int INFO_POINTS_POS   = 4;  // trick points
+  private static final int INFO_POINTS_MASK  = 0x7f;
+  private static final int INFO_RESIGNED_POS = 11; // 1 iff resigned
+  private static final int INFO_RESIGNED_MASK = 1;
+  private static final int INFO_VOIDS_POS    = 12; // flags: 1<<suit, JACK_VOID_BIT = jacks (in grand)
+  private static final int INFO_VOIDS_MASK   = 0x1f;
+  private static final int INFO_MAXBID_POS   = 17; // 0: no bid yet, 1: passed right away
+  private static final int INFO_MAXBID_MASK  = 0x1ff;
   
   public static boolean isPlayer(int v) { return v >= FORE_HAND && v <= REAR_HAND; }
   
@@ -138,32 +163,34 @@ public class SimpleState implements Serializable
     sb.append(x.trickWinner + " ");
     sb.append(x.left + " ");
     sb.append(x.timeout + " ");
-    Card.serialize(x.winningCard, sb);
-    GameDeclaration.serialize(x.decl, sb);
+    Card.serialize(x.getWinningCard(), sb);
+    GameDeclaration.serialize(x.getGameDeclaration(), sb);
     sb.append(x.declarerHandBeforeCardplay + " ");
 
+    // ALSO: if you change things here you need to change serialize() AND deserialize() in
+    // Wrapper.h! Otherwise, C++ clients BREAK!!!
+    
     for (int i=0; i < 3; ++i) {
-      PlayerInfo pi = x.pinfos[i];
-      sb.append(pi.tricksWon + " ");
-      sb.append(pi.trickPoints + " ");
-      sb.append(pi.maxBid + " ");
-      sb.append(pi.resigned + " ");
-      sb.append(pi.hand + " ");
-      sb.append(pi.playedCards + " ");
-      sb.append(pi.voids + " ");
+      sb.append(x.getTricksWon(i) + " ");
+      sb.append(x.getTrickPoints(i) + " ");
+      sb.append(x.getMaxBid(i) + " ");
+      sb.append(x.getResigned(i) + " ");
+      sb.append(x.getHand(i) + " ");
+      sb.append(x.getPlayedCards(i) + " ");
+      sb.append(x.getVoids(i) + " ");
     }
 
-    Card.serialize(x.skat0, sb);
-    Card.serialize(x.skat1, sb);
+    Card.serialize(x.getSkat0(), sb);
+    Card.serialize(x.getSkat1(), sb);
     
     sb.append(x.trickCardNum + " ");
 
     if (x.trickCardNum >= 1) {
-      Card.serialize(x.trick0, sb);
+      Card.serialize(card(x.trick0), sb);
       if (x.trickCardNum >= 2) {      
-        Card.serialize(x.trick1, sb);
+        Card.serialize(card(x.trick1), sb);
         if (x.trickCardNum >= 3) {
-          Card.serialize(x.trick2, sb);
+          Card.serialize(card(x.trick2), sb);
         }
       }
     }
@@ -182,23 +209,15 @@ public class SimpleState implements Serializable
     bidder      = s.bidder;
     trickWinner = s.trickWinner;
     winningCard = s.winningCard;
-    decl.copy2(s.decl);
+    declType    = s.declType;
+    declFlags   = s.declFlags;
     declarerHandBeforeCardplay = s.declarerHandBeforeCardplay;
     timeout     = s.timeout;
     left        = s.left;
-    
-    for (int i=0; i < 3; ++i) {
-      PlayerInfo xpi = pinfos[i];
-      PlayerInfo spi = s.pinfos[i];
-      
-      xpi.tricksWon   = spi.tricksWon;
-      xpi.trickPoints = spi.trickPoints;
-      xpi.maxBid      = spi.maxBid;
-      xpi.resigned    = spi.resigned;
-      xpi.hand        = spi.hand;
-      xpi.playedCards = spi.playedCards;
-      xpi.voids       = spi.voids;  
-    }
+
+    hand0 = s.hand0; hand1 = s.hand1; hand2 = s.hand2;
+    played0 = s.played0; played1 = s.played1; played2 = s.played2;
+    info0 = s.info0; info1 = s.info1; info2 = s.info2;
 
     skat0 = s.skat0;
     skat1 = s.skat1;
@@ -208,63 +227,9 @@ public class SimpleState implements Serializable
     trick1 = s.trick1;
     trick2 = s.trick2;   
     discardHalfPhase = s.discardHalfPhase; 
-
+    zobristKey = s.zobristKey;
   }
   
-  // copy s to this, test parallelization
-  public void copyTest(SimpleState s)
-  {
-    if (false) {
-      for (int i=0; i < 10; i++) {
-        p1++;
-      }
-    }
-
-    view = s.view;
-    if (true) return;
-    
-    
-    view        = s.view;
-
-    //phase       = s.phase;
-    //prevPhase   = s.prevPhase; 
-    //declarer    = s.declarer;
-    //    maxBid      = s.maxBid;
-    //    asked       = s.asked;
-    //    toMove      = s.toMove;
-    //    bidder      = s.bidder;
-    //    trickWinner = s.trickWinner;
-    //    winningCard = s.winningCard;
-    // decl.copy2(s.decl);
-    // declarerHandBeforeCardplay = s.declarerHandBeforeCardplay;
-    // timeout     = s.timeout;
-    // left        = s.left;
-
-    if (false) {
-      for (int i=0; i < 3; ++i) {
-        PlayerInfo xpi = pinfos[i];
-        PlayerInfo spi = s.pinfos[i];
-      
-        xpi.tricksWon   = spi.tricksWon;
-        xpi.trickPoints = spi.trickPoints;
-        xpi.maxBid      = spi.maxBid;
-        xpi.resigned    = spi.resigned;
-        xpi.hand        = spi.hand;
-        xpi.playedCards = spi.playedCards;
-        xpi.voids       = spi.voids; 
-      }
-    }
-    //skat0 = s.skat0;
-    //skat1 = s.skat1;
-
-    //trickCardNum = s.trickCardNum;
-    //trick0 = s.trick0;
-    //trick1 = s.trick1;
-    //trick2 = s.trick2;   
-    //discardHalfPhase = s.discardHalfPhase; 
-  }
-  
-  
   static public SimpleState createCopy(SimpleState s)
   {
     if (s == null) return null;
@@ -287,22 +252,19 @@ public class SimpleState implements Serializable
     if (toMove != s.toMove) return "toMove";
     if (bidder != s.bidder) return "bidder";
     if (trickWinner != s.trickWinner) return "trickWinner";
-    if (!decl.equal(s.decl)) return "decl";
+    if (declType != s.declType || declFlags != s.declFlags) return "decl";
     if (declarerHandBeforeCardplay != s.declarerHandBeforeCardplay) return "declarerHandBeforeCardplay";
     if (timeout != s.timeout) return "timeout";
     if (left != s.left) return "";
     
     for (int i=0; i < 3; ++i) {
-      PlayerInfo xpi = pinfos[i];
-      PlayerInfo spi = s.pinfos[i];
-      
-      if (xpi.tricksWon != spi.tricksWon) return "trickswon " + i;
-      if (xpi.trickPoints != spi.trickPoints) return "tricksPoints " + i;
-      if (xpi.maxBid      != spi.maxBid) return "maxBid " + i;
-      if (xpi.resigned    != spi.resigned) return "resigned " + i;
-      if (xpi.hand        != spi.hand) return "hand " + i;
-      if (xpi.playedCards != spi.playedCards) return "playedCards " + i;
-      if (xpi.voids       != spi.voids) return "voids " + i;
+      if (getTricksWon(i) != s.getTricksWon(i)) return "trickswon " + i;
+      if (getTrickPoints(i) != s.getTrickPoints(i)) return "tricksPoints " + i;
+      if (getMaxBid(i) != s.getMaxBid(i)) return "maxBid " + i;
+      if (getResigned(i) != s.getResigned(i)) return "resigned " + i;
+      if (getHand(i) != s.getHand(i)) return "hand " + i;
+      if (getPlayedCards(i) != s.getPlayedCards(i)) return "playedCards " + i;
+      if (getVoids(i) != s.getVoids(i)) return "voids " + i;
     }
 
     if (skat0 != s.skat0) return "skat0";
@@ -324,7 +286,7 @@ public class SimpleState implements Serializable
   
   public SimpleState(int view)
   {
-    decl = new GameDeclaration();
+    storeDecl(new GameDeclaration()); // NO_GAME
     phase = DEAL;
     this.view = (byte)view;
     toMove = WORLD_VIEW;
@@ -333,30 +295,187 @@ public class SimpleState implements Serializable
     // maxBid = 0;     // implicit = 0 (< 18 indicates no bid yet)
     declarer = left = timeout = -1; // no player
 
-    pinfos = new PlayerInfo[3];
-    
-    for (int i=0; i < 3; ++i) {
-      pinfos[i] = new PlayerInfo();
+    skat0 = skat1 = -1; // unknown
+    winningCard = trick0 = trick1 = trick2 = -1; // no card
+    discardHalfPhase = false;
+  }
+
+  // packed representation helpers ---------
+
+  // @return card with index i, null if i < 0
+  private static Card card(byte i)
+  {
+    if (i < 0) return null;
+    return Card.fromIndex(i);
+  }
+
+  // @return skat card with index i, unknown card if i < 0
+  private static Card skatCard(byte i)
+  {
+    if (i < 0) return Card.unknownCard;
+    return Card.fromIndex(i);
+  }
+
+  // @return index of card c, -1 if null or unknown
+  private static byte cardIndex(Card c)
+  {
+    if (c == null || !c.isKnown()) return -1;
+    return (byte)c.getIndex();
+  }
+
+  // @return bit of card index i, 0 if i < 0
+  private static int cardBit(int i)
+  {
+    if (i < 0) return 0;
+    return 1 << i;
+  }
+
+  // @return points of card index i, 0 if i < 0
+  private static int cardValue(int i)
+  {
+    if (i < 0) return 0;
+    return Card.points[i & 7];
+  }
+
+  private static int badPlayer(int player)
+  {
+    Misc.err("player out of range: " + player);
+    return 0;
+  }
+
+  private int info(int player)
+  {
+    switch (player) {
+    case 0: return info0;
+    case 1: return info1;
+    case 2: return info2;
+    }
+    return badPlayer(player);
+  }
+
+  private void setInfo(int player, int pos, int mask, int v)
+  {
+    int x = (info(player) & ~(mask << pos)) | ((v & mask) << pos);
+    switch (player) {
+    case 0: info0 = x; return;
+    case 1: info1 = x; return;
+    case 2: info2 = x; return;
     }
+    badPlayer(player);
+  }
+
+  // store declaration d in packed form
+  private void storeDecl(GameDeclaration d)
+  {
+    declType = (byte)d.type;
+    int f = 0;
+    if (d.hand)               f |= DECL_HAND;
+    if (d.ouvert)             f |= DECL_OUVERT;
+    if (d.schneiderAnnounced) f |= DECL_SCHNEIDER;
+    if (d.schwarzAnnounced)   f |= DECL_SCHWARZ;
+    declFlags = (byte)f;
+  }
+
+  // store declaration part of MoveCode code
+  private void storeDecl(int code)
+  {
+    declType = (byte)MoveCode.gameType(code);
+    int f = 0;
+    if (MoveCode.hand(code))      f |= DECL_HAND;
+    if (MoveCode.ouvert(code))    f |= DECL_OUVERT;
+    if (MoveCode.schneider(code)) f |= DECL_SCHNEIDER;
+    if (MoveCode.schwarz(code))   f |= DECL_SCHWARZ;
+    declFlags = (byte)f;
+  }
   
-    skat0 = skat1 = Card.newCard(-1, -1);
-    discardHalfPhase = false;
+  // parse declaration string (like GameDeclaration.fromString)
+  private String parseDecl(String s)
+  {
+    GameDeclaration d = new GameDeclaration();
+    String r = d.fromString(s);
+    storeDecl(d);
+    return r;
   }
+
+  private boolean declHand()      { return (declFlags & DECL_HAND) != 0; }
+  private boolean declOuvert()    { return (declFlags & DECL_OUVERT) != 0; }
+  private boolean declSchneider() { return (declFlags & DECL_SCHNEIDER) != 0; }
+  private boolean declSchwarz()   { return (declFlags & DECL_SCHWARZ) != 0; }
   
+  /** @return 64-bit key of cardplay position: hands, cards in
+      current trick, player to move, game type, declarer and declarer
+      trick point bucket. Maintained by makeMove/restoreState during cardplay;
+      call updateZobristKey() after changing hands directly
+      (e.g. setHand). Completed tricks don't contribute, so the same
+      position reached by different card orders has the same key. */
+  public long getZobristKey() { return zobristKey; }
+
+  /** recompute Zobrist key from scratch */
+  public void updateZobristKey()
+  {
+    zobristKey = computeZobristKey();
+  }
+
+  public long computeZobristKey()
+  {
+    long k = 0;
+    for (int p=0; p < 3; p++) {
+      int h = getHand(p);
+      while (h != 0) {
+        int i = Integer.numberOfTrailingZeros(h);
+        h &= h-1;
+        k ^= zobristHand[p][i];
+      }
+    }
+
+    if (trickCardNum == 1 || trickCardNum == 2) {
+      k ^= zobristTrick[0][trick0];
+      if (trickCardNum == 2)
+        k ^= zobristTrick[1][trick1];
+    }
+
+    if (isPlayer(toMove)) k ^= zobristToMove[toMove];
+    if (declType >= 0)    k ^= zobristGame[declType];
+    if (isPlayer(declarer))
+      k ^= zobristDeclarer[declarer] ^ zobristPoints[pointBucket(getTrickPoints(declarer))];
+    return k;
+  }
+
+  // declarer trick point ranges that matter for game value:
+  // schneidered, lost, won, schneider
+  private static int pointBucket(int points)
+  {
+    if (points <= 30) return 0;
+    if (points <= 60) return 1;
+    if (points <= 89) return 2;
+    return 3;
+  }
+
   //Accessor/mutators.
   public int getPhase() { return phase; }  
   public int getDeclarer() { return declarer; }
   public boolean getDiscardHalfPhase() { return discardHalfPhase; }
-  public int getResigned(int player) { return pinfos[player].resigned; }
-  public int getVoids(int player) { return pinfos[player].voids; }
+  public int getResigned(int player) { return (info(player) >>> INFO_RESIGNED_POS) & INFO_RESIGNED_MASK; }
+  public int getVoids(int player) { return (info(player) >>> INFO_VOIDS_POS) & INFO_VOIDS_MASK; }
   public int getLeft() { return left; }
   public int getTimeOut() { return timeout; }  
   public int getMaxBid() { return maxBid; }
-  public int getMaxBid(int player) { return pinfos[player].maxBid; }
+  public int getMaxBid(int player) { return (info(player) >>> INFO_MAXBID_POS) & INFO_MAXBID_MASK; }
   public int getBidder() { return bidder; }
   public int getAsked() { return asked; }  
-  public int getTricksWon(int player) { return pinfos[player].tricksWon; }
-  public int getTrickPoints(int player) { return pinfos[player].trickPoints; }
+  public int getTricksWon(int player) { return (info(player) >>> INFO_TRICKS_POS) & INFO_TRICKS_MASK; }
+  public int getTrickPoints(int player) { return (info(player) >>> INFO_POINTS_POS) & INFO_POINTS_MASK; }
+
+  private void setResigned(int player, int r) { setInfo(player, INFO_RESIGNED_POS, INFO_RESIGNED_MASK, r); }
+  private void setVoids(int player, int v) { setInfo(player, INFO_VOIDS_POS, INFO_VOIDS_MASK, v); }
+  private void setMaxBid(int player, int bid) { setInfo(player, INFO_MAXBID_POS, INFO_MAXBID_MASK, bid); }
+
+  // player won a trick worth points
+  private void addTrick(int player, int points)
+  {
+    setInfo(player, INFO_TRICKS_POS, INFO_TRICKS_MASK, getTricksWon(player) + 1);
+    setInfo(player, INFO_POINTS_POS, INFO_POINTS_MASK, getTrickPoints(player) + points);
+  }
 
   /** Returns the intial deal of this state as a string.
       Fails for non-World-View, since the deal is unknown.
@@ -367,7 +486,7 @@ public class SimpleState implements Serializable
     ArrayList<Card> list;
     for (int i = 0; i < 3; i++) {
       origHands[i] = 0;
-      origHands[i] = pinfos[i].playedCards | pinfos[i].hand;
+      origHands[i] = getPlayedCards(i) | getHand(i);
       list = Hand.toCardList(origHands[i]);
       result += Card.cardListToString(list) + ".";
     }
@@ -381,11 +500,11 @@ public class SimpleState implements Serializable
   public int getPointsInTrick() {
     int sum = 0;
     if (trickCardNum > 0) {
-      sum += trick0.value();
+      sum += cardValue(trick0);
       if (trickCardNum > 1) {
-	sum += trick1.value();
+	sum += cardValue(trick1);
 	if (trickCardNum > 2) {
-	  sum += trick2.value();
+	  sum += cardValue(trick2);
 	}
       }
     }
@@ -396,16 +515,16 @@ public class SimpleState implements Serializable
   public int getPartyPoints(int party) {
     assert party == 0 || party == 1 : "party out of range";
     if (party == 1) {
-      int p = pinfos[declarer].trickPoints;
-      if (skat0.isKnown()) p += skat0.value(); // imperfect information ...
-      if (skat1.isKnown()) p += skat1.value();
+      int p = getTrickPoints(declarer);
+      p += cardValue(skat0); // imperfect information ...
+      p += cardValue(skat1);
       return p;
     }
 
     int pts = 0;
-    if (0 != declarer) pts += pinfos[0].trickPoints;
-    if (1 != declarer) pts += pinfos[1].trickPoints;
-    if (2 != declarer) pts += pinfos[2].trickPoints;
+    if (0 != declarer) pts += getTrickPoints(0);
+    if (1 != declarer) pts += getTrickPoints(1);
+    if (2 != declarer) pts += getTrickPoints(2);
     return pts;
   }
 
@@ -417,44 +536,62 @@ public class SimpleState implements Serializable
   
   // return total points so far
   public int getTotalPoints() {
-    return pinfos[0].trickPoints + pinfos[1].trickPoints + pinfos[2].trickPoints +
-      skat0.value() + skat1.value();
+    return getTrickPoints(0) + getTrickPoints(1) + getTrickPoints(2) +
+      cardValue(skat0) + cardValue(skat1);
   }
   
-  public GameDeclaration getGameDeclaration() { return decl; }
+  /** @return game declaration (new object) */
+  public GameDeclaration getGameDeclaration()
+  {
+    GameDeclaration d = new GameDeclaration();
+    d.type = declType;
+    d.hand = declHand();
+    d.ouvert = declOuvert();
+    d.schneiderAnnounced = declSchneider();
+    d.schwarzAnnounced = declSchwarz();
+    return d;
+  }
   public int getDeclarerHandBeforeCardplay() { return declarerHandBeforeCardplay; }
   public int getTrickCardNum() { return trickCardNum; }           // Indicates number of cards in current trick.
   public void setTrickCardNum(int n) { trickCardNum = (byte)n; } // careful! can corrupt state
-  public void setTrickPoints(int player, int n) { pinfos[player].trickPoints = (byte)n; }
-  public void setTricksWon(int player, int n) { pinfos[player].tricksWon = (byte)n; }
-  public void setPlayedCards(int player, int n) { pinfos[player].playedCards = n; }
+  public void setTrickPoints(int player, int n) { setInfo(player, INFO_POINTS_POS, INFO_POINTS_MASK, n); }
+  public void setTricksWon(int player, int n) { setInfo(player, INFO_TRICKS_POS, INFO_TRICKS_MASK, n); }
+  public void setPlayedCards(int player, int n)
+  {
+    switch (player) {
+    case 0: played0 = n; return;
+    case 1: played1 = n; return;
+    case 2: played2 = n; return;
+    }
+    badPlayer(player);
+  }
   public void setDeclarer(int n) { declarer = (byte)n; }
 
   public Card getTrickCard0() {
     assert trickCardNum > 0 && trickCardNum < 3 : "trickcardnum";
-    return trick0;
+    return card(trick0);
   }
-  public Card getTrickCard0NoCheck() { return trick0; }
-  public void setTrickCard0(Card c) { trick0 = c; } // careful! can corrupt state
+  public Card getTrickCard0NoCheck() { return card(trick0); }
+  public void setTrickCard0(Card c) { trick0 = cardIndex(c); } // careful! can corrupt state
 
   public Card getTrickCard1() {
     assert trickCardNum > 1 && trickCardNum < 3 : "trickcardnum";
-    return trick1;
+    return card(trick1);
   }
   public Card getTrickCard2() {
     assert trickCardNum > 2 : "trickcardnum";
-    return trick2;
+    return card(trick2);
   }
   public Card getTrickCard(int i) {
     assert trickCardNum > i : "trickcardnum";
-    if (i == 0) return trick0;
-    if (i == 1) return trick1;
-    return trick2;
+    if (i == 0) return card(trick0);
+    if (i == 1) return card(trick1);
+    return card(trick2);
   }
 
 
   public int getTrickWinner() { return trickWinner; }
-  public Card getWinningCard() { return winningCard; } 
+  public Card getWinningCard() { return card(winningCard); } 
   
   public void setView(int view_) {
     view = (byte) view_;
@@ -463,7 +600,7 @@ public class SimpleState implements Serializable
   /** @return true if the given player is void in the given suit (use 4 for jacks) */
   public boolean isVoid(int player, int suit) {
     if (suit < 0 || suit >= 5) Misc.err("suit out of range " + suit);
-    return ( (pinfos[player].voids & (1<<suit)) != 0); 
+    return ( (getVoids(player) & (1<<suit)) != 0); 
   }
     
   public void getCurrentTrick(ArrayList<Card> al)
@@ -471,11 +608,11 @@ public class SimpleState implements Serializable
     al.clear();
       
     if (trickCardNum >= 1) {
-      al.add(trick0);
+      al.add(card(trick0));
       if (trickCardNum >= 2) {      
-        al.add(trick1);
+        al.add(card(trick1));
         if (trickCardNum >= 3) {
-          al.add(trick2);
+          al.add(card(trick2));
         }
       }
     }
@@ -483,7 +620,7 @@ public class SimpleState implements Serializable
   
   public int getTrickNum() {
     if (phase < CARDPLAY) return -1; // changed from != to < : hope this doesn't break anything - Jeff
-    return pinfos[0].tricksWon + pinfos[1].tricksWon + pinfos[2].tricksWon;
+    return getTricksWon(0) + getTricksWon(1) + getTricksWon(2);
   }
   
   public void setToMove(int i) { toMove = (byte)i; }
@@ -603,18 +740,28 @@ public class SimpleState implements Serializable
   /** @return the hand of the declarer, or null if it hasn't been decided yet. */
   public int getDeclarerHand()
   {
-    return pinfos[declarer].hand;
+    return getHand(declarer);
   }
   
   /** @return the hand of the passed player, or null if we were given a bad ID. */
   public int getHand(int player)
   {
-    return pinfos[player].hand;
+    switch (player) {
+    case 0: return hand0;
+    case 1: return hand1;
+    case 2: return hand2;
+    }
+    return badPlayer(player);
   }
 
   public void setHand(int player, int hand)
   {
-    pinfos[player].hand = hand;
+    switch (player) {
+    case 0: hand0 = hand; return;
+    case 1: hand1 = hand; return;
+    case 2: hand2 = hand; return;
+    }
+    badPlayer(player);
   }
 
   // return 1 iff declarer, 0 otherwise
@@ -627,7 +774,12 @@ public class SimpleState implements Serializable
   /** @return the cards player played so far */
   public int getPlayedCards(int player)
   {
-    return pinfos[player].playedCards;
+    switch (player) {
+    case 0: return played0;
+    case 1: return played1;
+    case 2: return played2;
+    }
+    return badPlayer(player);
   }
 
   /**   @return cards played by all players
@@ -635,7 +787,7 @@ public class SimpleState implements Serializable
   public int getPlayedCards() {
     int answer = 0;
     for (int i = 0; i < 3; i++) {
-      answer ^= pinfos[i].playedCards;
+      answer ^= getPlayedCards(i);
     }
     return answer;
   }
@@ -654,13 +806,8 @@ public class SimpleState implements Serializable
    *  if skat not known, return 0
    */
   public int getSkat() {
-    int skat = 0;
-
-    if (!skat0.isKnown()) return 0;
-    
-    skat = Hand.set(skat, skat0);
-    skat = Hand.set(skat, skat1);
-    return skat;
+    if (skat0 < 0) return 0;
+    return cardBit(skat0) | cardBit(skat1);
   }
 
   public void setSkat(int skat) {
@@ -677,21 +824,21 @@ public class SimpleState implements Serializable
   /** @return the skat card 0/1 */
   public Card getSkat0()
   {
-    return skat0;
+    return skatCard(skat0);
   }
 
   /** @return the skat card 0/1 */
   public Card getSkat1()
   {
-    return skat1;
+    return skatCard(skat1);
   }
 
   public void setSkat0(Card c) {
-    skat0 = c;
+    skat0 = cardIndex(c);
   }
 
   public void setSkat1(Card c) {
-    skat1 = c;
+    skat1 = cardIndex(c);
   }
   
   //   public int getSkatBits()
@@ -714,14 +861,14 @@ public class SimpleState implements Serializable
   public boolean handKnown(int player)
   {
     // empty hand in game indicates no knowledge    
-    if (pinfos[player].hand != 0) return true;
+    if (getHand(player) != 0) return true;
     return numCards(player) == 0;
   }
 
   /** return number of cards in hand (if empty, compute actual number) */
   public int numCards(int player)
   {
-    int n = Hand.numCards(pinfos[player].hand);
+    int n = Hand.numCards(getHand(player));
     if (n > 0) return n;
 
     // empty hand could be empty or indicating that we don't know the
@@ -733,7 +880,7 @@ public class SimpleState implements Serializable
   /** @return number of cards in player's hand computed by what has been played */
   public int numCardsByTricks(int player)
   {
-    int n = 10 - (pinfos[0].tricksWon+pinfos[1].tricksWon+pinfos[2].tricksWon);
+    int n = 10 - (getTricksWon(0)+getTricksWon(1)+getTricksWon(2));
 
     // played in current trick -> subtract 1
 
@@ -766,7 +913,7 @@ public class SimpleState implements Serializable
       
     } else if (phase == GET_SKAT) {
 
-      return skat0.toString() + "." + skat1.toString();
+      return skatCard(skat0).toString() + "." + skatCard(skat1).toString();
       
     } else
       return null;
@@ -828,62 +975,238 @@ public class SimpleState implements Serializable
       int hand = 0;
       for (int j=0; j < 10; j++)
 	hand = Hand.set(hand, deck.get(k++));
-      pinfos[i].hand = hand;
+      setHand(i, hand);
     }
 
-    skat0 = deck.get(k++);
-    skat1 = deck.get(k++);
+    skat0 = cardIndex(deck.get(k++));
+    skat1 = cardIndex(deck.get(k++));
 
     assert k == 32;
+    updateZobristKey();
+  }
+
+  /** sets all hands and the skat (h[3]), e.g. to a world from
+      WorldEnumerator or WorldIndexer */
+  public void setWorld(int[] h)
+  {
+    for (int p=0; p < 3; p++) setHand(p, h[p]);
+    setSkat(h[3]);
+    updateZobristKey();
+  }
+
+  /** assigns the cards player doesn't know randomly to the other
+      hands and the skat, consistent with the void information.
+      player's hand, played cards, an ouvert declarer hand and a skat
+      known to player stay the same.
+      @return false if no consistent assignment was found
+  */
+  public boolean assignRandomCards(Random rng, int player)
+  {
+    int known = Misc.getKnownCards(this, player);
+    int skat = skatKnown(player) ? getSkat() : 0;
+    int unknown = ~(known | skat);
+
+    int[] need = new int[4]; // 3: skat
+    int[] cantHave = new int[4];
+    int[] hands = new int[4];
+    int[] cards = new int[32];
+    int n = 0;
+
+    for (int p=0; p < 3; p++) {
+      if (p == player || (p == declarer && declOuvert())) {
+        hands[p] = getHand(p);
+        continue;
+      }
+      need[p] = numCardsByTricks(p);
+
+      // cards of suits player is known to be void in
+      if (declType >= 0) cantHave[p] = voidMasks[declType][getVoids(p)];
+    }
+    if (skat != 0) hands[3] = skat; else need[3] = 2;
+
+    for (int c=0; c < 32; c++) {
+      if ((unknown & (1 << c)) != 0) cards[n++] = c;
+    }
+    
+    if (n != need[0] + need[1] + need[2] + need[3]) {
+      Misc.msg("assignRandomCards: card numbers don't match " + n);
+      return false;
+    }
+
+    int[] left = new int[4];
+    int[] h = new int[4];
+
+    for (int attempt=0; attempt < 1000; attempt++) {
+
+      // shuffle unknown cards and put each card into a random place
+      // that can still take it (chance proportional to free slots)
+      
+      for (int i=n; i > 1; i--) {
+        int r = rng.nextInt(i);
+        int t = cards[i-1]; cards[i-1] = cards[r]; cards[r] = t;
+      }
+
+      System.arraycopy(need, 0, left, 0, 4);
+      System.arraycopy(hands, 0, h, 0, 4);
+      boolean ok = true;
+      
+      for (int i=0; i < n && ok; i++) {
+        int bit = 1 << cards[i];
+        int slots = 0;
+        for (int p=0; p < 4; p++) {
+          if ((cantHave[p] & bit) == 0) slots += left[p];
+        }
+        if (slots == 0) { ok = false; break; }
+        
+        int r = rng.nextInt(slots);
+        for (int p=0; p < 4; p++) {
+          if ((cantHave[p] & bit) != 0) continue;
+          r -= left[p];
+          if (r < 0) {
+            h[p] |= bit;
+            left[p]--;
+            break;
+          }
+        }
+      }
+
+      if (ok) {
+        setWorld(h);
+        return true;
+      }
+    }
+    return false;
   }
   
-  // save state prior to (Card)
+  // save state prior to makeMove(player, move, views)
   
   public void saveState(SimpleStateUndo ui, String move)
   {
-    ui.card = Card.fromString(move);
+    Card c = null;
+    if (phase == CARDPLAY) c = Card.fromString(move);
+
+    if (c != null && c.isKnown()) {
+      ui.card = c;
+      saveCardState(ui);
+    } else {
+      ui.card = null;
+      savePhaseState(ui);
+    }
+  }
+
+  // save state prior to makeMove(player, code) (see MoveCode)
+  
+  public void saveState(SimpleStateUndo ui, int code)
+  {
+    if (phase == CARDPLAY && MoveCode.kind(code) == MoveCode.CARD) {
+      ui.card = Card.fromIndex(MoveCode.cardIndex(code));
+      saveCardState(ui);
+    } else {
+      ui.card = null;
+      savePhaseState(ui);
+    }
+  }
 
+  private void saveCardState(SimpleStateUndo ui)
+  {
+    ui.cardMove = true;
+    ui.zobristKey = zobristKey;
     ui.prevToMove = toMove;
-    ui.toMoveHand = pinfos[toMove].hand;
-    ui.toMovePlayedCards = pinfos[toMove].playedCards;
-    ui.toMoveVoids = pinfos[toMove].voids;
+    ui.toMoveHand = getHand(toMove);
+    ui.toMovePlayedCards = getPlayedCards(toMove);
     ui.trickCardNum = trickCardNum;
     ui.trickWinner = trickWinner;
     ui.winningCard = winningCard;
-    ui.tricksWon0 = pinfos[0].tricksWon;
-    ui.tricksWon1 = pinfos[1].tricksWon;
-    ui.tricksWon2 = pinfos[2].tricksWon;    
-    ui.trickPoints0 = pinfos[0].trickPoints;
-    ui.trickPoints1 = pinfos[1].trickPoints;
-    ui.trickPoints2 = pinfos[2].trickPoints;    
+    ui.info0 = info0;
+    ui.info1 = info1;
+    ui.info2 = info2;
     ui.trick0 = trick0;
     ui.trick1 = trick1;
     ui.trick2 = trick2;    
   }
 
-  // restore state after makeMove(Card)
+  // all other moves (deal, bidding, skat, declaration, discard, RE,
+  // SC, TI, LE) only change these members
+  private void savePhaseState(SimpleStateUndo ui)
+  {
+    ui.cardMove = false;
+    ui.zobristKey = zobristKey;
+    ui.prevToMove = toMove;
+    ui.phase = phase;
+    ui.prevPhase = prevPhase;
+    ui.declarer = declarer;
+    ui.maxBid = maxBid;
+    ui.asked = asked;
+    ui.bidder = bidder;
+    ui.left = left;
+    ui.timeout = timeout;
+    ui.declType = declType;
+    ui.declFlags = declFlags;
+    ui.declarerHandBeforeCardplay = declarerHandBeforeCardplay;
+    ui.hand0 = hand0;
+    ui.hand1 = hand1;
+    ui.hand2 = hand2;
+    ui.info0 = info0;
+    ui.info1 = info1;
+    ui.info2 = info2;
+    ui.skat0 = skat0;
+    ui.skat1 = skat1;
+    ui.trickCardNum = trickCardNum;
+    ui.discardHalfPhase = discardHalfPhase;
+  }
+
+  // restore state after makeMove() (ui filled by saveState)
   
   public void restoreState(SimpleStateUndo ui)
   {
+    if (!ui.cardMove) {
+      restorePhaseState(ui);
+      return;
+    }
+    
+    zobristKey = ui.zobristKey;
     toMove = ui.prevToMove;
-    pinfos[toMove].hand = ui.toMoveHand;
-    pinfos[toMove].playedCards = ui.toMovePlayedCards;
-    pinfos[toMove].voids = ui.toMoveVoids;
+    setHand(toMove, ui.toMoveHand);
+    setPlayedCards(toMove, ui.toMovePlayedCards);
     trickCardNum = ui.trickCardNum;
     trickWinner = ui.trickWinner;
     winningCard = ui.winningCard;
-    pinfos[0].tricksWon   = ui.tricksWon0;
-    pinfos[1].tricksWon   = ui.tricksWon1;  
-    pinfos[2].tricksWon   = ui.tricksWon2;    
-    pinfos[0].trickPoints = ui.trickPoints0;
-    pinfos[1].trickPoints = ui.trickPoints1;
-    pinfos[2].trickPoints = ui.trickPoints2;   
+    info0 = ui.info0;
+    info1 = ui.info1;
+    info2 = ui.info2;
     trick0 = ui.trick0;
     trick1 = ui.trick1;
     trick2 = ui.trick2;
     phase = CARDPLAY;
   }
 
+  private void restorePhaseState(SimpleStateUndo ui)
+  {
+    zobristKey = ui.zobristKey;
+    toMove = ui.prevToMove;
+    phase = ui.phase;
+    prevPhase = ui.prevPhase;
+    declarer = ui.declarer;
+    maxBid = ui.maxBid;
+    asked = ui.asked;
+    bidder = ui.bidder;
+    left = ui.left;
+    timeout = ui.timeout;
+    declType = ui.declType;
+    declFlags = ui.declFlags;
+    declarerHandBeforeCardplay = ui.declarerHandBeforeCardplay;
+    hand0 = ui.hand0;
+    hand1 = ui.hand1;
+    hand2 = ui.hand2;
+    info0 = ui.info0;
+    info1 = ui.info1;
+    info2 = ui.info2;
+    skat0 = ui.skat0;
+    skat1 = ui.skat1;
+    trickCardNum = ui.trickCardNum;
+    discardHalfPhase = ui.discardHalfPhase;
+  }
+
 
   /** @return null if move could be made, or error message otherwise */
   public String makeCardMove(int player, Card card)
@@ -894,7 +1217,7 @@ public class SimpleState implements Serializable
     if (player != toMove) return i18n("not_your_turn");
     
     if (view == WORLD_VIEW || view == player) {
-      if (!Hand.has(pinfos[player].hand, card))
+      if (!Hand.has(getHand(player), card))
         return i18n("you_do_not_have_card") + " " + card.toString() + ".";
       
       if (!cardOK(card))
@@ -903,30 +1226,43 @@ public class SimpleState implements Serializable
     
     // move OK
 
+    playCard(player, card);
+    return null;
+  }
+
+  /** plays card with index cardIndex for player to move without any
+      checks (for search code): the card must be in legalCards() */
+  public void playLegalCard(int cardIndex)
+  {
+    playCard(toMove, Card.fromIndex(cardIndex));
+  }
+
+  private void playCard(int player, Card card)
+  {
     // update voids
 
     if (trickCardNum == 1 || trickCardNum == 2) {
 
       if (!followsSuit(card)) {
         // System.out.println("Card didn't follow suit!");
-        Card fc = trick0;
+        Card fc = card(trick0);
 
-        if (decl.type == GameDeclaration.GRAND_GAME) {
+        if (declType == GameDeclaration.GRAND_GAME) {
           // grand
           if (fc.getRank() == Card.RANK_JACK) {
-            pinfos[player].voids |= JACK_VOID_BIT;
+            setVoids(player, getVoids(player) | JACK_VOID_BIT);
           } else {
-            pinfos[player].voids |= 1 << fc.getSuit();
+            setVoids(player, getVoids(player) | 1 << fc.getSuit());
           }
-        } else if (decl.type == GameDeclaration.NULL_GAME) {
+        } else if (declType == GameDeclaration.NULL_GAME) {
           // null
-          pinfos[player].voids |= 1 << fc.getSuit();
+          setVoids(player, getVoids(player) | 1 << fc.getSuit());
         } else {
           // suit is trump
           if (trump(fc)) {
-            pinfos[player].voids |= 1 << decl.type;
+            setVoids(player, getVoids(player) | 1 << declType);
           } else {
-            pinfos[player].voids |= 1 << fc.getSuit();
+            setVoids(player, getVoids(player) | 1 << fc.getSuit());
           }
         }
       }
@@ -938,55 +1274,80 @@ public class SimpleState implements Serializable
       
     // play card
 
+    byte ci = (byte)card.getIndex();
+    int hand = getHand(player);
+
+    // update Zobrist key: card leaves hand, player no longer to move
+    long k = zobristKey ^ zobristToMove[toMove];
+    if ((hand & (1 << ci)) != 0) k ^= zobristHand[player][ci];
+    
     if (trickCardNum == 0) {
-      trick0 = card;
+      trick0 = ci;
+      k ^= zobristTrick[0][ci];
     } else if (trickCardNum == 1) {
-      trick1 = card;
-    } else
-      trick2 = card;
+      trick1 = ci;
+      k ^= zobristTrick[1][ci];
+    } else {
+      trick2 = ci;
+      k ^= zobristTrick[0][trick0] ^ zobristTrick[1][trick1]; // trick complete
+    }
 
     trickCardNum++;
       
-    pinfos[player].hand = Hand.clear(pinfos[player].hand, card);
-    pinfos[player].playedCards = Hand.set(pinfos[player].playedCards, card);
+    setHand(player, hand & ~(1 << ci));
+    setPlayedCards(player, getPlayedCards(player) | (1 << ci));
 
     if (trickCardNum == 1) {
       trickWinner = toMove;
-      winningCard = card;
+      winningCard = ci;
       toMove = (byte)((toMove + 1) % 3);
-      return null;
+      zobristKey = k ^ zobristToMove[toMove];
+      return;
     }
 
-    if (highestCard(card)) {
-      trickWinner = toMove;
-      winningCard = card;
-    }
+    byte[] winners = trickWinners[declType];
 
     if (trickCardNum == 2) {
+      // (c0,c1,c1) entry = winner of partial trick
+      if (winners[trickIndex(trick0, ci, ci)] != 0) {
+        trickWinner = toMove;
+        winningCard = ci;
+      }
       toMove = (byte)((toMove + 1) % 3);
-      return null;
+      zobristKey = k ^ zobristToMove[toMove];
+      return;
     }
 
-    // don't clear trick yet (for gui)
-      
-    pinfos[trickWinner].tricksWon++;
-    pinfos[trickWinner].trickPoints += currentTrickPoints();
+    // trick complete, leader is next to move
+
+    int ti = trickIndex(trick0, trick1, ci);
+    int w = winners[ti];
 
+    trickWinner = (byte)((toMove + 1 + w) % 3);
+    winningCard = (w == 0) ? trick0 : ((w == 1) ? trick1 : ci);
     
+    // don't clear trick yet (for gui)
+
+    int oldBucket = pointBucket(getTrickPoints(declarer));
+    addTrick(trickWinner, trickPoints[ti]);
+    int newBucket = pointBucket(getTrickPoints(declarer));
+    if (oldBucket != newBucket)
+      k ^= zobristPoints[oldBucket] ^ zobristPoints[newBucket];
 
-    // Misc.msg("add " + currentTrickPoints());
+    // Misc.msg("add " + trickPoints[ti]);
       
     toMove = trickWinner;
+    zobristKey = k ^ zobristToMove[toMove];
 
     // For when trickCardNum == 3
       
     // last trick?
-    if (pinfos[0].tricksWon + pinfos[1].tricksWon + pinfos[2].tricksWon == 10) {
+    if (getTricksWon(0) + getTricksWon(1) + getTricksWon(2) == 10) {
       phase = FINISHED;
-      return null;
+      return;
     }
 
-    if (decl.type == GameDeclaration.NULL_GAME) {
+    if (declType == GameDeclaration.NULL_GAME) {
 
       // null game: game ends when declarer gets first trick
       if (trickWinner == declarer)
@@ -998,18 +1359,18 @@ public class SimpleState implements Serializable
 
       if (trickWinner != declarer) { // defenders won trick
         
-        if (decl.schwarzAnnounced) {
+        if (declSchwarz()) {
 
           // schwarz announced: game ends when defenders get a trick
           phase = FINISHED;
 
-        } else if (decl.schneiderAnnounced) {
+        } else if (declSchneider()) {
             
           // schneider announced: game ends when defenders get > 30 points
           int defPts = 0;
           for (int i=0; i < 3; i++) {
             if (i != declarer) {
-              defPts += pinfos[i].trickPoints;
+              defPts += getTrickPoints(i);
               if (defPts > 30) {
                 phase = FINISHED;
                 break;
@@ -1019,8 +1380,6 @@ public class SimpleState implements Serializable
         }
       }
     }
-      
-    return null;
   }
   
   /** Makes a move corresponding to view, if views != null generate 5 game views of move
@@ -1052,14 +1411,14 @@ public class SimpleState implements Serializable
       if (phase != CARDPLAY)
         return i18n("resignation_only_in_play");
       
-      if (pinfos[player].resigned > 0)
+      if (getResigned(player) > 0)
         return i18n("you_already_resigned");
       
-      pinfos[player].resigned = 1;
+      setResigned(player, 1);
       
       if (player == declarer ||
-          pinfos[0].resigned + pinfos[1].resigned + pinfos[2].resigned
-          - pinfos[declarer].resigned >= 2)
+          getResigned(0) + getResigned(1) + getResigned(2)
+          - getResigned(declarer) >= 2)
         phase = FINISHED;
 
       // This is necessary when going through data to not get duplicate tricks!
@@ -1089,21 +1448,22 @@ public class SimpleState implements Serializable
           
           // reveal declarer's cards if player != declarer
           
-          pinfos[declarer].hand = 0;
+          setHand(declarer, 0);
           
           for (int i=1; i < parts.length; i++) {
             Card card = Card.fromString(parts[i]);
             if (card == null)
               return i18n("show_cards_error_colon") + " " + move;
-            pinfos[declarer].hand = Hand.set(pinfos[declarer].hand, card);
+            setHand(declarer, Hand.set(getHand(declarer), card));
           }
+          updateZobristKey();
         }
         
       } else if (views != null) {
         
         // append declarer's cards to player and public view
 
-        String h = "."+Card.cardListToString(Hand.toCardList(pinfos[declarer].hand));
+        String h = "."+Card.cardListToString(Hand.toCardList(getHand(declarer)));
         
         for (int i=0; i < 4; i++) { // includes PUBLIC_VIEW
           views[i] += h;
@@ -1167,18 +1527,18 @@ public class SimpleState implements Serializable
 
       // assign cards to individual hands and skat
 
-      pinfos[0].hand = pinfos[1].hand = pinfos[2].hand = 0;
+      hand0 = hand1 = hand2 = 0;
 
       for (int i=0; i < 10; i++) {
         Card c;
         c = cv.get(i+ 0); if (view == WORLD_VIEW || view == 0) {
-          pinfos[0].hand = Hand.set(pinfos[0].hand, c);
+          setHand(0, Hand.set(getHand(0), c));
         }
         c = cv.get(i+10); if (view == WORLD_VIEW || view == 1) {
-          pinfos[1].hand = Hand.set(pinfos[1].hand, c);
+          setHand(1, Hand.set(getHand(1), c));
         }
         c = cv.get(i+20); if (view == WORLD_VIEW || view == 2) {
-          pinfos[2].hand = Hand.set(pinfos[2].hand, c);          
+          setHand(2, Hand.set(getHand(2), c));          
         }
       }
 
@@ -1186,8 +1546,8 @@ public class SimpleState implements Serializable
       //	Misc.msg("Hand " + i + " " + hands[i].toStringColor(Card.SUIT_CLUBS) + " " + (view == i));
       // }
       
-      skat0 = cv.get(30);
-      skat1 = cv.get(31);      
+      skat0 = cardIndex(cv.get(30));
+      skat1 = cardIndex(cv.get(31));      
 
       if (views != null) {
       
@@ -1251,43 +1611,7 @@ public class SimpleState implements Serializable
       // Bidding phase
 
       if (move.equals("p")) {
-
-        // If forehand passes, the game is over (all pass)
-
-        if (pinfos[toMove].maxBid == 0)
-          pinfos[toMove].maxBid = 1;
-        
-        if (bidder == FORE_HAND) {
-
-          phase = FINISHED;
-
-        } else if (bidder == MIDDLE_HAND) {
-
-          bidder = REAR_HAND;
-          asked = FORE_HAND;
-          toMove = bidder;
-
-        } else { // bidder = REAR_HAND
-	  
-          if (maxBid < 18) {
-
-            // forehand hasn't bid yet - ask if he wants to play
-
-            bidder = FORE_HAND;
-            asked = WORLD_VIEW;  // noone to be asked
-            toMove = bidder;
-
-          } else  {
-
-            // Otherwise asked player becomes declarer
-
-            phase = SKAT_OR_HAND_DECL;
-            declarer = asked;
-            toMove = declarer;
-            asked = -1;
-            bidder = -1;
-          }
-        }
+        bidPass();
         return null;
 
       } else { // the move has to be a bid
@@ -1296,30 +1620,7 @@ public class SimpleState implements Serializable
         try { bid = Integer.parseInt(move); }
         catch(NumberFormatException ex) {return i18n("bid_not_number_colon") + " " + ex.toString(); }
 
-        // The bid must be higher than the current maximum bid.
-        if (bid <= maxBid) return i18n("bid_not_high_enough");
-
-        // The bid must not be ridiculous.
-        if ((bid >= 500) || (bid < 0)) return i18n("bid_ridiculous");
-
-        // OK -> update the max bid and change the state. We're now
-        // awaiting a response from the next player
-
-        pinfos[player].maxBid = bid;
-        maxBid = bid;
-        phase = ANSWER;
-        toMove = asked;
-        // asked = bidder;
-	
-        // Special case: the forehand bids and the others passed. 
-        if (player == FORE_HAND) {
-          phase = SKAT_OR_HAND_DECL;
-          declarer = FORE_HAND;
-          toMove = declarer;
-          asked = -1;
-          bidder = -1;
-        }
-        return null;
+        return makeBid(player, bid);
       }
     }//BID
 
@@ -1329,36 +1630,11 @@ public class SimpleState implements Serializable
       // the bidding phase.
 
       if (move.equals("y")) {
-
-        pinfos[player].maxBid = maxBid;
-
-        phase = BID;
-        toMove = bidder;
+        answerYes(player);
         return null;
-	
       } else if (move.equals("p")) { // "I pass" situation:
-
-	if (pinfos[toMove].maxBid == 0)
-	  pinfos[toMove].maxBid = 1;
-	
-        if (bidder == MIDDLE_HAND) {
-
-          phase = BID;
-          bidder = REAR_HAND;
-          asked = MIDDLE_HAND;
-          toMove = bidder;
-	  
-        } else {
-	  
-          phase = SKAT_OR_HAND_DECL;
-          declarer = bidder;
-          toMove = declarer;
-          asked = -1;
-          bidder = -1;
-        }
-	
+        answerPass();
         return null;
-	
       } else {
         return i18n("bad_bid_given_got") + " \"" + move + "\"";
       }
@@ -1375,9 +1651,7 @@ public class SimpleState implements Serializable
 
         // request skat
 
-        phase = GET_SKAT;
-        toMove = WORLD_MOVE;
-        decl.hand = false; // At this point, we can say the game is certainly not hand!  Needed for hashValue - Jeff
+        requestSkat();
         return null;
 	
       } else  {
@@ -1389,21 +1663,15 @@ public class SimpleState implements Serializable
           return i18n("illegal_move_colon") + " " + player + ", " + move;
 
         // Read in the game declaration (the first substring in the move)
-        String declResult = decl.fromString(parts[0]);
+        String declResult = parseDecl(parts[0]);
         if (declResult != null)
           return i18n("game_decl_got") + " " + parts[0] + ", " + i18n("returned") + " " + declResult;
 	
-        if (!decl.hand)
-          return i18n("must_declare_hand");
-
-        if (decl.type == GameDeclaration.NULL_GAME) {
-          if (maxBid > 35 && !decl.ouvert)
-            return i18n("null_hand_illegal_with_bid") + " " + maxBid + ".";
-          if (maxBid > 59 && decl.ouvert)
-            return i18n("null_ouv_hand_illegal_with_bid") + " " + maxBid + ".";
-        }
+        String checkResult = checkHandDecl();
+        if (checkResult != null)
+          return checkResult;
         
-        if (decl.ouvert) {
+        if (declOuvert()) {
 
           if (view != WORLD_VIEW) {
 
@@ -1414,13 +1682,13 @@ public class SimpleState implements Serializable
               if (parts.length != 11)
                 return i18n("move_needs_11_parts");
               
-              pinfos[declarer].hand = 0;
+              setHand(declarer, 0);
               
               for (int i=1; i < 11; i++) {
                 Card card = Card.fromString(parts[i]);
                 if (card == null)
                   return i18n("ouvert_error_colon") + " " + move;
-                pinfos[declarer].hand = Hand.set(pinfos[declarer].hand, card);
+                setHand(declarer, Hand.set(getHand(declarer), card));
               }
             }
             
@@ -1428,7 +1696,7 @@ public class SimpleState implements Serializable
             
             // WORLD view:
             // append declarer's cards in ouvert games
-            String h = "."+Card.cardListToString(Hand.toCardList(pinfos[declarer].hand));
+            String h = "."+Card.cardListToString(Hand.toCardList(getHand(declarer)));
             
             for (int i=0; i < 4; i++) { // private + public
               // views[i] += h;  // Jeff: Changed this, perhaps dangerously
@@ -1437,9 +1705,7 @@ public class SimpleState implements Serializable
           }
         }
 
-        declarerHandBeforeCardplay = pinfos[declarer].hand;
-        phase = CARDPLAY;
-        toMove = FORE_HAND;
+        startCardplay();
         return null;
       }
     }//SKAT_OR_HAND_DECL
@@ -1455,22 +1721,16 @@ public class SimpleState implements Serializable
 
       // if viewer is not declarer, we won't see anything in this move
 
-      if (view == WORLD_VIEW || view == declarer) {
-      
-        skat0 = cv.get(0);
-        skat1 = cv.get(1);
-
-        if (views != null) {
-          // hide skat from defenders and public view
-          for (int i=0; i < 4; i++) {
-            if (i != declarer) {
-              views[i] = Card.unknownSkat;
-            }
+      if (views != null && (view == WORLD_VIEW || view == declarer)) {
+        // hide skat from defenders and public view
+        for (int i=0; i < 4; i++) {
+          if (i != declarer) {
+            views[i] = Card.unknownSkat;
           }
         }
       }      
-      phase = DISCARD_AND_DECL;
-      toMove = declarer;
+
+      receiveSkat(cv.get(0), cv.get(1));
       return null;
       
     } // GET_SKAT
@@ -1488,22 +1748,13 @@ public class SimpleState implements Serializable
         if (move.length() <= 5) { // was 2, but NOH or GHS ...
 
 	  // Read in the game declaration (the first substring in the move)
-          String declResult = decl.fromString(move);
+          String declResult = parseDecl(move);
           if (declResult != null)
             return i18n("game_decl_got") + " " + move + ", " + i18n("returned") + " " + declResult;
 
-          if (decl.hand) return i18n("hand_illegal_after_pickup");
-          
-          // check for overbid null games
-    
-          if (decl.type == GameDeclaration.NULL_GAME) {
-
-            if (maxBid > 23 && !decl.ouvert)
-              return i18n("null_illegal_with_bid") + " " + maxBid + ".";
-            if (maxBid > 46 && decl.ouvert)
-              return i18n("null_ouv_illegal_with_bid") + " " + maxBid + ".";
-
-          }
+          String checkResult = checkPickupDecl();
+          if (checkResult != null)
+            return checkResult;
 
           discardHalfPhase = true;
           return null;
@@ -1518,20 +1769,13 @@ public class SimpleState implements Serializable
             return i18n("move_needs_3_parts_colon") + " " + player + ", " + move;
     
           // Read in the game declaration (the first substring in the move)
-          String declResult = decl.fromString(parts[0]);
+          String declResult = parseDecl(parts[0]);
           if (declResult != null)
             return i18n("game_decl_got") + " " + parts[0] + ", " + i18n("returned") + " " + declResult;
 
-          if (decl.hand) return i18n("hand_illegal_after_pickup");
-          
-          // check for overbid null games
-    
-          if (decl.type == GameDeclaration.NULL_GAME) {
-            if (maxBid > 23 && !decl.ouvert)
-              return i18n("null_illegal_with_bid") + " " + maxBid + ".";
-            if (maxBid > 46 && decl.ouvert)
-              return i18n("null_ouv_illegal_with_bid") + " " + maxBid + ".";
-          }
+          String checkResult = checkPickupDecl();
+          if (checkResult != null)
+            return checkResult;
     
           // does player have the "discarded" cards?
     
@@ -1545,26 +1789,9 @@ public class SimpleState implements Serializable
     
           if (view == WORLD_VIEW || view == declarer) {
             
-            int newHand = pinfos[player].hand;
-            if (Hand.has(newHand, skat0) || Hand.has(newHand, skat1))
-              Misc.err("some of the skat cards already in player's hand?!");
-    
-            newHand = Hand.set(newHand, skat0);
-            newHand = Hand.set(newHand, skat1);
-            newHand = Hand.clear(newHand, disc1);
-            newHand = Hand.clear(newHand, disc2);        
-    
-            if (Hand.numCards(newHand) != 10) {
-              return i18n("illegal_discards");
-            }
-            
-            // move ok
-    
-            pinfos[player].hand = newHand;
-            skat0 = disc1;
-            skat1 = disc2;
-    
-            declarerHandBeforeCardplay = newHand;
+            String discardResult = discardCards(player, disc1, disc2);
+            if (discardResult != null)
+              return discardResult;
             
             if (views != null) {
               // hide discarded cards from opponents and public view
@@ -1578,7 +1805,7 @@ public class SimpleState implements Serializable
             }
           }
     
-          if (decl.ouvert) {
+          if (declOuvert()) {
     
             if (view != WORLD_VIEW) {
     
@@ -1589,20 +1816,20 @@ public class SimpleState implements Serializable
                 if (parts.length != 13)
                   return i18n("move_needs_13_parts");
                 
-                pinfos[declarer].hand = 0;
+                setHand(declarer, 0);
                 
                 for (int i=3; i < 13; i++) {
                   Card card = Card.fromString(parts[i]);
                   if (card == null)
                     return i18n("ouvert_error_colon") + " " + move;
-                  pinfos[declarer].hand = Hand.set(pinfos[declarer].hand, card);
+                  setHand(declarer, Hand.set(getHand(declarer), card));
                 }
               }
     
             } else if (views != null) {
     
               // append declarer's cards in ouvert games to player, public view
-              String h = "."+Card.cardListToString(Hand.toCardList(pinfos[declarer].hand));
+              String h = "."+Card.cardListToString(Hand.toCardList(getHand(declarer)));
               
               for (int i=0; i < 4; i++) {
                 views[i] += h;
@@ -1610,9 +1837,7 @@ public class SimpleState implements Serializable
             }
           }
     
-          declarerHandBeforeCardplay = pinfos[declarer].hand;
-          phase = CARDPLAY;
-          toMove = FORE_HAND;
+          startCardplay();
           return null;
         }
 
@@ -1637,26 +1862,9 @@ public class SimpleState implements Serializable
     
 	if (view == WORLD_VIEW || view == declarer) {
             
-          int newHand = pinfos[player].hand;
-          if (Hand.has(newHand, skat0) || Hand.has(newHand, skat1))
-            Misc.err("some of the skat cards already in player's hand?!");
-  
-          newHand = Hand.set(newHand, skat0);
-          newHand = Hand.set(newHand, skat1);
-          newHand = Hand.clear(newHand, disc1);
-          newHand = Hand.clear(newHand, disc2);        
-  
-          if (Hand.numCards(newHand) != 10) {
-            return i18n("illegal_discards");
-          }
-          
-          // move ok
-  
-          pinfos[player].hand = newHand;
-          skat0 = disc1;
-          skat1 = disc2;
-  
-          declarerHandBeforeCardplay = newHand;
+          String discardResult = discardCards(player, disc1, disc2);
+          if (discardResult != null)
+            return discardResult;
           
           if (views != null) {
             // hide discarded cards from opponents and public view
@@ -1668,7 +1876,7 @@ public class SimpleState implements Serializable
           }
         }
   
-        if (decl.ouvert) {
+        if (declOuvert()) {
   
           if (view != WORLD_VIEW) {
   
@@ -1679,20 +1887,20 @@ public class SimpleState implements Serializable
               if (parts.length != 12)
                 return i18n("move_needs_12_parts");
               
-              pinfos[declarer].hand = 0;
+              setHand(declarer, 0);
               
               for (int i=2; i < 12; i++) {
                 Card card = Card.fromString(parts[i]);
                 if (card == null)
                   return i18n("ouvert_error_colon") + " " + move;
-                pinfos[declarer].hand = Hand.set(pinfos[declarer].hand, card);
+                setHand(declarer, Hand.set(getHand(declarer), card));
               }
             }
   
           } else if (views != null) {
   
             // append declarer's cards in ouvert games to player, public view
-            String h = "."+Card.cardListToString(Hand.toCardList(pinfos[declarer].hand));
+            String h = "."+Card.cardListToString(Hand.toCardList(getHand(declarer)));
             
             for (int i=0; i < 4; i++) {
               views[i] += h;
@@ -1700,10 +1908,7 @@ public class SimpleState implements Serializable
           }
         }
   
-        declarerHandBeforeCardplay = pinfos[declarer].hand;
-        phase = CARDPLAY;
-        toMove = FORE_HAND;
-        discardHalfPhase = false;
+        startCardplay();
         return null;
       }
       
@@ -1712,6 +1917,319 @@ public class SimpleState implements Serializable
     return "invalid move - " + player + " | " + move;
   }
 
+  /** Makes an int-coded move (see MoveCode) without generating views.
+      Follows the same rules as makeMove(int, String, String[]), but
+      can't reveal ouvert hands to viewers who don't know them (use it
+      in world view or the player's own view).
+      @return null if move could be made, or error message otherwise
+  */
+  public String makeMove(int player, int code)
+  {
+    if (phase == FINISHED)
+      return i18n("game_finished");
+
+    if (toMove != player)
+      return i18n("not_your_turn");
+
+    int kind = MoveCode.kind(code);
+
+    // 3-bit game type field: 6 and 7 aren't game types
+    if ((kind == MoveCode.DECL || kind == MoveCode.DECL_DISCARD) &&
+        MoveCode.gameType(code) > GameDeclaration.NULL_GAME)
+      return "invalid move - " + player + " | game type " + MoveCode.gameType(code);
+    
+    switch (phase) {
+
+    case CARDPLAY:
+      if (kind != MoveCode.CARD) break;
+      return makeCardMove(player, Card.fromIndex(MoveCode.cardIndex(code)));
+
+    case BID:
+      if (kind == MoveCode.PASS) {
+        bidPass();
+        return null;
+      }
+      if (kind == MoveCode.BID)
+        return makeBid(player, MoveCode.bidValue(code));
+      break;
+      
+    case ANSWER:
+      if (kind == MoveCode.YES) {
+        answerYes(player);
+        return null;
+      }
+      if (kind == MoveCode.PASS) {
+        answerPass();
+        return null;
+      }
+      break;
+
+    case SKAT_OR_HAND_DECL:
+      if (kind == MoveCode.SKAT) {
+        requestSkat();
+        return null;
+      }
+      if (kind == MoveCode.DECL) {
+        String r = checkHandDecl(MoveCode.gameType(code), MoveCode.hand(code), MoveCode.ouvert(code));
+        if (r != null) return r;
+        storeDecl(code);
+        startCardplay();
+        return null;
+      }
+      break;
+
+    case GET_SKAT:
+      if (kind == MoveCode.SKAT_CARDS) {
+        receiveSkat(Card.fromIndex(MoveCode.cardIndex(code)),
+                    Card.fromIndex(MoveCode.cardIndex2(code)));
+        return null;
+      }
+      break;
+      
+    case DISCARD_AND_DECL:
+      if (!discardHalfPhase) {
+
+        if (kind != MoveCode.DECL && kind != MoveCode.DECL_DISCARD) break;
+
+        String r = checkPickupDecl(MoveCode.gameType(code), MoveCode.hand(code), MoveCode.ouvert(code));
+        if (r != null) return r;
+
+        if (kind == MoveCode.DECL_DISCARD && (view == WORLD_VIEW || view == declarer)) {
+          r = discardCards(player,
+                           Card.fromIndex(MoveCode.cardIndex(code)),
+                           Card.fromIndex(MoveCode.cardIndex2(code)));
+          if (r != null) return r;
+        }
+
+        storeDecl(code);
+
+        if (kind == MoveCode.DECL) {
+          discardHalfPhase = true; // discarded cards come next
+          return null;
+        }
+        startCardplay();
+        return null;
+
+      } else if (kind == MoveCode.DISCARD) {
+
+        if (view == WORLD_VIEW || view == declarer) {
+          String r = discardCards(player,
+                                  Card.fromIndex(MoveCode.cardIndex(code)),
+                                  Card.fromIndex(MoveCode.cardIndex2(code)));
+          if (r != null) return r;
+        }
+        startCardplay();
+        return null;
+      }
+      break;
+    }
+
+    return "invalid move - " + player + " | " + MoveCode.toString(code);
+  }
+
+  // the following helpers implement the non-card moves for both makeMove versions
+
+  // pass in phase BID
+  private void bidPass()
+  {
+    if (getMaxBid(toMove) == 0)
+      setMaxBid(toMove, 1);
+        
+    if (bidder == FORE_HAND) {
+
+      // If forehand passes, the game is over (all pass)
+      
+      phase = FINISHED;
+
+    } else if (bidder == MIDDLE_HAND) {
+
+      bidder = REAR_HAND;
+      asked = FORE_HAND;
+      toMove = bidder;
+
+    } else { // bidder = REAR_HAND
+	  
+      if (maxBid < 18) {
+
+        // forehand hasn't bid yet - ask if he wants to play
+
+        bidder = FORE_HAND;
+        asked = WORLD_VIEW;  // noone to be asked
+        toMove = bidder;
+
+      } else  {
+
+        // Otherwise asked player becomes declarer
+
+        phase = SKAT_OR_HAND_DECL;
+        declarer = asked;
+        toMove = declarer;
+        asked = -1;
+        bidder = -1;
+      }
+    }
+  }
+
+  // bid in phase BID, @return null if OK, error message otherwise
+  private String makeBid(int player, int bid)
+  {
+    // The bid must be higher than the current maximum bid.
+    if (bid <= maxBid) return i18n("bid_not_high_enough");
+
+    // The bid must not be ridiculous.
+    if ((bid >= 500) || (bid < 0)) return i18n("bid_ridiculous");
+
+    // OK -> update the max bid and change the state. We're now
+    // awaiting a response from the next player
+
+    setMaxBid(player, bid);
+    maxBid = (short)bid;
+    phase = ANSWER;
+    toMove = asked;
+    // asked = bidder;
+	
+    // Special case: the forehand bids and the others passed. 
+    if (player == FORE_HAND) {
+      phase = SKAT_OR_HAND_DECL;
+      declarer = FORE_HAND;
+      toMove = declarer;
+      asked = -1;
+      bidder = -1;
+    }
+    return null;
+  }
+
+  // "have it" in phase ANSWER: we proceed normally back to the bidding phase
+  private void answerYes(int player)
+  {
+    setMaxBid(player, maxBid);
+
+    phase = BID;
+    toMove = bidder;
+  }
+
+  // pass in phase ANSWER
+  private void answerPass()
+  {
+    if (getMaxBid(toMove) == 0)
+      setMaxBid(toMove, 1);
+	
+    if (bidder == MIDDLE_HAND) {
+
+      phase = BID;
+      bidder = REAR_HAND;
+      asked = MIDDLE_HAND;
+      toMove = bidder;
+	  
+    } else {
+	  
+      phase = SKAT_OR_HAND_DECL;
+      declarer = bidder;
+      toMove = declarer;
+      asked = -1;
+      bidder = -1;
+    }
+  }
+
+  // declarer picks up skat
+  private void requestSkat()
+  {
+    phase = GET_SKAT;
+    toMove = WORLD_MOVE;
+    declFlags &= ~DECL_HAND; // At this point, we can say the game is certainly not hand!  Needed for hashValue - Jeff
+  }
+
+  // world reveals skat to declarer
+  private void receiveSkat(Card c0, Card c1)
+  {
+    // if viewer is not declarer, we won't see anything in this move
+
+    if (view == WORLD_VIEW || view == declarer) {
+      skat0 = cardIndex(c0);
+      skat1 = cardIndex(c1);
+    }
+    phase = DISCARD_AND_DECL;
+    toMove = declarer;
+  }
+
+  // @return null if hand game declaration is legal, error message otherwise
+  private String checkHandDecl()
+  {
+    return checkHandDecl(declType, declHand(), declOuvert());
+  }
+  
+  private String checkHandDecl(int type, boolean hand, boolean ouvert)
+  {
+    if (!hand)
+      return i18n("must_declare_hand");
+
+    if (type == GameDeclaration.NULL_GAME) {
+      if (maxBid > 35 && !ouvert)
+        return i18n("null_hand_illegal_with_bid") + " " + maxBid + ".";
+      if (maxBid > 59 && ouvert)
+        return i18n("null_ouv_hand_illegal_with_bid") + " " + maxBid + ".";
+    }
+    return null;
+  }
+
+  // @return null if declaration after skat pickup is legal, error message otherwise
+  private String checkPickupDecl()
+  {
+    return checkPickupDecl(declType, declHand(), declOuvert());
+  }
+
+  private String checkPickupDecl(int type, boolean hand, boolean ouvert)
+  {
+    if (hand) return i18n("hand_illegal_after_pickup");
+          
+    // check for overbid null games
+    
+    if (type == GameDeclaration.NULL_GAME) {
+      if (maxBid > 23 && !ouvert)
+        return i18n("null_illegal_with_bid") + " " + maxBid + ".";
+      if (maxBid > 46 && ouvert)
+        return i18n("null_ouv_illegal_with_bid") + " " + maxBid + ".";
+    }
+    return null;
+  }
+
+  // declarer puts skat into hand and discards disc1,disc2
+  // @return null if OK, error message otherwise (state unchanged)
+  private String discardCards(int player, Card disc1, Card disc2)
+  {
+    int newHand = getHand(player);
+    int skat = cardBit(skat0) | cardBit(skat1);
+    if ((newHand & skat) != 0)
+      Misc.err("some of the skat cards already in player's hand?!");
+  
+    newHand |= skat;
+    newHand = Hand.clear(newHand, disc1);
+    newHand = Hand.clear(newHand, disc2);        
+  
+    if (Hand.numCards(newHand) != 10) {
+      return i18n("illegal_discards");
+    }
+          
+    // move ok
+  
+    setHand(player, newHand);
+    skat0 = cardIndex(disc1);
+    skat1 = cardIndex(disc2);
+  
+    declarerHandBeforeCardplay = newHand;
+    return null;
+  }
+
+  // declaration complete
+  private void startCardplay()
+  {
+    declarerHandBeforeCardplay = getHand(declarer);
+    phase = CARDPLAY;
+    toMove = FORE_HAND;
+    discardHalfPhase = false;
+    updateZobristKey();
+  }
+
   /** updates the sloughs associated with the given player, given the played card in the current trick
    */
   //  public void updateSloughs(int player, Card c) {
@@ -1743,21 +2261,21 @@ public class SimpleState implements Serializable
   /**@  Return true if the trick's winning card is unbeatable as the 2nd player in the trick IF that player doesn't beat it
    */
   public boolean winningCardUnbeatable(int player) {
-    if (decl.type < 0) {
+    if (declType < 0) {
       Misc.err("cardUnbeatable called with no game declaration!");
       return false;
     }
     if (trickCardNum != 2) {
       Misc.err("cardUnbeatable called at pointless time!");
     }
-    Card c = winningCard;
-    int playedCards = pinfos[0].playedCards | pinfos[1].playedCards | pinfos[2].playedCards;
+    Card c = card(winningCard);
+    int playedCards = getPlayedCards(0) | getPlayedCards(1) | getPlayedCards(2);
     playedCards ^= getHand(player);
     int remainder = -1 ^ playedCards;
     int card = 0;
     int suit = 0;
-    card = Hand.set(card, winningCard);
-    if (decl.type > GameDeclaration.GRAND_GAME) {
+    card |= cardBit(winningCard);
+    if (declType > GameDeclaration.GRAND_GAME) {
       // Null game - hands return to their standard rank
       suit = Hand.getSuit(remainder, c.getSuit());
       card = Hand.getSuit(card, c.getSuit());
@@ -1779,11 +2297,11 @@ public class SimpleState implements Serializable
         }
       }
       // By this point, we know the winning card is not a jack
-      if (isVoid(toMove, decl.tellCardSuit(c))) {
+      if (isVoid(toMove, GameDeclaration.tellCardSuit(c, declType))) {
         // If to move is void in the necessary suit
         return true;
       }
-      if ( (Hand.getJacks(remainder) != 0) && (!isVoid(toMove, decl.type))) {
+      if ( (Hand.getJacks(remainder) != 0) && (!isVoid(toMove, declType))) {
         // Check if toMove is void in the jack suit to see if he might have jacks
         return false;
       }
@@ -1834,15 +2352,15 @@ public class SimpleState implements Serializable
       return true;
 
     if (trump(card)) {
-      if (!trump(winningCard)) 
+      if (!trump(card(winningCard))) 
         return true;
       else
-        return (numRank(card) > numRank(winningCard));
+        return (numRank(card) > numRank(card(winningCard)));
     } else {
-      if (trump(winningCard) || !followsSuit(card))
+      if (trump(card(winningCard)) || !followsSuit(card))
         return false;
       else
-        return numRank(card) > numRank(winningCard);
+        return numRank(card) > numRank(card(winningCard));
     }
   }
   
@@ -1875,32 +2393,80 @@ public class SimpleState implements Serializable
     if (trickCardNum == 0)
       return true;
 
-    if (trump(trick0)) {
+    if (trump(card(trick0))) {
       return trump(card);
     } else if (trump(card)) {
       return false;
     }
 
-    return card.getSuit() == trick0.getSuit();
+    return card.getSuit() == card(trick0).getSuit();
   }
 
 
+  /** @return index (0..2) of the card that wins trick c0,c1,c2 (c0 led) */
   public int winner(Card c0, Card c1, Card c2)
+  {
+    return trickWinners[declType][trickIndex(c0, c1, c2)];
+  }
+
+  /** @return index into trick tables */
+  public static int trickIndex(Card c0, Card c1, Card c2)
+  {
+    return (c0.getIndex() << 10) | (c1.getIndex() << 5) | c2.getIndex();
+  }
+
+  /** same as above for card indexes */
+  public static int trickIndex(int i0, int i1, int i2)
+  {
+    return (i0 << 10) | (i1 << 5) | i2;
+  }
+
+  /** @return index (0..2) of winning card in game type for trick
+      with given index (see trickIndex). The winner of a partial
+      trick c0,c1 is stored at (c0,c1,c1)
+   */
+  public static int lookupTrickWinner(int gameType, int trickIndex)
+  {
+    return trickWinners[gameType][trickIndex];
+  }
+
+  /** @return card points in trick with given index (see trickIndex) */
+  public static int lookupTrickPoints(int trickIndex)
+  {
+    return trickPoints[trickIndex];
+  }
+
+  // reference implementation for trick tables
+  // @return true iff next beats prev (winning so far) when led was led
+  static boolean beats(int gameType, Card led, Card prev, Card next)
+  {
+    if (trump(next, gameType)) {
+      if (!trump(prev, gameType)) 
+        return true;
+      else
+        return numRank(next, gameType) > numRank(prev, gameType);
+    } else {
+      if (trump(prev, gameType))
+        return false;
+      if (trump(led, gameType) || next.getSuit() != led.getSuit())
+        return false; // doesn't follow suit
+      return numRank(next, gameType) > numRank(prev, gameType);
+    }
+  }
+
+  // reference implementation for trick tables
+  static int computeTrickWinner(int gameType, Card c0, Card c1, Card c2)
   {
     int wi = 0;
     Card winner = c0;
-    Card tmpCard = trick0;
-    trick0 = c0; // for newCardWins
     
-    if (newCardWins(winner, c1)) {
+    if (beats(gameType, c0, winner, c1)) {
       wi = 1;
       winner = c1;
     }
-    if (newCardWins(winner, c2)) {
+    if (beats(gameType, c0, winner, c2)) {
       wi = 2;
     }
-
-    trick0 = tmpCard; // restore trick0
     return wi;
   }
 
@@ -1938,15 +2504,15 @@ public class SimpleState implements Serializable
       
       voids &= ~Card.JACK_MASK;
       
-      if (decl.type == GameDeclaration.GRAND_GAME) {
+      if (declType == GameDeclaration.GRAND_GAME) {
         
         if (isVoid(player, 4)) voids |= Card.JACK_MASK;
         
       } else {
         
-        assert decl.type != GameDeclaration.NULL_GAME;
+        assert declType != GameDeclaration.NULL_GAME;
         
-        if (isVoid(player, decl.type)) voids |= Card.JACK_MASK;
+        if (isVoid(player, declType)) voids |= Card.JACK_MASK;
       }
       
       cards &= ~voids;
@@ -1954,7 +2520,7 @@ public class SimpleState implements Serializable
 
     if (false) {
       Misc.msg("!!! contains: " + me + " " + player + " " +
-               Hand.toStringColor(cards, (decl.type < 4 ? decl.type : 3)) +
+               Hand.toStringColor(cards, (declType < 4 ? declType : 3)) +
                " c:" + c.toStringColor() +
                " higher:" + containsHigherCard(cards, c));
     }
@@ -1972,7 +2538,7 @@ public class SimpleState implements Serializable
     if (followsSuit(c))
       return true;
   
-    return !canFollowSuit(toMove, trick0);
+    return !canFollowSuit(toMove, card(trick0));
   }
 
   /** @return Returns true if the card c is ok in the current trick.
@@ -1984,24 +2550,52 @@ public class SimpleState implements Serializable
     if (followsSuit(c))
       return true;
   
-    return !canFollowSuit(player, trick0);
+    return !canFollowSuit(player, card(trick0));
+  }
+
+  /** @return legal cards of the player to move in cardplay as
+   * bit set (Hand format), 0 in other phases. Iterate with
+   * Integer.numberOfTrailingZeros, no allocation needed
+   */
+  public int legalCards()
+  {
+    if (phase != CARDPLAY) return 0;
+    
+    int hand = getHand(toMove);
+
+    if (trickCardNum == 0 || trickCardNum == 3)
+      return hand;
+
+    int follow = hand & followMasks[declType][trick0];
+    if (follow != 0)
+      return follow; // must follow suit
+
+    return hand;
   }
 
+  /** @return cards that follow suit when card with index ledIndex is
+   * led in game type gameType (bit set)
+   */
+  public static int getFollowMask(int gameType, int ledIndex)
+  {
+    return followMasks[gameType][ledIndex];
+  }
+  
   /** @return Whether or not the given player is capable of following
    * the suit of the given card.
    */
   public boolean canFollowSuit(int player, Card card) 
   {
-    if (decl.type == GameDeclaration.NULL_GAME) {
+    if (declType == GameDeclaration.NULL_GAME) {
       // no trump
-      return Hand.suitBits(pinfos[player].hand, card.getSuit()) != 0;
+      return Hand.suitBits(getHand(player), card.getSuit()) != 0;
     }
 
     if (trump(card)) {
       return hasTrump(player);
     
     } else {
-      return (Hand.suitBits(pinfos[player].hand, card.getSuit()) & ~(1 << Card.RANK_JACK)) != 0;
+      return (Hand.suitBits(getHand(player), card.getSuit()) & ~(1 << Card.RANK_JACK)) != 0;
     }
   }
 
@@ -2010,20 +2604,20 @@ public class SimpleState implements Serializable
   public boolean hasTrump(int player)
   {
     // In a null game, no trumps at all.
-    if (decl.type == GameDeclaration.NULL_GAME)
+    if (declType == GameDeclaration.NULL_GAME)
       return false;
 
     for (int i = 0; i < 4; i++) {
-      if ((Hand.suitBits(pinfos[player].hand, i) & (1 << Card.RANK_JACK)) != 0)
+      if ((Hand.suitBits(getHand(player), i) & (1 << Card.RANK_JACK)) != 0)
         return true; // has a jack
     }
 
     // grand: only jacks are trump
-    if (decl.type == GameDeclaration.GRAND_GAME)
+    if (declType == GameDeclaration.GRAND_GAME)
       return false;
 
     // otherwise, we're in a suit game
-    return Hand.suitBits(pinfos[player].hand, decl.type) != 0;
+    return Hand.suitBits(getHand(player), declType) != 0;
   }
 
   /** @returns true iff hand contain a trump
@@ -2031,17 +2625,17 @@ public class SimpleState implements Serializable
   public boolean containsTrump(int hand)
   {
     // In a null game, no trumps at all.
-    if (decl.type == GameDeclaration.NULL_GAME)
+    if (declType == GameDeclaration.NULL_GAME)
       return false;
 
     if ((hand & Card.JACK_MASK) != 0) return true; // has jack
 
     // grand: only jacks are trump
-    if (decl.type == GameDeclaration.GRAND_GAME)
+    if (declType == GameDeclaration.GRAND_GAME)
       return false;
 
     // otherwise, we're in a suit game
-    return Hand.suitBits(hand, decl.type) != 0;
+    return Hand.suitBits(hand, declType) != 0;
   }
 
   /** @returns true iff hand contain a higher card than c
@@ -2063,14 +2657,14 @@ public class SimpleState implements Serializable
   /** @return whether a card is a trump in the context of the game declaration */
   public boolean trump(Card card)
   {
-    if (decl.type == GameDeclaration.NULL_GAME)
+    if (declType == GameDeclaration.NULL_GAME)
       return false;
     if (card.getRank() == Card.RANK_JACK)
       return true;
-    if (decl.type == GameDeclaration.GRAND_GAME)
+    if (declType == GameDeclaration.GRAND_GAME)
       return false;
     
-    return card.getSuit() == decl.trumpSuit();
+    return card.getSuit() == GameDeclaration.trumpSuit(declType);
   }
   
   
@@ -2093,26 +2687,35 @@ public class SimpleState implements Serializable
   {
     if (trickCardNum != 3) return -1;
     
-    return 
-      Card.points[trick0.getRank()] +
-      Card.points[trick1.getRank()] +
-      Card.points[trick2.getRank()];
+    return trickPoints[trickIndex(trick0, trick1, trick2)];
   }
   
   /** @return the point value of current partial trick */
   public int currentPartialTrickPoints()
   {
     int p = 0;
-    if (trickCardNum >= 1) p += Card.points[trick0.getRank()];
-    if (trickCardNum >= 2) p += Card.points[trick1.getRank()];
-    if (trickCardNum >= 3) p += Card.points[trick2.getRank()];
+    if (trickCardNum >= 1) p += cardValue(trick0);
+    if (trickCardNum >= 2) p += cardValue(trick1);
+    if (trickCardNum >= 3) p += cardValue(trick2);
     return p;
   }
   
   /** @return The numerical ranking of a supplied card */
   public int numRank(Card card)
   {
-    if (decl.type == GameDeclaration.NULL_GAME) 
+    if (declType == GameDeclaration.NULL_GAME) 
+      return Card.nullRanks[card.getRank()];
+    
+    if (card.getRank() == Card.RANK_JACK)
+      return Card.suitRanks[card.getRank()] + card.getSuit();
+    
+    return Card.suitRanks[card.getRank()];
+  }
+
+  /** @return The numerical ranking of a supplied card in gameType */
+  public static int numRank(Card card, int gameType)
+  {
+    if (gameType == GameDeclaration.NULL_GAME) 
       return Card.nullRanks[card.getRank()];
     
     if (card.getRank() == Card.RANK_JACK)
@@ -2150,11 +2753,11 @@ public class SimpleState implements Serializable
        */
 
       if (trickCardNum == 0 || trickCardNum == 3 ||
-          !canFollowSuit(toMove, trick0)) {
+          !canFollowSuit(toMove, card(trick0))) {
 
         // all cards possible
 
-        int hand = pinfos[toMove].hand;
+        int hand = getHand(toMove);
         for (int s=0; s < 4; s++) {
           
           String[] cards = suitCardStrings[s][(hand >>> (8*s)) & 0xff];
@@ -2167,13 +2770,13 @@ public class SimpleState implements Serializable
       } else {
 
         // follow suit
-        int suit = trick0.getSuit();
+        int suit = card(trick0).getSuit();
 
-        if (decl.type == GameDeclaration.NULL_GAME) {
+        if (declType == GameDeclaration.NULL_GAME) {
 
           // null game: need to play card of the same suit
           
-          int scards = Hand.suitBits(pinfos[toMove].hand, suit);
+          int scards = Hand.suitBits(getHand(toMove), suit);
           for (int r=0; r < 8; r++) {
             if ((scards & (1<<r)) != 0) {
               // moves[i++] = Card.newCard(suit, r).toString();
@@ -2185,21 +2788,21 @@ public class SimpleState implements Serializable
 
           // trump game
 
-          if (trump(trick0)) {
+          if (trump(card(trick0))) {
 
             // jacks
             
             for (int s=0; s < 4; s++) {
-              if ((Hand.suitBits(pinfos[toMove].hand, s) & (1 << Card.RANK_JACK)) != 0) {
+              if ((Hand.suitBits(getHand(toMove), s) & (1 << Card.RANK_JACK)) != 0) {
                 moves[mn++] = Card.newCard(s, Card.RANK_JACK).toString();
               }
             }
             
-            if (decl.type != GameDeclaration.GRAND_GAME) {
+            if (declType != GameDeclaration.GRAND_GAME) {
 
               // trump suit (no jack)
-              int trumpSuit = decl.trumpSuit();
-              int scards = Hand.suitBits(pinfos[toMove].hand, trumpSuit) &
+              int trumpSuit = GameDeclaration.trumpSuit(declType);
+              int scards = Hand.suitBits(getHand(toMove), trumpSuit) &
                 ~(1 << Card.RANK_JACK);
 
               for (int r=0; r < 8; r++) {
@@ -2213,7 +2816,7 @@ public class SimpleState implements Serializable
 
             // need to play suit (no jacks)
 
-            int scards = Hand.suitBits(pinfos[toMove].hand, suit) & ~(1 << Card.RANK_JACK);
+            int scards = Hand.suitBits(getHand(toMove), suit) & ~(1 << Card.RANK_JACK);
             
             for (int r=0; r < 8; r++) {
               if ((scards & (1<<r)) != 0) {
@@ -2235,7 +2838,7 @@ public class SimpleState implements Serializable
         // check move vector against slow implementation
 
         Card[] cards = new Card[12];
-        int n = Hand.toCardArray(pinfos[toMove].hand, cards);
+        int n = Hand.toCardArray(getHand(toMove), cards);
         Vector<String> newVector = new Vector<String>();
         
         // fixme: this needs to be sped-up significantly!
@@ -2294,7 +2897,7 @@ public class SimpleState implements Serializable
         String suit = GameDeclaration.gameNames[i] + "H";
 
         if (GameDeclaration.gameNames[i].equals("N")) {
-          if (pinfos[declarer].maxBid <= 35) {
+          if (getMaxBid(declarer) <= 35) {
             moves[mn++] = suit;
           }
         } else {
@@ -2303,14 +2906,14 @@ public class SimpleState implements Serializable
 
         if (i < GameDeclaration.gameNames.length - 1) {
 	  // Not a null game
-          moves[mn++] = suit + "O" + "." + Card.cardListToString(Hand.toCardList(pinfos[declarer].hand));          
-          moves[mn++] = suit + "S"+ "." + Card.cardListToString(Hand.toCardList(pinfos[declarer].hand));
-          moves[mn++] = suit + "Z" + "." + Card.cardListToString(Hand.toCardList(pinfos[declarer].hand));
+          moves[mn++] = suit + "O" + "." + Card.cardListToString(Hand.toCardList(getHand(declarer)));          
+          moves[mn++] = suit + "S"+ "." + Card.cardListToString(Hand.toCardList(getHand(declarer)));
+          moves[mn++] = suit + "Z" + "." + Card.cardListToString(Hand.toCardList(getHand(declarer)));
                    
         }
         else {
-          if (pinfos[declarer].maxBid <= 59) {
-            moves[mn++] = suit + "O" + "." + Card.cardListToString(Hand.toCardList(pinfos[declarer].hand));
+          if (getMaxBid(declarer) <= 59) {
+            moves[mn++] = suit + "O" + "." + Card.cardListToString(Hand.toCardList(getHand(declarer)));
           }
         }
       }
@@ -2323,7 +2926,7 @@ public class SimpleState implements Serializable
       if (discardHalfPhase) {
   
         Card[] cards = new Card[12]; // fixme: no new please
-        int n = Hand.toCardArray(pinfos[declarer].hand, cards);
+        int n = Hand.toCardArray(getHand(declarer), cards);
   
         // if (cards.size() != 12) Misc.err("not 12 cards in hand"); // Apparently we changed this, so the skat cards aren't in the declarer's hand.
   
@@ -2338,9 +2941,9 @@ public class SimpleState implements Serializable
             ss.append(".");
             ss.append(cards[j].toString());
             // discards.add(ss.toString());
-            if (decl.ouvert) {
+            if (declOuvert()) {
               ss.append(".");
-              ss.append(Card.cardListToString(Hand.toCardList(pinfos[declarer].hand)));
+              ss.append(Card.cardListToString(Hand.toCardList(getHand(declarer))));
             }
             moves[mn++] = ss.toString();
           }
@@ -2348,12 +2951,12 @@ public class SimpleState implements Serializable
             StringBuilder ss = new StringBuilder();
             ss.append(cards[i].toString());
             ss.append(".");
-            if (j == 0) ss.append(skat0.toString());
-            else        ss.append(skat1.toString());
+            if (j == 0) ss.append(skatCard(skat0).toString());
+            else        ss.append(skatCard(skat1).toString());
             // discards.add(ss.toString());
-            if (decl.ouvert) {
+            if (declOuvert()) {
               ss.append(".");
-              ss.append(Card.cardListToString(Hand.toCardList(pinfos[declarer].hand)));
+              ss.append(Card.cardListToString(Hand.toCardList(getHand(declarer))));
             }
             moves[mn++] = ss.toString();
           }
@@ -2364,25 +2967,25 @@ public class SimpleState implements Serializable
           StringBuilder ss = new StringBuilder();
           ss.append(cards[9].toString());
           ss.append(".");
-          if (i == 0) ss.append(skat0.toString());
-          else        ss.append(skat1.toString());
+          if (i == 0) ss.append(skatCard(skat0).toString());
+          else        ss.append(skatCard(skat1).toString());
           // discards.add(ss.toString());
-          if (decl.ouvert) {
+          if (declOuvert()) {
             ss.append(".");
-            ss.append(Card.cardListToString(Hand.toCardList(pinfos[declarer].hand)));
+            ss.append(Card.cardListToString(Hand.toCardList(getHand(declarer))));
           }
           moves[mn++] = ss.toString();
         }
 
         // Now we have missed only the 2 skat card together.
         StringBuilder ss = new StringBuilder();
-        ss.append(skat0.toString());
+        ss.append(skatCard(skat0).toString());
         ss.append(".");
-        ss.append(skat1.toString());
+        ss.append(skatCard(skat1).toString());
 
-        if (decl.ouvert) {
+        if (declOuvert()) {
           ss.append(".");
-          ss.append(Card.cardListToString(Hand.toCardList(pinfos[declarer].hand)));
+          ss.append(Card.cardListToString(Hand.toCardList(getHand(declarer))));
         }
         // discards.add(ss.toString());
         moves[mn++] = ss.toString();
@@ -2400,7 +3003,7 @@ public class SimpleState implements Serializable
           // StringBuilder suit = new StringBuilder(toMove + " " + GameDeclaration.gameNames[i]);
           String name = GameDeclaration.gameNames[i];
           if (name.equals("N")) {
-            if (pinfos[declarer].maxBid > 23) {
+            if (getMaxBid(declarer) > 23) {
               continue;
             }
           } 
@@ -2410,7 +3013,7 @@ public class SimpleState implements Serializable
   
         // Null is the only game that can be played ouvert if we pick up
         // the skat.  String suit = toMove + " NO.";
-        if (pinfos[declarer].maxBid <= 46) {
+        if (getMaxBid(declarer) <= 46) {
           
           moves[mn++] = "NO";
           
@@ -2423,6 +3026,110 @@ public class SimpleState implements Serializable
     return mn;
   }
 
+  /** int-coded version of genMoves(String[]), see MoveCode. moves
+      needs room for MoveCode.MAX_MOVES entries. Unlike the string
+      version, the world's skat move is generated in phase GET_SKAT
+      (if the skat is known) and declarations after picking up the
+      skat are combined with all discards.
+      @return number of moves
+  */
+  public int genMoves(int[] moves)
+  {
+    int mn = 0; // number of moves returned
+
+    switch (phase) {
+
+    case CARDPLAY: {
+
+      int cards = legalCards();
+
+      while (cards != 0) {
+        moves[mn++] = MoveCode.card(Integer.numberOfTrailingZeros(cards));
+        cards &= cards - 1;
+      }
+      break;
+    }
+
+    case BID: {
+      moves[mn++] = MoveCode.PASS_CODE;
+      int bid = nextBid();
+      if (bid > 0) {
+        moves[mn++] = MoveCode.bid(bid);
+      }
+      break;
+    }
+      
+    case ANSWER:
+      moves[mn++] = MoveCode.YES_CODE;
+      moves[mn++] = MoveCode.PASS_CODE;
+      break;
+
+    case SKAT_OR_HAND_DECL:
+      moves[mn++] = MoveCode.SKAT_CODE;
+
+      for (int t = GameDeclaration.DIAMONDS_GAME; t <= GameDeclaration.GRAND_GAME; t++) {
+        moves[mn++] = MoveCode.decl(t, true, false, false, false);
+        moves[mn++] = MoveCode.decl(t, true, false, true, false);
+        moves[mn++] = MoveCode.decl(t, true, false, true, true);
+        moves[mn++] = MoveCode.decl(t, true, true, true, true);
+      }
+
+      if (checkHandDecl(GameDeclaration.NULL_GAME, true, false) == null)
+        moves[mn++] = MoveCode.decl(GameDeclaration.NULL_GAME, true, false, false, false);
+      if (checkHandDecl(GameDeclaration.NULL_GAME, true, true) == null)
+        moves[mn++] = MoveCode.decl(GameDeclaration.NULL_GAME, true, true, false, false);
+      break;
+
+    case GET_SKAT:
+      if (skat0 >= 0) {
+        moves[mn++] = MoveCode.skatCards(skat0, skat1);
+      }
+      break;
+      
+    case DISCARD_AND_DECL: {
+
+      if (skat0 < 0 || getHand(declarer) == 0)
+        break; // can't see declarer's cards
+
+      int cards = getHand(declarer) | cardBit(skat0) | cardBit(skat1);
+
+      if (discardHalfPhase) {
+
+        for (int c0 = cards; c0 != 0; c0 &= c0 - 1) {
+          int i0 = Integer.numberOfTrailingZeros(c0);
+          for (int c1 = c0 & (c0 - 1); c1 != 0; c1 &= c1 - 1) {
+            moves[mn++] = MoveCode.discard(i0, Integer.numberOfTrailingZeros(c1));
+          }
+        }
+        break;
+      }
+      
+      for (int t = GameDeclaration.DIAMONDS_GAME; t <= GameDeclaration.NULL_GAME + 1; t++) {
+
+        int dc;
+        if (t <= GameDeclaration.GRAND_GAME) {
+          dc = MoveCode.decl(t, false, false, false, false);
+        } else {
+          // null, null ouvert
+          boolean ouvert = t > GameDeclaration.NULL_GAME;
+          if (checkPickupDecl(GameDeclaration.NULL_GAME, false, ouvert) != null) continue;
+          dc = MoveCode.decl(GameDeclaration.NULL_GAME, false, ouvert, false, false);
+        }
+
+        for (int c0 = cards; c0 != 0; c0 &= c0 - 1) {
+          int i0 = Integer.numberOfTrailingZeros(c0);
+          for (int c1 = c0 & (c0 - 1); c1 != 0; c1 &= c1 - 1) {
+            moves[mn++] = MoveCode.declDiscard(dc, i0, Integer.numberOfTrailingZeros(c1));
+          }
+        }
+      }
+      break;
+    }
+    }
+
+    return mn;
+  }
+
   /** @return true if game has ended */
   public boolean isFinished() { return phase == FINISHED; }
 
@@ -2431,34 +3138,34 @@ public class SimpleState implements Serializable
   
   public String toString(boolean color)
   {
-    int col = decl.type;
+    int col = declType;
     String out = "";
 
     if (color) {
-      if (decl.type == GameDeclaration.GRAND_GAME)
+      if (declType == GameDeclaration.GRAND_GAME)
         col = Card.SUIT_CLUBS;
-      else if (decl.type == GameDeclaration.NULL_GAME)
+      else if (declType == GameDeclaration.NULL_GAME)
         col = Card.SUIT_NONE;
     }
     
     for (int i = 0; i < 3; i++) {
       out += i + ": ";
       if (color) {
-        out += Hand.toStringColor(pinfos[i].hand, col, false);
+        out += Hand.toStringColor(getHand(i), col, false);
       } else {
-        out += Hand.toString(pinfos[i].hand, true);
+        out += Hand.toString(getHand(i), true);
       }
-      out += " v:" + pinfos[i].voids + " ";
+      out += " v:" + getVoids(i) + " ";
       if (color) {
-        out += " played: " + Hand.toStringColor(pinfos[i].playedCards, col, false) + "\n";
+        out += " played: " + Hand.toStringColor(getPlayedCards(i), col, false) + "\n";
       } else {
-        out += " played: " + Hand.toString(pinfos[i].playedCards, true) + "\n";
+        out += " played: " + Hand.toString(getPlayedCards(i), true) + "\n";
       }
     }
     if (color) {
-      out += "Skat: " + skat0.toStringColor() + skat1.toStringColor() + "\n";      
+      out += "Skat: " + skatCard(skat0).toStringColor() + skatCard(skat1).toStringColor() + "\n";      
     } else {
-      out += "Skat: " + skat0 + "." + skat1 + "\n";
+      out += "Skat: " + skatCard(skat0) + "." + skatCard(skat1) + "\n";
     }
     out += "phase: " + phase + "\n";
 
@@ -2479,7 +3186,7 @@ public class SimpleState implements Serializable
     }
       
     out += "\ndecl: " + declarer + "\n";
-    out += "type: " + decl + "\n";
+    out += "type: " + getGameDeclaration() + "\n";
     out += "to move: " + toMove + "\n";
     return out;
   }
@@ -2570,13 +3277,13 @@ public class SimpleState implements Serializable
     gr.timeout = timeout;
     gr.left = left;
     
-    if (decl.type != GameDeclaration.NO_GAME) {
+    if (declType != GameDeclaration.NO_GAME) {
 
       // game has been declared
       
-      int declPoints = pinfos[declarer].trickPoints;
+      int declPoints = getTrickPoints(declarer);
 
-      Card newSkat0 = skat0, newSkat1 = skat1;
+      Card newSkat0 = skatCard(skat0), newSkat1 = skatCard(skat1);
 
       if (!newSkat0.isKnown()) {
 
@@ -2599,26 +3306,26 @@ public class SimpleState implements Serializable
       if (newSkat0.isKnown())
         declPoints += newSkat0.value() + newSkat1.value();
       
-      int declTricks = pinfos[declarer].tricksWon;
+      int declTricks = getTricksWon(declarer);
       boolean declInstantLoss  =
-        pinfos[declarer].resigned != 0 ||
+        getResigned(declarer) != 0 ||
         (timeout >= 0 && timeout == declarer) ||
         (left >= 0 && left == declarer);
       
       boolean defsInstantLoss  =
-        (pinfos[0].resigned + pinfos[1].resigned + pinfos[2].resigned - pinfos[declarer].resigned)
+        (getResigned(0) + getResigned(1) + getResigned(2) - getResigned(declarer))
         >= 2 || (timeout >= 0 && timeout != declarer) || (left >= 0 && left != declarer);
 
       gr.resigned =
-        (pinfos[declarer].resigned != 0 ||
-         (pinfos[0].resigned + pinfos[1].resigned + pinfos[2].resigned - pinfos[declarer].resigned) >= 2);
+        (getResigned(declarer) != 0 ||
+         (getResigned(0) + getResigned(1) + getResigned(2) - getResigned(declarer)) >= 2);
       
       if (declInstantLoss)
         defsInstantLoss = false; // simultaneous instant loss -> declarer loses
       
       // tally up the points
       
-      if (decl.type != GameDeclaration.NULL_GAME) {
+      if (declType != GameDeclaration.NULL_GAME) {
         
         if (defsInstantLoss) {
           
@@ -2629,8 +3336,8 @@ public class SimpleState implements Serializable
           
           for (int i = 0; i < 3; ++i) {
             if (i != declarer) {
-              pointsLeft -= pinfos[i].trickPoints;
-              tricksLeft -= pinfos[i].tricksWon;
+              pointsLeft -= getTrickPoints(i);
+              tricksLeft -= getTricksWon(i);
             }
           }
           
@@ -2648,10 +3355,10 @@ public class SimpleState implements Serializable
         dh = getPlayedCards(declarer);
       }
       
-      decl.value(dh, newSkat0, newSkat1,
+      getGameDeclaration().value(dh, newSkat0, newSkat1,
                  declPoints, declTricks, maxBid,
                  declInstantLoss,                  
-                 pinfos[0].tricksWon + pinfos[1].tricksWon + pinfos[2].tricksWon,
+                 getTricksWon(0) + getTricksWon(1) + getTricksWon(2),
                  gr);
       gr.declarer = declarer;
       gr.declCardPoints = declPoints;
@@ -2705,12 +3412,12 @@ public class SimpleState implements Serializable
   public int cardsOthersCantHave(int player)
   {
     int seen =
-      pinfos[0].playedCards | pinfos[1].playedCards | pinfos[2].playedCards |
-      pinfos[player].hand;
+      getPlayedCards(0) | getPlayedCards(1) | getPlayedCards(2) |
+      getHand(player);
 
-    if (player == declarer && !decl.hand && (view == player || view == WORLD_VIEW)) {
-      seen = Hand.set(seen, skat0);
-      seen = Hand.set(seen, skat1);      
+    if (player == declarer && !declHand() && (view == player || view == WORLD_VIEW)) {
+      seen |= cardBit(skat0);
+      seen |= cardBit(skat1);      
     }
     return seen;
   }
@@ -2739,7 +3446,7 @@ public class SimpleState implements Serializable
     if (getPhase() != SimpleState.CARDPLAY)
       return false;
     
-    if (getGameDeclaration().type == GameDeclaration.NULL_GAME)
+    if (declType == GameDeclaration.NULL_GAME)
       return false;
 
     if (getTrickCardNum() != 0 && getTrickCardNum() != 3)
@@ -2762,7 +3469,7 @@ public class SimpleState implements Serializable
   // return true iff hand is safe when decl. does not lead
   public boolean safeNull()
   {
-    if (decl.type != GameDeclaration.NULL_GAME) return false;
+    if (declType != GameDeclaration.NULL_GAME) return false;
     if (phase != SimpleState.CARDPLAY) return false;
     int hand = getHand(declarer);
     if (hand == 0) return false; // don't know declarer's hand
@@ -2796,7 +3503,7 @@ public class SimpleState implements Serializable
     if (getPhase() != SimpleState.CARDPLAY)
       return null;
 
-    int gameType = getGameDeclaration().type;
+    int gameType = declType;
     int trickCardNum = getTrickCardNum();
     
     if (gameType != GameDeclaration.NULL_GAME &&
@@ -2847,7 +3554,7 @@ public class SimpleState implements Serializable
   public boolean trickLeaderGetsAll()
   {
     if (getPhase() != SimpleState.CARDPLAY) Misc.err("not in cardplay phase");
-    if (decl.type == GameDeclaration.NULL_GAME) return false;
+    if (declType == GameDeclaration.NULL_GAME) return false;
     if (!handKnown(toMove)) return false;
     
     int leader = trickLeader();
@@ -2855,22 +3562,22 @@ public class SimpleState implements Serializable
     if (!handKnown(leader)) return false; // don't know anything about leader hand
 
     int otherCards  = ~cardsOthersCantHave(leader);
-    int leaderCards = pinfos[leader].hand;
+    int leaderCards = getHand(leader);
 
     if (getTrickCardNum() == 1 || getTrickCardNum() == 2) {
 
       // one or two cards have been played in trick
       // check whether a subsequent player can possibly overtake led card;
       
-      if (!cantOvertake(toMove, (leader+1) % 3, trick0) || 
-          !cantOvertake(toMove, (leader+2) % 3, trick0))
+      if (!cantOvertake(toMove, (leader+1) % 3, card(trick0)) || 
+          !cantOvertake(toMove, (leader+2) % 3, card(trick0)))
         return false;
 
       // correct other cards by undoing 2nd trick move (first card played
       // by trick leader doesn't change other cards)
 
       if (getTrickCardNum() == 2) {
-        otherCards |= trick1.toBit();
+        otherCards |= cardBit(trick1);
       }
     } 
 
@@ -2882,12 +3589,12 @@ public class SimpleState implements Serializable
     int leaderTrump = leaderCards & Card.JACK_MASK;
     int otherTrump  = otherCards  & Card.JACK_MASK;
 
-    if (decl.type != GameDeclaration.GRAND_GAME) {
+    if (declType != GameDeclaration.GRAND_GAME) {
 
       // add right shifted trump suit bits 
 
-      leaderTrump |= (leaderCards >>> Card.SUIT_POS[decl.type]) & Card.NO_JACK_SUIT_MASK;
-      otherTrump  |= (otherCards  >>> Card.SUIT_POS[decl.type]) & Card.NO_JACK_SUIT_MASK;
+      leaderTrump |= (leaderCards >>> Card.SUIT_POS[declType]) & Card.NO_JACK_SUIT_MASK;
+      otherTrump  |= (otherCards  >>> Card.SUIT_POS[declType]) & Card.NO_JACK_SUIT_MASK;
     }
 
     if (!playerToMoveGetsAllTrump(leaderTrump, otherTrump)) {
@@ -2901,7 +3608,7 @@ public class SimpleState implements Serializable
 
       int leaderSuit, otherSuit;
       
-      if (decl.type == GameDeclaration.GRAND_GAME || decl.type != s) {
+      if (declType == GameDeclaration.GRAND_GAME || declType != s) {
 
 	leaderSuit = 
 	  ((leaderCards & ~Card.JACK_MASK) >>> Card.SUIT_POS[s]) & Card.NO_JACK_SUIT_MASK;
@@ -3082,6 +3789,58 @@ public class SimpleState implements Serializable
       }
       voidMasks[GameDeclaration.NULL_GAME][i] = mask;
     }
+
+    // follow suit masks: cards of the led card's suit in the
+    // context of the game type (same as void masks for that suit)
+    followMasks = new int[7][32];
+
+    for (int t=0; t <= GameDeclaration.NULL_GAME; t++) {
+      for (int i=0; i < 32; i++) {
+        int suit = Card.index2Suit(i);
+
+        if (t != GameDeclaration.NULL_GAME && Card.index2Rank(i) == Card.RANK_JACK) {
+          // jack: trump
+          suit = (t == GameDeclaration.GRAND_GAME) ? 4 : t;
+        }
+        followMasks[t][i] = voidMasks[t][1 << suit];
+      }
+    }
+
+    // trick tables
+    trickWinners = new byte[GameDeclaration.NULL_GAME+1][32*32*32];
+    trickPoints = new byte[32*32*32];
+
+    for (int i0=0; i0 < 32; i0++) {
+      Card c0 = Card.fromIndex(i0);
+      for (int i1=0; i1 < 32; i1++) {
+        Card c1 = Card.fromIndex(i1);
+        for (int i2=0; i2 < 32; i2++) {
+          Card c2 = Card.fromIndex(i2);
+          int ti = trickIndex(c0, c1, c2);
+          trickPoints[ti] = (byte)(c0.value() + c1.value() + c2.value());
+          for (int t=0; t <= GameDeclaration.NULL_GAME; t++) {
+            trickWinners[t][ti] = (byte)computeTrickWinner(t, c0, c1, c2);
+          }
+        }
+      }
+    }
+
+    // Zobrist keys (fixed seed: keys are the same in every run)
+    Random zr = new Random(0x5ca7L);
+    zobristHand = new long[3][32];
+    zobristTrick = new long[2][32];
+    for (int i=0; i < 32; i++) {
+      for (int p=0; p < 3; p++) zobristHand[p][i] = zr.nextLong();
+      for (int p=0; p < 2; p++) zobristTrick[p][i] = zr.nextLong();
+    }
+    zobristToMove = new long[3];
+    for (int i=0; i < 3; i++) zobristToMove[i] = zr.nextLong();
+    zobristGame = new long[GameDeclaration.NULL_GAME+1];
+    for (int i=0; i < zobristGame.length; i++) zobristGame[i] = zr.nextLong();
+    zobristPoints = new long[4];
+    for (int i=0; i < 4; i++) zobristPoints[i] = zr.nextLong();
+    zobristDeclarer = new long[3];
+    for (int i=0; i < 3; i++) zobristDeclarer[i] = zr.nextLong();
   }
 
   /** @return != 0 iff the cards are corrupt in world view */
@@ -3121,15 +3880,15 @@ public class SimpleState implements Serializable
     
     voids &= ~Card.JACK_MASK;
     
-    if (decl.type == GameDeclaration.GRAND_GAME) {
+    if (declType == GameDeclaration.GRAND_GAME) {
       
       if (isVoid(player, 4)) voids |= Card.JACK_MASK;
       
     } else {
       
-      assert decl.type != GameDeclaration.NULL_GAME;
+      assert declType != GameDeclaration.NULL_GAME;
       
-      if (isVoid(player, decl.type)) voids |= Card.JACK_MASK;
+      if (isVoid(player, declType)) voids |= Card.JACK_MASK;
     }
     return ~voids;
   }
@@ -3138,7 +3897,7 @@ public class SimpleState implements Serializable
   /** Assumes that at least one player knows his cards exactly. */
   public int numConsistent(int knownPos)
   {
-    boolean knownSkat = !decl.hand;
+    boolean knownSkat = !declHand();
     int[] hs_tmp = new int[3];
     getHandSizes(hs_tmp);
 
@@ -3255,7 +4014,7 @@ public class SimpleState implements Serializable
     
     c.inPlaceCopy(this);
     
-    boolean knownSkat = !decl.hand;
+    boolean knownSkat = !declHand();
     getHandSizes(hs_tmp);
     
     // players with unknown cards
@@ -3334,6 +4093,7 @@ public class SimpleState implements Serializable
     consistent(id, hs_tmp[u0] - Misc.popCount(h0), h01, res_tmp);
     c.setHand(u0, res_tmp[0]);
     c.setHand(u1, res_tmp[1]);
+    c.updateZobristKey();
 
     if (false && testMatch()) {
       Misc.msg(id + " h0: " + Hand.toStringColor(c.getHand(u0), 3, false) +
@@ -3366,6 +4126,59 @@ public class SimpleState implements Serializable
     return;
   }
 
+  /** checks trick tables against the reference implementation and
+      compares speed (tricks/sec) */
+  public static void testTrickTables(Random rgen)
+  {
+    final int N = 1 << 16;
+    final int ROUNDS = 200;
+    Card[][] tricks = new Card[N][3];
+    int[] types = new int[N];
+
+    for (int i=0; i < N; i++) {
+      ArrayList<Card> deck = fullDeck();
+      shuffle(deck, rgen);
+      tricks[i][0] = deck.get(0);
+      tricks[i][1] = deck.get(1);
+      tricks[i][2] = deck.get(2);
+      types[i] = rndInt(rgen, GameDeclaration.NULL_GAME+1);
+
+      Card[] t = tricks[i];
+      int ti = trickIndex(t[0], t[1], t[2]);
+      if (trickWinners[types[i]][ti] != computeTrickWinner(types[i], t[0], t[1], t[2]))
+        Misc.err("trick winner mismatch");
+      if (trickPoints[ti] != t[0].value() + t[1].value() + t[2].value())
+        Misc.err("trick points mismatch");
+    }
+
+    for (int k=0; k < 3; k++) { // 1st round: warm-up
+
+      long sum1 = 0, sum2 = 0;
+      long t1 = System.nanoTime();
+      for (int r=0; r < ROUNDS; r++) {
+        for (int i=0; i < N; i++) {
+          Card[] t = tricks[i];
+          sum1 += computeTrickWinner(types[i], t[0], t[1], t[2]) +
+            t[0].value() + t[1].value() + t[2].value();
+        }
+      }
+      long t2 = System.nanoTime();
+      for (int r=0; r < ROUNDS; r++) {
+        for (int i=0; i < N; i++) {
+          Card[] t = tricks[i];
+          int ti = trickIndex(t[0], t[1], t[2]);
+          sum2 += trickWinners[types[i]][ti] + trickPoints[ti];
+        }
+      }
+      long t3 = System.nanoTime();
+      if (sum1 != sum2) Misc.err("trick table sums differ");
+
+      double n = (double)N * ROUNDS;
+      Misc.msg(String.format(Misc.locEn, "tricks/sec: reference %.1fM  tables %.1fM",
+                             n / (t2-t1) * 1e3, n / (t3-t2) * 1e3));
+    }
+  }
+
   static void testRnd(Random rgen)
   {
     for (int i=0; i < 1000000; i++) {
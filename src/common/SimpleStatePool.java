@@ -0,0 +1,70 @@
+// thread-local pool of SimpleState objects
+//
+// search code copies states all the time; getting them from here
+// avoids allocation and keeps each thread's states in its own memory
+//
+// usage:
+//   SimpleState t = SimpleStatePool.copy(s);
+//   ...
+//   SimpleStatePool.release(t);
+//
+// states must be released by the thread that got them
+
+package common;
+
+public class SimpleStatePool
+{
+  private SimpleState[] free = new SimpleState[64];
+  private int freeNum = 0;
+
+  private static final ThreadLocal<SimpleStatePool> pools =
+    new ThreadLocal<SimpleStatePool>() {
+      @Override protected SimpleStatePool initialValue() {
+        return new SimpleStatePool();
+      }
+    };
+
+  private SimpleStatePool() { }
+
+  /** @return state from this thread's pool (contents undefined, use
+      inPlaceCopy or copy() below) */
+  public static SimpleState get(int view)
+  {
+    SimpleStatePool p = pools.get();
+    if (p.freeNum == 0)
+      return new SimpleState(view);
+
+    SimpleState s = p.free[--p.freeNum];
+    p.free[p.freeNum] = null;
+    s.setView(view);
+    return s;
+  }
+
+  /** @return pooled copy of s */
+  public static SimpleState copy(SimpleState s)
+  {
+    SimpleState x = get(s.getView());
+    x.inPlaceCopy(s);
+    return x;
+  }
+
+  /** return s to this thread's pool, s must not be used afterwards */
+  public static void release(SimpleState s)
+  {
+    if (s == null) return;
+
+    SimpleStatePool p = pools.get();
+    if (p.freeNum == p.free.length) {
+      SimpleState[] a = new SimpleState[2 * p.free.length];
+      System.arraycopy(p.free, 0, a, 0, p.freeNum);
+      p.free = a;
+    }
+    p.free[p.freeNum++] = s;
+  }
+
+  /** @return number of states in this thread's pool */
+  public static int size()
+  {
+    return pools.get().freeNum;
+  }
+}
@@ -1,18 +1,33 @@
-// stores information to undo card moves
+// stores information to undo moves (see SimpleState.saveState/restoreState)
+//
+// card moves only save what a card move changes, all other moves save
+// the members they can change (phase, bidding, declaration, hands, skat)
 
 package common;
 
 public class SimpleStateUndo {
 
+  public boolean cardMove; // true: card move, false: any other move
+  public Card card;        // card move: card played, null otherwise
+  public long zobristKey;
+  
   public int toMoveHand;
   public int toMovePlayedCards;
   public byte prevToMove;
-  public byte toMoveVoids;
   public byte trickCardNum;
   public byte trickWinner;
-  public byte tricksWon0, tricksWon1, tricksWon2;
-  public byte trickPoints0, trickPoints1, trickPoints2;
-  public Card card;
-  public Card winningCard;
-  public Card trick0, trick1, trick2;
+  public int info0, info1, info2; // packed player info (tricks, points, voids ...)
+  public byte winningCard; // card indexes, see SimpleState
+  public byte trick0, trick1, trick2;
+
+  // other moves
+  public byte phase, prevPhase;
+  public byte declarer, asked, bidder;
+  public short maxBid;
+  public byte left, timeout;
+  public byte declType, declFlags;
+  public int declarerHandBeforeCardplay;
+  public int hand0, hand1, hand2;
+  public byte skat0, skat1;
+  public boolean discardHalfPhase;
 }
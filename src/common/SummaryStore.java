@@ -0,0 +1,478 @@
+// columnar store of game summaries for analysis
+//
+// GameSummary describes one game as an object. For statistics over
+// millions of games SummaryStore keeps the same data as one primitive
+// array per field (column), built once from SGF archives. Queries are
+// loops over a few columns:
+//
+//   where()      : restrict a row mask to rows with lo <= column <= hi
+//   groupCount() : count mask rows per key (one or two key columns)
+//   groupSum()   : sum a column per key
+//
+// the loops are simple array scans the JIT can vectorize. Example:
+// declarer win rate by game type and bid
+//
+//   SummaryStore st = SummaryStore.load("games.sum");
+//   boolean[] games = st.where(st.all(), st.declarer, 0, 2);
+//   boolean[] wins  = st.where(games, st.declScore, 1, Short.MAX_VALUE);
+//   int[] n = st.groupCount(games, st.gameType, TYPE_NUM, st.bid, BID_NUM);
+//   int[] w = st.groupCount(wins,  st.gameType, TYPE_NUM, st.bid, BID_NUM);
+//
+// only finished world view games are stored.
+//
+// file: int MAGIC, int VERSION, int rows, then the columns in the order
+// of save() (int: 4, short: 2, byte: 1 byte per row)
+//
+// usage:
+//   java -cp skatgui.jar common.SummaryStore build <store> <file|dir>...
+//   java -cp skatgui.jar common.SummaryStore winrate <store>
+
+package common;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.util.*;
+
+public class SummaryStore
+{
+  public static final int MAGIC   = 0x534b4353; // "SKCS"
+  public static final int VERSION = 1;
+
+  public static final int TYPE_NUM = 6;   // game types 0..5
+  public static final int BID_NUM  = 265; // bids 0..264
+
+  // flags
+  public static final int F_HAND      = 1;
+  public static final int F_OUVERT    = 2;
+  public static final int F_SCHNEIDER = 4; // announced
+  public static final int F_SCHWARZ   = 8; // announced
+
+  // columns, one entry per game
+  public int[]   hand0, hand1, hand2;  // initial hands
+  public byte[]  skat0, skat1;         // original skat card indexes
+  public byte[]  disc0, disc1;         // final skat card indexes
+  public short[] maxBid0, maxBid1, maxBid2; // 0: passed without bidding
+  public short[] bid;                  // declarer's bid, 0: no declarer
+  public byte[]  declarer;             // -1: passed
+  public byte[]  gameType;             // GameDeclaration type, -1: passed
+  public byte[]  flags;                // F_...
+  public byte[]  first0, first1, first2; // first trick card indexes, -1: none
+  public byte[]  declCardPoints;
+  public byte[]  declTricks;
+  public short[] declScore;            // > 0: declarer won
+
+  private int rows;
+
+  /** @return number of games */
+  public int size() { return rows; }
+
+  // building ----------------------------------------------------------
+
+  public SummaryStore()
+  {
+    allocate(1024);
+  }
+
+  private void allocate(int n)
+  {
+    hand0 = Arrays.copyOf(hand0 == null ? new int[0] : hand0, n);
+    hand1 = Arrays.copyOf(hand1 == null ? new int[0] : hand1, n);
+    hand2 = Arrays.copyOf(hand2 == null ? new int[0] : hand2, n);
+    skat0 = Arrays.copyOf(skat0 == null ? new byte[0] : skat0, n);
+    skat1 = Arrays.copyOf(skat1 == null ? new byte[0] : skat1, n);
+    disc0 = Arrays.copyOf(disc0 == null ? new byte[0] : disc0, n);
+    disc1 = Arrays.copyOf(disc1 == null ? new byte[0] : disc1, n);
+    maxBid0 = Arrays.copyOf(maxBid0 == null ? new short[0] : maxBid0, n);
+    maxBid1 = Arrays.copyOf(maxBid1 == null ? new short[0] : maxBid1, n);
+    maxBid2 = Arrays.copyOf(maxBid2 == null ? new short[0] : maxBid2, n);
+    bid = Arrays.copyOf(bid == null ? new short[0] : bid, n);
+    declarer = Arrays.copyOf(declarer == null ? new byte[0] : declarer, n);
+    gameType = Arrays.copyOf(gameType == null ? new byte[0] : gameType, n);
+    flags = Arrays.copyOf(flags == null ? new byte[0] : flags, n);
+    first0 = Arrays.copyOf(first0 == null ? new byte[0] : first0, n);
+    first1 = Arrays.copyOf(first1 == null ? new byte[0] : first1, n);
+    first2 = Arrays.copyOf(first2 == null ? new byte[0] : first2, n);
+    declCardPoints = Arrays.copyOf(declCardPoints == null ? new byte[0] : declCardPoints, n);
+    declTricks = Arrays.copyOf(declTricks == null ? new byte[0] : declTricks, n);
+    declScore = Arrays.copyOf(declScore == null ? new short[0] : declScore, n);
+  }
+
+  /** append game: initial hands h[0..2], original skat cards h[3],
+      h[4], first trick cards (-1: none) and final state s */
+  public void add(int[] h, int[] first, SimpleState s, GameResult gr)
+  {
+    if (rows == hand0.length) allocate(rows * 2);
+
+    int i = rows++;
+    hand0[i] = h[0];
+    hand1[i] = h[1];
+    hand2[i] = h[2];
+    skat0[i] = (byte)h[3];
+    skat1[i] = (byte)h[4];
+    disc0[i] = (byte)s.getSkat0().getIndex();
+    disc1[i] = (byte)s.getSkat1().getIndex();
+
+    int[] mb = new int[3];
+    for (int p=0; p < 3; p++) {
+      mb[p] = s.getMaxBid(p);
+      if (mb[p] == 1) mb[p] = 0;
+    }
+    maxBid0[i] = (short)mb[0];
+    maxBid1[i] = (short)mb[1];
+    maxBid2[i] = (short)mb[2];
+
+    int decl = s.getDeclarer();
+    GameDeclaration gd = s.getGameDeclaration();
+    declarer[i] = (byte)decl;
+    gameType[i] = (byte)(decl >= 0 ? gd.type : -1);
+    bid[i] = (short)(decl >= 0 ? mb[decl] : 0);
+
+    int f = 0;
+    if (decl >= 0) {
+      if (gd.hand)               f |= F_HAND;
+      if (gd.ouvert)             f |= F_OUVERT;
+      if (gd.schneiderAnnounced) f |= F_SCHNEIDER;
+      if (gd.schwarzAnnounced)   f |= F_SCHWARZ;
+    }
+    flags[i] = (byte)f;
+
+    first0[i] = (byte)first[0];
+    first1[i] = (byte)first[1];
+    first2[i] = (byte)first[2];
+
+    s.gameResult(gr);
+    declCardPoints[i] = (byte)(decl >= 0 ? gr.declCardPoints : 0);
+    declTricks[i] = (byte)(decl >= 0 ? gr.declTricks : 0);
+    declScore[i] = (short)(decl >= 0 ? gr.declValue : 0);
+  }
+
+  // collects initial hands and first trick while parsing
+  static class Collector extends SgfParser.Handler
+  {
+    final SummaryStore store;
+    final int[] h = new int[5];
+    final int[] first = new int[3];
+    final GameResult gr = new GameResult();
+    boolean world;
+    int cards;
+    int bad;
+
+    Collector(SummaryStore store) { this.store = store; }
+
+    public void gameStart()
+    {
+      h[0] = h[1] = h[2] = 0;
+      h[3] = h[4] = -1;
+      first[0] = first[1] = first[2] = -1;
+      world = true;
+      cards = 0;
+    }
+
+    public void property(String label, String value)
+    {
+      if (label.equals("OW")) world = false;
+    }
+
+    public void deal(int player, String move)
+    {
+      String[] c = move.split("\\.");
+      if (c.length != 32) return;
+      for (int i=0; i < 32; i++) {
+        Card card = Card.fromString(c[i]);
+        if (card == null || !card.isKnown()) return;
+        if (i < 30) h[i / 10] |= 1 << card.getIndex();
+        else        h[i - 27] = card.getIndex();
+      }
+    }
+
+    public void card(int player, int cardIndex)
+    {
+      if (cards < 3) first[cards] = cardIndex;
+      cards++;
+    }
+
+    public boolean gameEnd(String error, SimpleState s)
+    {
+      if (error != null || !world || !s.isFinished() || h[4] < 0) {
+        bad++;
+        return true;
+      }
+      store.add(h, first, s, gr);
+      return true;
+    }
+  }
+
+  /** add all finished games in files and directories in paths
+      @return number of skipped games (illegal, unfinished, player view) */
+  public int addArchives(List<String> paths) throws IOException
+  {
+    ArrayList<String> files = new ArrayList<String>();
+    for (String p : paths) ArchiveIndex.collectFiles(new File(p), files);
+    Collections.sort(files);
+
+    Collector c = new Collector(this);
+    SgfParser parser = new SgfParser(c, SgfParser.VALIDATE);
+
+    for (String file : files) {
+      Reader r = new InputStreamReader(new FileInputStream(file), "UTF-8");
+      try {
+        parser.parse(r);
+      }
+      finally {
+        r.close();
+      }
+    }
+    return c.bad;
+  }
+
+  // file --------------------------------------------------------------
+
+  /** write store to file */
+  public void save(String file) throws IOException
+  {
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+    try {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeInt(rows);
+      for (int[] c : new int[][] { hand0, hand1, hand2 }) {
+        for (int i=0; i < rows; i++) out.writeInt(c[i]);
+      }
+      for (short[] c : new short[][] { maxBid0, maxBid1, maxBid2, bid, declScore }) {
+        for (int i=0; i < rows; i++) out.writeShort(c[i]);
+      }
+      for (byte[] c : new byte[][] { skat0, skat1, disc0, disc1, declarer, gameType, flags,
+                                     first0, first1, first2, declCardPoints, declTricks }) {
+        out.write(c, 0, rows);
+      }
+    }
+    finally {
+      out.close();
+    }
+  }
+
+  /** @return store read from file (memory-mapped, columns are copied
+      to arrays in bulk) */
+  public static SummaryStore load(String file) throws IOException
+  {
+    RandomAccessFile raf = new RandomAccessFile(file, "r");
+    try {
+      FileChannel ch = raf.getChannel();
+      MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+
+      if (ch.size() < 12 || buf.getInt(0) != MAGIC || buf.getInt(4) != VERSION)
+        throw new IOException("not a summary store: " + file);
+
+      SummaryStore st = new SummaryStore();
+      int n = buf.getInt(8);
+      st.rows = n;
+      st.allocate(n);
+
+      if (ch.size() != 12 + (long)n * (3*4 + 5*2 + 12))
+        throw new IOException("summary store truncated: " + file);
+
+      buf.position(12);
+      for (int[] c : new int[][] { st.hand0, st.hand1, st.hand2 }) {
+        buf.asIntBuffer().get(c, 0, n);
+        buf.position(buf.position() + 4*n);
+      }
+      for (short[] c : new short[][] { st.maxBid0, st.maxBid1, st.maxBid2, st.bid, st.declScore }) {
+        buf.asShortBuffer().get(c, 0, n);
+        buf.position(buf.position() + 2*n);
+      }
+      for (byte[] c : new byte[][] { st.skat0, st.skat1, st.disc0, st.disc1, st.declarer,
+                                     st.gameType, st.flags, st.first0, st.first1, st.first2,
+                                     st.declCardPoints, st.declTricks }) {
+        buf.get(c, 0, n);
+      }
+      return st;
+    }
+    finally {
+      raf.close();
+    }
+  }
+
+  /** fill gs with game i */
+  public void getSummary(int i, GameSummary gs)
+  {
+    gs.hand0 = hand0[i];
+    gs.hand1 = hand1[i];
+    gs.hand2 = hand2[i];
+    gs.skat0 = card(skat0[i]);
+    gs.skat1 = card(skat1[i]);
+    gs.maxBid0 = maxBid0[i];
+    gs.maxBid1 = maxBid1[i];
+    gs.maxBid2 = maxBid2[i];
+    gs.declarer = declarer[i];
+    gs.gameType = gameType[i];
+    gs.hand = (flags[i] & F_HAND) != 0;
+    gs.ouvert = (flags[i] & F_OUVERT) != 0;
+    gs.disc0 = card(disc0[i]);
+    gs.disc1 = card(disc1[i]);
+    gs.first0 = card(first0[i]);
+    gs.first1 = card(first1[i]);
+    gs.first2 = card(first2[i]);
+    gs.declCardPoints = declCardPoints[i];
+    gs.declTricks = declTricks[i];
+    gs.declScore = declScore[i];
+  }
+
+  private static Card card(int index)
+  {
+    if (index < 0) return Card.unknownCard;
+    return Card.newCard(index >> 3, index & 7);
+  }
+
+  // queries -----------------------------------------------------------
+
+  /** @return mask selecting all games */
+  public boolean[] all()
+  {
+    boolean[] m = new boolean[rows];
+    Arrays.fill(m, true);
+    return m;
+  }
+
+  /** @return mask of rows in m with lo <= c[row] <= hi */
+  public boolean[] where(boolean[] m, byte[] c, int lo, int hi)
+  {
+    boolean[] r = new boolean[rows];
+    for (int i=0; i < rows; i++) {
+      r[i] = m[i] & c[i] >= lo & c[i] <= hi;
+    }
+    return r;
+  }
+
+  /** @return mask of rows in m with lo <= c[row] <= hi */
+  public boolean[] where(boolean[] m, short[] c, int lo, int hi)
+  {
+    boolean[] r = new boolean[rows];
+    for (int i=0; i < rows; i++) {
+      r[i] = m[i] & c[i] >= lo & c[i] <= hi;
+    }
+    return r;
+  }
+
+  /** @return mask of rows in m with (c[row] & bits) == value */
+  public boolean[] whereBits(boolean[] m, byte[] c, int bits, int value)
+  {
+    boolean[] r = new boolean[rows];
+    for (int i=0; i < rows; i++) {
+      r[i] = m[i] & (c[i] & bits) == value;
+    }
+    return r;
+  }
+
+  /** @return mask of rows in m with (c[row] & bits) != 0 */
+  public boolean[] whereAny(boolean[] m, int[] c, int bits)
+  {
+    boolean[] r = new boolean[rows];
+    for (int i=0; i < rows; i++) {
+      r[i] = m[i] & (c[i] & bits) != 0;
+    }
+    return r;
+  }
+
+  /** @return number of rows in m */
+  public static int count(boolean[] m)
+  {
+    int n = 0;
+    for (int i=0; i < m.length; i++) {
+      n += m[i] ? 1 : 0;
+    }
+    return n;
+  }
+
+  /** @return number of rows in m per key (0 <= key < keyNum, rows with
+      other keys are ignored) */
+  public int[] groupCount(boolean[] m, byte[] key, int keyNum)
+  {
+    int[] r = new int[keyNum];
+    for (int i=0; i < rows; i++) {
+      int k = key[i];
+      if (m[i] && k >= 0 && k < keyNum) r[k]++;
+    }
+    return r;
+  }
+
+  /** @return number of rows in m per key pair, index key1 * keyNum2 + key2 */
+  public int[] groupCount(boolean[] m, byte[] key1, int keyNum1, short[] key2, int keyNum2)
+  {
+    int[] r = new int[keyNum1 * keyNum2];
+    for (int i=0; i < rows; i++) {
+      int k1 = key1[i], k2 = key2[i];
+      if (m[i] && k1 >= 0 && k1 < keyNum1 && k2 >= 0 && k2 < keyNum2) r[k1 * keyNum2 + k2]++;
+    }
+    return r;
+  }
+
+  /** @return sum of value over rows in m per key */
+  public long[] groupSum(boolean[] m, byte[] key, int keyNum, short[] value)
+  {
+    long[] r = new long[keyNum];
+    for (int i=0; i < rows; i++) {
+      int k = key[i];
+      if (m[i] && k >= 0 && k < keyNum) r[k] += value[i];
+    }
+    return r;
+  }
+
+  /** @return sum of value over rows in m per key */
+  public long[] groupSum(boolean[] m, byte[] key, int keyNum, byte[] value)
+  {
+    long[] r = new long[keyNum];
+    for (int i=0; i < rows; i++) {
+      int k = key[i];
+      if (m[i] && k >= 0 && k < keyNum) r[k] += value[i];
+    }
+    return r;
+  }
+
+  /** print declarer win rates by game type and bid */
+  public void printWinRates(PrintStream out)
+  {
+    boolean[] games = where(all(), declarer, 0, 2);
+    boolean[] wins  = where(games, declScore, 1, Short.MAX_VALUE);
+    int[] n = groupCount(games, gameType, TYPE_NUM, bid, BID_NUM);
+    int[] w = groupCount(wins,  gameType, TYPE_NUM, bid, BID_NUM);
+
+    for (int t=0; t < TYPE_NUM; t++) {
+      for (int b=0; b < BID_NUM; b++) {
+        int k = t * BID_NUM + b;
+        if (n[k] == 0) continue;
+        out.println(String.format("%s %3d %8d %5.1f%%",
+                                  GameDeclaration.typeToChar(t), b, n[k], 100.0 * w[k] / n[k]));
+      }
+    }
+  }
+
+  public static void main(String[] args)
+  {
+    try {
+      if (args.length >= 3 && args[0].equals("build")) {
+        long t0 = System.currentTimeMillis();
+        SummaryStore st = new SummaryStore();
+        int bad = st.addArchives(Arrays.asList(args).subList(2, args.length));
+        st.save(args[1]);
+        Misc.msg(st.size() + " games stored, " + bad + " skipped, " +
+                 (System.currentTimeMillis() - t0) + " msecs");
+        return;
+      }
+
+      if (args.length == 2 && args[0].equals("winrate")) {
+        SummaryStore st = load(args[1]);
+        long t0 = System.nanoTime();
+        st.printWinRates(System.out);
+        Misc.msg(st.size() + " games in " + (System.nanoTime() - t0) / 1000000 + " msecs");
+        return;
+      }
+    }
+    catch (IOException e) {
+      Misc.err("" + e);
+    }
+
+    Misc.msg("usage: java common.SummaryStore build <store> <file|dir>...");
+    Misc.msg("       java common.SummaryStore winrate <store>");
+  }
+}
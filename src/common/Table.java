@@ -41,6 +41,8 @@ public class Table
   private TableCallbacks cb;
   private Random rng;
   private ArrayList<SimpleGame> playedGames; // for serialization
+  private ArrayList<String> savedGames;      // SGF of loaded games, parsed on demand
+  private TableJournal journal;              // null: no journal (yet)
   private ScoreSheet scoreSheet;             // add games to both containers!
     
   public final static String NO_NAME = ".";
@@ -266,7 +268,24 @@ public class Table
 
   /** @return SimpleGame object for a game played in the current series */
   public SimpleGame getPlayedGame(int index) {
-    return playedGames.get(index);
+    SimpleGame sg = playedGames.get(index);
+    if (sg == null && savedGames != null && index < savedGames.size()) {
+
+      // loaded game: replay it now
+      sg = new SimpleGame(SimpleState.WORLD_VIEW);
+      String r = sg.fromSgf(new StringBuffer(savedGames.get(index)), false);
+      if (!"".equals(r))
+        Misc.msg("!!! load error game " + index + " : " + r);
+      playedGames.set(index, sg);
+    }
+    return sg;
+  }
+
+  // @return played game index in single-line world view SGF
+  private String playedGameSgf(int index) {
+    if (savedGames != null && index < savedGames.size())
+      return "(;" + savedGames.get(index) + ")"; // ends with ";"
+    return playedGames.get(index).toSgf(true, SimpleState.WORLD_VIEW);
   }
 
   /** @return name of player in result table */
@@ -611,6 +630,11 @@ public class Table
   /** prepare to be deleted */
   public void cleanUp()
   {
+    if (journal != null) {
+      journal.close();
+      journal = null;
+    }
+
     // make everybody leave
 
     for (Observer o : observers) {
@@ -688,8 +712,8 @@ public class Table
 
     touch();
     
-    for (ExecData e : svcCmds) {
-      if (!e.cmd1.equals(cmd) && !e.cmd2.equals(cmd)) continue;
+    ExecData e = cmd == null ? null : svcCmdMap.get(cmd);
+    if (e != null) {
       e.exec.exec(sender, player, reader);
       return true;
     }
@@ -772,6 +796,70 @@ public class Table
     return -1;
   }
 
+  /** add game result to series stats (declarer/defender points and
+      penalties, as shown in the result table)
+      @param resultNames players in result table (null: empty seat)
+      @param resultIndex result table index of game players 0..2 (-1: unknown)
+      @return null if OK, error message if a needed index is unknown
+      (the other updates are done) */
+  public static String addSeriesResult(GameResult gr, int playerNum,
+                                       String[] resultNames, int[] resultIndex,
+                                       int[] played, int[] wins,
+                                       int[] lastPts, int[] totalPts)
+  {
+    String r = null;
+
+    if (gr.declarer >= 0) {
+
+      int defWonPts = playerNum == 3 ? DEF3_WIN_PTS : DEF4_WIN_PTS;
+      int declIndex = resultIndex[gr.declarer];
+
+      if (declIndex < 0) {
+        r = "series stats: declarer not in result table";
+      } else {
+        played[declIndex]++;
+        int declValue = gr.declValue;
+        if (declValue > 0) {
+
+          // declarer won
+          wins[declIndex]++;
+          for (int i=0; i < MAX_PLAYER_NUM; i++) {
+            lastPts[i] = 0;
+          }
+          lastPts[declIndex] = declValue + DECL_WIN_PTS;        
+          totalPts[declIndex] += lastPts[declIndex];        
+
+        } else {
+
+          // declarer lost
+          lastPts[declIndex] = declValue - DECL_WIN_PTS;
+          totalPts[declIndex] += lastPts[declIndex];
+          for (int i=0; i < MAX_PLAYER_NUM; i++) {
+            if (i != declIndex && resultNames[i] != null) {
+              totalPts[i] += defWonPts;
+              lastPts[i] = defWonPts;
+            }
+          }
+        }
+      }
+    }
+
+    // penalties?
+
+    for (int i=0; i < 3; i++) {
+      if (gr.getPenalty(i) > 0) {
+        int pi = resultIndex[i];
+        if (pi < 0) {
+          r = "penalties: pi < 0";
+          continue;
+        }
+        lastPts[pi] = -PENALTY_PTS;
+        totalPts[pi] -= PENALTY_PTS;
+      }
+    }
+    return r;
+  }
+
   /** @return compute player index in result table */
   public int playerInResultTableIndex(String player)
   {
@@ -1527,48 +1615,15 @@ public class Table
       Misc.err("game result unknown, although game finished " +
                sg.toSgf(false, SimpleState.WORLD_VIEW));
 
-    if (gr.declarer >= 0) {
-
-      // adjust series stats.
-      
-      int defWonPts = playerNum == 3 ? DEF3_WIN_PTS : DEF4_WIN_PTS;
-      int declIndex = playerInResultTableIndex(playersInGame[gr.declarer]);
-      played[declIndex]++;
-      int declValue = gr.declValue;
-      if (declValue > 0) {
-
-        // declarer won
-        wins[declIndex]++;
-        for (int i=0; i < MAX_PLAYER_NUM; i++) {
-          lastPts[i] = 0;
-        }
-        lastPts[declIndex] = declValue + DECL_WIN_PTS;        
-        totalPts[declIndex] += lastPts[declIndex];        
-
-      } else {
-
-        // declarer lost
-        lastPts[declIndex] = declValue - DECL_WIN_PTS;
-        totalPts[declIndex] += lastPts[declIndex];
-        for (int i=0; i < MAX_PLAYER_NUM; i++) {
-          if (i != declIndex && playersInResultTable[i] != null) {
-            totalPts[i] += defWonPts;
-            lastPts[i] = defWonPts;
-          }
-        }
-      }
-    }
-
-    // penalties?
+    // adjust series stats
 
+    int[] resultIndex = new int[3];
     for (int i=0; i < 3; i++) {
-      if (gr.getPenalty(i) > 0) {
-        int pi = playerInResultTableIndex(playersInGame[i]);
-        if (pi < 0) Misc.err("penalties: pi < 0");
-        lastPts[pi] = -PENALTY_PTS;
-        totalPts[pi] -= PENALTY_PTS;
-      }
+      resultIndex[i] = playerInResultTableIndex(playersInGame[i]);
     }
+    String r = addSeriesResult(gr, playerNum, playersInResultTable, resultIndex,
+                               played, wins, lastPts, totalPts);
+    if (r != null) Misc.err(r);
 
     // update player stats
 
@@ -1953,6 +2008,15 @@ public class Table
     new ExecData("invite", "i", new SvcInvite()), // invite player to table
   };
 
+  // svcCmds by command and abbreviation
+  private HashMap<String, ExecData> svcCmdMap = new HashMap<String, ExecData>();
+  {
+    for (ExecData e : svcCmds) {
+      svcCmdMap.put(e.cmd1, e);
+      svcCmdMap.put(e.cmd2, e);
+    }
+  }
+
   //--------------------------------------------------------------------------
 
   // client functions
@@ -1989,6 +2053,7 @@ public class Table
       
       // series just started: clear history data and set names
       playedGames.clear();
+      savedGames = null;
       scoreSheet = new ScoreSheet(playerNum, playersInResultTable);
     }
     
@@ -2059,12 +2124,12 @@ public class Table
   }
     
   // <player> <move>
-  public void handlePlayMsg(SReader sr)
+  public void handlePlayMsg(Tokenizer t)
   {
     touch();
 
-    String player = sr.nextWord();
-    String move   = sr.nextWord();
+    String player = t.nextWord();
+    String move   = t.nextWord();
 
     Misc.msg("MOVE-RCVD: " + player + " " + move);
     
@@ -2074,10 +2139,9 @@ public class Table
     // remaining times
     
     for (int i=0; i < GAME_PLAYER_NUM; i++) {
-      String t = sr.nextWord();
-      if (t == null)
+      if (!t.hasMore())
 	Misc.err("handlePlayMsg: time is missing");
-      remTimes[i] = Double.parseDouble(t) * 1000.0;
+      remTimes[i] = t.nextDouble() * 1000.0;
     }
     
     int pi = SimpleState.WORLD_VIEW;
@@ -2098,25 +2162,21 @@ public class Table
   }
 
   // <tableinfo>
-  public void handleStateMsg(SReader sr)
+  public void handleStateMsg(Tokenizer t)
   {
     touch();
 
     // player num
     
-    String res = sr.nextWord();
-    if (res == null) Misc.err("playernum value missing");
-    setPlayerNum(Integer.parseInt(res));
+    if (!t.next()) Misc.err("playernum value missing");
+    setPlayerNum(t.wordInt());
     
     // players at table
     for (int i=0; i < MAX_PLAYER_NUM; i++) {
 
       // player name
-      String r = sr.nextWord();    
-      if (r == null) Misc.err("ready value missing");
-      if (r.equals(NO_NAME))
-        r = null;
-      playersAtTable[i] = r;
+      if (!t.next()) Misc.err("ready value missing");
+      playersAtTable[i] = t.wordEquals(NO_NAME) ? null : t.wordString();
     }
 
     // result table
@@ -2126,73 +2186,61 @@ public class Table
       disconnectedAtTable[i] = false;
       
       // player name
-      String r = sr.nextWord();    
-      if (r == null) Misc.err("player name value missing");
-      playersInResultTable[i] = r;
+      if (!t.next()) Misc.err("player name value missing");
+      playersInResultTable[i] = t.wordString();
 
       // ipset id
-      r = sr.nextWord();    
-      if (r == null) Misc.err("ipset id missing");
-      ipSetIdInResultTable[i] = r.charAt(0);
+      if (!t.next()) Misc.err("ipset id missing");
+      ipSetIdInResultTable[i] = t.wordChar(0);
 
       // played
-      r = sr.nextWord();
-      if (r == null) Misc.err("played value missing");
-      played[i] = Integer.parseInt(r);
+      if (!t.next()) Misc.err("played value missing");
+      played[i] = t.wordInt();
       
       // wins
-      r = sr.nextWord();
-      if (r == null) Misc.err("wins value missing");
-      wins[i] = Integer.parseInt(r);
+      if (!t.next()) Misc.err("wins value missing");
+      wins[i] = t.wordInt();
       
       // lastpoints
-      r = sr.nextWord();
-      if (r == null) Misc.err("lastpts value missing");
-      lastPts[i] = Integer.parseInt(r);
+      if (!t.next()) Misc.err("lastpts value missing");
+      lastPts[i] = t.wordInt();
 
       // totalpoints
-      r = sr.nextWord();
-      if (r == null) Misc.err("totalpts value missing");
-      totalPts[i] = Integer.parseInt(r);
+      if (!t.next()) Misc.err("totalpts value missing");
+      totalPts[i] = t.wordInt();
 
       // 34
-      r = sr.nextWord();
-      if (r == null) Misc.err("34 value missing");
-      threeFour[i] = r.equals("1");
+      if (!t.next()) Misc.err("34 value missing");
+      threeFour[i] = t.wordEquals("1");
 
       // practice
-      r = sr.nextWord();
-      if (r == null) Misc.err("practice value missing");
-      practice[i] = r.equals("1");
+      if (!t.next()) Misc.err("practice value missing");
+      practice[i] = t.wordEquals("1");
 
       // gameTalk
-      r = sr.nextWord();
-      if (r == null) Misc.err("gameTalk value missing");
-      gameTalk[i] = r.equals("1");
+      if (!t.next()) Misc.err("gameTalk value missing");
+      gameTalk[i] = t.wordEquals("1");
 
       // ready
-      r = sr.nextWord();
-      if (r == null) Misc.err("ready value missing");
-      ready[i] = r.equals("1");
+      if (!t.next()) Misc.err("ready value missing");
+      ready[i] = t.wordEquals("1");
     }
 
     // progress
-    String r = sr.nextWord();
-    if (r == null)
+    if (!t.next())
       Misc.err("inprogress value missing");
 
-    if (!r.equals("false") && !r.equals("true")) {
-      Misc.err("corrupt inprogress value " + r);
+    if (!t.wordEquals("false") && !t.wordEquals("true")) {
+      Misc.err("corrupt inprogress value " + t.wordString());
     }
     
-    gameInProgress = r.equals("true");
+    gameInProgress = t.wordEquals("true");
 
     // game num
 
-    r = sr.nextWord();
-    if (r != null) {
+    if (t.next()) {
       // optional for now (handle old server messages as well
-      try { gameNum = Integer.parseInt(r); }
+      try { gameNum = t.wordInt(); }
       catch (Throwable e) { Misc.err("corrupt game number"); }
     }
   }
@@ -2224,72 +2272,74 @@ public class Table
 
 
   // save tournament table after game ends
+  //
+  // if the callbacks provide a journal file, only the new header and
+  // games are appended to it (see TableJournal), the complete table is
+  // only written when it is archived. Appends reach the disk up to
+  // TableJournal.SYNC_INTERVAL msecs later (group commit)
   public void save() {
     if (!tourny) return; // don't bother with non-tournament tables
 
-    Calendar now = Calendar.getInstance();
-    StringBuffer sb = new StringBuffer();
-    sb.append(String.format(Locale.US, "#info %04d-%02d-%02d %02d:%02d:%02d ",
-                            now.get(Calendar.YEAR),
-                            (now.get(Calendar.MONTH)+1),
-                            now.get(Calendar.DAY_OF_MONTH),
-                            now.get(Calendar.HOUR_OF_DAY),
-                            now.get(Calendar.MINUTE),
-                            now.get(Calendar.SECOND)));
-    
-    sb.append(tableId + " ");
-    sb.append(creator + " ");
-    sb.append(seriesId + " ");
-    sb.append(type + " ");
-    sb.append(playerNum + " ");
-    sb.append(passwd + " ");
-    sb.append(blockNum + " ");
-
-    for (int i=0; i < playerNum; i++) {
-      sb.append(playersInResultTable[i] + " " +
-                played[i] + " " +
-                wins[i] + " " +
-                lastPts[i] + " " +
-                totalPts[i] + " ");
-    }
-
-    sb.append("\ngames= " + playedGames.size() + "\n");
-    
     if (playedGames.size() != gameNum)
       Misc.err("game history length corrupt " + playedGames.size() + " " + gameNum);
 
-    for (SimpleGame g : playedGames) {
-      sb.append(g.toSgf(true, SimpleState.WORLD_VIEW) + "\n");
-    }
-
     if (false) {
       // test: archive after each game
-      String path = cb.archive(getThis(), sb);
+      String path = cb.archive(getThis(), tableString());
       sendToAll("tell <table> path= " + path);
     }
     
     if (gameNum < getMaxGameNum()) {
 
-      cb.saveTable(tableId, sb);
+      if (!saveJournal())
+        cb.saveTable(tableId, tableString());
 
     } else {
 
       // archive table when list is complete
 
-      String path = cb.archive(getThis(), sb);
+      String path = cb.archive(getThis(), tableString());
 
       // send path to players
       sendToAll("tell <table> path= " + path);
 
       // tourny finished - delete save entry
+      if (journal != null) {
+        journal.delete();
+        journal = null;
+      }
       cb.saveTable(tableId, null);
     }
   }
 
-  // Main difference between save() and save2() is simply that save2() returns a string.
-  public String save2() {
-    if (!tourny) return null; // don't bother with non-tournament tables
+  // append header and games not yet in journal
+  // @return false if no journal is used or writing failed
+  private boolean saveJournal()
+  {
+    try {
+
+      if (journal == null) {
+        String file = cb.journalFile(tableId);
+        if (file == null) return false;
+        journal = TableJournal.open(file);
+      }
+
+      for (int i=journal.getGameNum(); i < playedGames.size(); i++) {
+        journal.appendGame(playedGameSgf(i), scoreSheet.getRow(i).toString());
+      }
+      journal.appendHeader(infoHeader());
+    }
+    catch (IOException e) {
+      Misc.msg("!!! journal error " + e);
+      if (journal != null) journal.close();
+      journal = null;
+      return false;
+    }
+    return true;
+  }
 
+  // @return "#info ..." line of saved table (time, table data, player results)
+  private String infoHeader() {
     Calendar now = Calendar.getInstance();
     StringBuffer sb = new StringBuffer();
     sb.append(String.format(Locale.US, "#info %04d-%02d-%02d %02d:%02d:%02d ",
@@ -2315,23 +2365,28 @@ public class Table
                 lastPts[i] + " " +
                 totalPts[i] + " ");
     }
+    return sb.toString();
+  }
 
-    sb.append("\ngames= " + playedGames.size() + "\n");
+  // @return complete table: header, number of games, games, scoresheet rows
+  private StringBuffer tableString() {
+    ArrayList<String> games = new ArrayList<String>();
+    ArrayList<String> rows = new ArrayList<String>();
+    for (int i=0; i < playedGames.size(); i++) {
+      games.add(playedGameSgf(i));
+      if (i < scoreSheet.size()) rows.add(scoreSheet.getRow(i).toString());
+    }
+    return TableJournal.toTableString(infoHeader(), games, rows);
+  }
+
+  // Main difference between save() and save2() is simply that save2() returns a string.
+  public String save2() {
+    if (!tourny) return null; // don't bother with non-tournament tables
 
     if (playedGames.size() != gameNum)
       Misc.err("game history length corrupt " + playedGames.size() + " " + gameNum);
 
-    for (SimpleGame g : playedGames) {
-      sb.append(g.toSgf(true, SimpleState.WORLD_VIEW) + "\n");
-    }
-
-    if (false) {
-      // test: archive after each game
-      String path = cb.archive(getThis(), sb);
-      sendToAll("tell <table> path= " + path);
-    }
-
-    return sb.toString();
+    return tableString().toString();
   }
 
   /* Saves table archive file to local directory so that it can later be converted to an HTML
@@ -2424,55 +2479,79 @@ public class Table
   }
 
   // load tournament table when server restarts
+  //
+  // games are only read as text and parsed when needed (getPlayedGame).
+  // If the table contains the scoresheet rows (written by save() since
+  // they were added) the scoresheet is restored from them, otherwise
+  // all games are replayed to compute it.
   public void load(Random rng, BufferedReader r) {
 
     this.rng = rng;
     playedGames = new ArrayList<SimpleGame>();
+    savedGames = new ArrayList<String>();
     
     try {
 
-      if (!"#info".equals(nextToken(r)))
+      String line = nextLine(r);
+      if (line == null || !line.startsWith("#info "))
         throw new Exception("#info not found");
+
+      String[] t = line.trim().split(" +");
+      int k = 1;
       
-      dateTime.append(nextToken(r));
+      dateTime.append(t[k++]);
       dateTime.append("/");
-      dateTime.append(nextToken(r));
+      dateTime.append(t[k++]);
       dateTime.append("/");
       dateTime.append("local"); // table archive files use local time, not UTC
 
-      tableId = nextToken(r); // will have to delete the "t:" or "." from the beginning when using in HTML result tables
-      creator = nextToken(r);
-      seriesId = Integer.parseInt(nextToken(r));
-      type = nextToken(r);
-      playerNum = Integer.parseInt(nextToken(r));
-      passwd = nextToken(r);
-      blockNum = Integer.parseInt(nextToken(r));
+      tableId = t[k++]; // will have to delete the "t:" or "." from the beginning when using in HTML result tables
+      creator = t[k++];
+      seriesId = Integer.parseInt(t[k++]);
+      type = t[k++];
+      playerNum = Integer.parseInt(t[k++]);
+      passwd = t[k++];
+      blockNum = Integer.parseInt(t[k++]);
 
       for (int i=0; i < playerNum; i++) {
-        playersInResultTable[i] = nextToken(r);
+        playersInResultTable[i] = t[k++];
         disconnectedAtTable[i] = true; // so that every player will auto-join
-        played[i] = Integer.parseInt(nextToken(r));
-        wins[i] = Integer.parseInt(nextToken(r));
-        lastPts[i] = Integer.parseInt(nextToken(r));
-        totalPts[i] = Integer.parseInt(nextToken(r));
+        played[i] = Integer.parseInt(t[k++]);
+        wins[i] = Integer.parseInt(t[k++]);
+        lastPts[i] = Integer.parseInt(t[k++]);
+        totalPts[i] = Integer.parseInt(t[k++]);
       }
 
-      if (!"games=".equals(nextToken(r)))
+      gameNum = sectionSize(nextLine(r), "games=");
+      if (gameNum < 0)
         throw new Exception("games= not found");
-        
-      gameNum = Integer.parseInt(nextToken(r));
 
       for (int i=0; i < gameNum; i++) {
-        SimpleGame sg = new SimpleGame(SimpleState.WORLD_VIEW);
-        sg.fromSgf(r);
-        playedGames.add(sg);
+        StringBuffer sb = new StringBuffer();
+        String res = SimpleGame.readGameString(r, sb);
+        if (!"".equals(res))
+          throw new Exception("game " + i + " : " + res);
+        savedGames.add(sb.toString());
+        playedGames.add(null);
       }
 
-      // restore scoresheet from games
       scoreSheet = new ScoreSheet(playerNum, playersInResultTable);
-      
-      for (int i=0; i < gameNum; i++) {
-        scoreSheet.addRowForGame(playedGames.get(i));
+
+      if (sectionSize(nextLine(r), TableJournal.ROWS_TAG) == gameNum) {
+
+        // restore scoresheet from rows
+        for (int i=0; i < gameNum; i++) {
+          ScoreSheet.Row row = scoreSheet.new Row();
+          row.load(new Tokenizer(nextLine(r)));
+          scoreSheet.addRow(row);
+        }
+
+      } else {
+
+        // restore scoresheet from games
+        for (int i=0; i < gameNum; i++) {
+          scoreSheet.addRowForGame(getPlayedGame(i));
+        }
       }
 
       if (playedGames.size() != scoreSheet.size())
@@ -2485,36 +2564,30 @@ public class Table
     tourny = true;
   }
 
-  static private String nextToken(BufferedReader r) throws Exception
+  // @return next non-empty line, null if EOF
+  static private String nextLine(BufferedReader r) throws IOException
   {
-    // skip ws
-    int c;
-    while (true) {
-      try { c = r.read(); }
-      catch (IOException e) { return null; }
-      if (c < 0) return null;
-      if (c != ' ' && c != '\n') break;
-    }
-   
-    StringBuffer sb = new StringBuffer();
-   
-    while (true) {
-     
-      sb.append((char)c);
-      try { c = r.read(); }
-      catch (IOException e) { return null; }
-     
-      if (c < 0 || (c == ' ' || c == '\n')) break;
-    }
-   
-    Misc.msg("READ TOKEN : " + sb.toString());
-    return sb.toString();
+    String line;
+    do {
+      line = r.readLine();
+    } while (line != null && line.trim().length() == 0);
+    return line;
+  }
+
+  // @return n in line "<tag> n", -1 if line doesn't start with tag
+  static private int sectionSize(String line, String tag)
+  {
+    if (line == null) return -1;
+    String[] t = line.trim().split(" +");
+    if (t.length != 2 || !t[0].equals(tag)) return -1;
+    try { return Integer.parseInt(t[1]); }
+    catch (NumberFormatException e) { return -1; }
   }
 
 
-  public void readScoreSheet(SReader sr)
+  public void readScoreSheet(Tokenizer t)
   {
-    scoreSheet.load(sr);
+    scoreSheet.load(t);
   }
 
   public ScoreSheet getScoreSheet()
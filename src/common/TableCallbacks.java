@@ -10,6 +10,7 @@ public interface TableCallbacks
   public boolean communicationAllowed(String client);
   public void saveGame(String sgf);
   public void saveTable(String tableId, StringBuffer sb);
+  public String journalFile(String tableId); // null: use saveTable
   public String archive(Table table, StringBuffer sb);
   public void send(String to, String what);
   public void sendToAll(String what);
@@ -0,0 +1,300 @@
+// append-only journal of a tournament table
+//
+// Table.save() used to hand the complete table (header + all games so
+// far) to TableCallbacks.saveTable after every game, which rewrites the
+// file each time and is quadratic in the series length. The journal
+// only appends what changed: a header line (#info ..., same format as
+// in the saved table) and the new game as single-line SGF. read()
+// turns a journal back into the saved table format understood by
+// Table.load(), the complete table is written once by cb.archive()
+// when the series ends (compaction), after which the journal is deleted.
+// Each game is followed by its scoresheet row ("R: ...") so that
+// Table.load() can restore the table without replaying the games.
+//
+// appends only write to the file. All journals share one sync thread
+// which forces dirty journals to disk every SYNC_INTERVAL msecs, so
+// appends of many tables within that period share one fsync per file
+// (group commit). sync() waits for the next commit. Table.save() doesn't
+// call it, so after a crash the last SYNC_INTERVAL msecs of appends may
+// be lost (durability lags up to SYNC_INTERVAL, game threads never wait
+// for fsync).
+//
+// a partial last line (crash while writing) is dropped when opening
+
+package common;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.util.*;
+
+public class TableJournal
+{
+  static final String HEADER_TAG = "#info";
+  static final String GAME_TAG   = "(;";
+  static final String ROW_TAG    = "R:";
+  static final String ROWS_TAG   = "rows=";
+  static final long SYNC_INTERVAL = 50; // msecs
+
+  private final String file;
+  private final RandomAccessFile raf;
+  private final FileChannel ch;
+  private int gameNum;
+  private long written; // number of appends
+  private long synced;  // appends known to be on disk
+  private boolean closed;
+
+  // journals with unsynced appends
+  private static final LinkedHashSet<TableJournal> dirty = new LinkedHashSet<TableJournal>();
+  private static Thread syncer;
+
+  private TableJournal(String file) throws IOException
+  {
+    this.file = file;
+    raf = new RandomAccessFile(file, "rw");
+    ch = raf.getChannel();
+
+    // count games, drop partial last line
+    long end = 0, pos = 0;
+    BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+    try {
+      String line;
+      StringBuilder sb = new StringBuilder();
+      int c;
+      while ((c = br.read()) >= 0) {
+        if (c != '\n') { sb.append((char)c); continue; }
+        line = sb.toString();
+        pos += line.getBytes("UTF-8").length + 1;
+        end = pos;
+        if (line.startsWith(GAME_TAG)) gameNum++;
+        sb.setLength(0);
+      }
+    }
+    finally {
+      br.close();
+    }
+
+    if (end != ch.size()) {
+      Misc.msg("TableJournal: dropping partial record in " + file);
+      ch.truncate(end);
+    }
+    ch.position(end);
+  }
+
+  /** opens journal file (creates it if it doesn't exist) */
+  public static TableJournal open(String file) throws IOException
+  {
+    return new TableJournal(file);
+  }
+
+  /** @return journal file name */
+  public String getFile() { return file; }
+
+  /** @return number of games in journal */
+  public synchronized int getGameNum() { return gameNum; }
+
+  /** append header line (Table.infoHeader()) */
+  public void appendHeader(String info) throws IOException
+  {
+    if (!info.startsWith(HEADER_TAG) || info.indexOf('\n') >= 0)
+      Misc.err("TableJournal: illegal header " + info);
+    append(info, false);
+  }
+
+  /** append finished game (single-line world view SGF) */
+  public void appendGame(String sgf) throws IOException
+  {
+    if (!sgf.startsWith(GAME_TAG) || sgf.indexOf('\n') >= 0)
+      Misc.err("TableJournal: illegal game " + sgf);
+    append(sgf, true);
+  }
+
+  /** append finished game and its scoresheet row (ScoreSheet.Row.toString()) */
+  public void appendGame(String sgf, String row) throws IOException
+  {
+    if (!sgf.startsWith(GAME_TAG) || sgf.indexOf('\n') >= 0)
+      Misc.err("TableJournal: illegal game " + sgf);
+    if (!row.startsWith(ROW_TAG) || row.indexOf('\n') >= 0)
+      Misc.err("TableJournal: illegal row " + row);
+    append(sgf + "\n" + row, true);
+  }
+
+  private void append(String line, boolean game) throws IOException
+  {
+    ByteBuffer b = ByteBuffer.wrap((line + "\n").getBytes("UTF-8"));
+
+    synchronized (this) {
+      if (closed) Misc.err("TableJournal: closed " + file);
+      while (b.hasRemaining()) ch.write(b);
+      if (game) gameNum++;
+      written++;
+    }
+
+    synchronized (dirty) {
+      dirty.add(this);
+      if (syncer == null) startSyncer();
+      dirty.notifyAll();
+    }
+  }
+
+  /** wait until all appends so far are on disk */
+  public void sync() throws InterruptedException
+  {
+    long w;
+    synchronized (this) { w = written; }
+
+    synchronized (dirty) {
+      while (pending(w)) {
+        dirty.wait();
+      }
+    }
+  }
+
+  // @return true iff append w isn't on disk yet (and journal is open)
+  private synchronized boolean pending(long w)
+  {
+    return !closed && synced < w;
+  }
+
+  // force this journal to disk; appends can continue meanwhile
+  private void force()
+  {
+    long w;
+    synchronized (this) {
+      if (closed) return;
+      w = written;
+    }
+
+    try {
+      ch.force(false);
+    }
+    catch (ClosedChannelException e) {
+      return; // closed meanwhile
+    }
+    catch (IOException e) {
+      Misc.msg("TableJournal: sync failed " + file + " " + e);
+    }
+
+    synchronized (this) {
+      if (w > synced) synced = w;
+    }
+  }
+
+  private static void startSyncer()
+  {
+    syncer = new Thread("TableJournal sync") {
+        public void run() {
+          ArrayList<TableJournal> todo = new ArrayList<TableJournal>();
+          for (;;) {
+            try {
+              synchronized (dirty) {
+                while (dirty.isEmpty()) dirty.wait();
+              }
+
+              Thread.sleep(SYNC_INTERVAL); // collect more appends
+
+              synchronized (dirty) {
+                todo.addAll(dirty);
+                dirty.clear();
+              }
+
+              for (TableJournal j : todo) j.force();
+              todo.clear();
+
+              synchronized (dirty) {
+                dirty.notifyAll(); // wake sync() callers
+              }
+            }
+            catch (InterruptedException e) {
+              return;
+            }
+          }
+        }
+      };
+    syncer.setDaemon(true);
+    syncer.start();
+  }
+
+  /** force pending appends to disk and close file */
+  public void close()
+  {
+    force();
+    synchronized (this) {
+      if (closed) return;
+      closed = true;
+      try { raf.close(); }
+      catch (IOException e) { Misc.msg("TableJournal: close failed " + file); }
+    }
+    synchronized (dirty) {
+      dirty.remove(this);
+      dirty.notifyAll();
+    }
+  }
+
+  /** close and remove journal (after the table has been archived) */
+  public void delete()
+  {
+    close();
+    if (!new File(file).delete())
+      Misc.msg("TableJournal: can't delete " + file);
+  }
+
+  /** @return table in Table.save() format (last header, number of
+      games, games, scoresheet rows if complete) for Table.load(), null
+      if file can't be read or has no header */
+  public static String read(String file)
+  {
+    String header = null;
+    ArrayList<String> games = new ArrayList<String>();
+    ArrayList<String> rows = new ArrayList<String>();
+
+    try {
+      BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+      try {
+        String line;
+        while ((line = br.readLine()) != null) {
+          if (line.startsWith(HEADER_TAG)) header = line;
+          else if (line.startsWith(GAME_TAG)) games.add(line);
+          else if (line.startsWith(ROW_TAG)) rows.add(line);
+        }
+      }
+      finally {
+        br.close();
+      }
+    }
+    catch (IOException e) {
+      Misc.msg("TableJournal: can't read " + file + " " + e);
+      return null;
+    }
+
+    if (header == null) return null;
+    return toTableString(header, games, rows).toString();
+  }
+
+  /** @return table in Table.save() format */
+  public static StringBuffer toTableString(String header, List<String> games)
+  {
+    return toTableString(header, games, null);
+  }
+
+  /** @return table in Table.save() format, rows are only written if
+      there is one for each game */
+  public static StringBuffer toTableString(String header, List<String> games,
+                                           List<String> rows)
+  {
+    StringBuffer sb = new StringBuffer();
+    sb.append(header);
+    sb.append("\ngames= " + games.size() + "\n");
+    for (String g : games) {
+      sb.append(g + "\n");
+    }
+    if (rows != null && rows.size() == games.size()) {
+      sb.append(ROWS_TAG + " " + rows.size() + "\n");
+      for (String r : rows) {
+        sb.append(r + "\n");
+      }
+    }
+    return sb;
+  }
+}
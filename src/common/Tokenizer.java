@@ -0,0 +1,233 @@
+// cursor tokenizer over a CharSequence
+//
+// replaces SReader for parsing messages: words (separated by ' ' or
+// '\n') are scanned in place, numbers and cards are parsed from the
+// characters and Strings are only created by nextWord() and rest().
+// The word last scanned by next() can be inspected in place (wordLength,
+// wordChar, wordEquals) or through slice views. reset() reuses the
+// object for another line.
+
+// (c) Michael Buro, licensed under GPLv3
+
+package common;
+
+public class Tokenizer
+{
+  private CharSequence s;
+  private int pos, end;             // cursor, end of text
+  private int wordStart, wordEnd;   // word found by next()
+  private final Slice slice = new Slice(); // reused by word()
+
+  private static final double[] POW10 = {
+    1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15
+  };
+
+  public Tokenizer(CharSequence s) { reset(s); }
+
+  /** continue with new text */
+  public Tokenizer reset(CharSequence s)
+  {
+    this.s = s;
+    pos = 0;
+    end = s.length();
+    wordStart = wordEnd = 0;
+    return this;
+  }
+
+  private static boolean isSep(char c) { return c == ' ' || c == '\n'; }
+
+  /** scan next word
+      @return false if there is none */
+  public boolean next()
+  {
+    while (pos < end && isSep(s.charAt(pos))) pos++;
+    if (pos >= end) {
+      wordStart = wordEnd = end;
+      return false;
+    }
+    wordStart = pos;
+    while (pos < end && !isSep(s.charAt(pos))) pos++;
+    wordEnd = pos;
+    if (pos < end) pos++; // consume separator (like SReader)
+    return true;
+  }
+
+  /** @return cursor position, see rewind() */
+  public int mark() { return pos; }
+
+  /** continue at position returned by mark() */
+  public void rewind(int mark) { pos = mark; }
+
+  /** @return false if there was no word to skip */
+  public boolean skipWord() { return next(); }
+
+  /** skip n words
+      @return false if there were fewer */
+  public boolean skipWords(int n)
+  {
+    for (int i=0; i < n; i++) {
+      if (!next()) return false;
+    }
+    return true;
+  }
+
+  /** @return true if there is another word */
+  public boolean hasMore()
+  {
+    int p = pos;
+    while (p < end && isSep(s.charAt(p))) p++;
+    return p < end;
+  }
+
+  // current word --------------------------------------------------------
+
+  public int wordLength() { return wordEnd - wordStart; }
+
+  public char wordChar(int i) { return s.charAt(wordStart + i); }
+
+  /** @return true iff current word is w */
+  public boolean wordEquals(String w)
+  {
+    int n = w.length();
+    if (n != wordEnd - wordStart) return false;
+    for (int i=0; i < n; i++) {
+      if (s.charAt(wordStart + i) != w.charAt(i)) return false;
+    }
+    return true;
+  }
+
+  /** @return view of current word, valid until the next call */
+  public CharSequence word()
+  {
+    slice.set(wordStart, wordEnd);
+    return slice;
+  }
+
+  /** @return current word as String */
+  public String wordString() { return s.subSequence(wordStart, wordEnd).toString(); }
+
+  // reading ---------------------------------------------------------------
+
+  /** @return next word, null if there is none */
+  public String nextWord()
+  {
+    return next() ? wordString() : null;
+  }
+
+  /** @return true iff there is a next word and it equals w */
+  public boolean nextWordEquals(String w)
+  {
+    return next() && wordEquals(w);
+  }
+
+  /** @return next word as int
+      @throws NumberFormatException if missing or not a number */
+  public int nextInt()
+  {
+    if (!next()) throw new NumberFormatException("number missing");
+    return wordInt();
+  }
+
+  /** @return current word as int
+      @throws NumberFormatException if not a number */
+  public int wordInt()
+  {
+    int i = wordStart;
+    boolean neg = false;
+    if (i < wordEnd && (s.charAt(i) == '-' || s.charAt(i) == '+')) {
+      neg = s.charAt(i) == '-';
+      i++;
+    }
+    if (i >= wordEnd || wordEnd - i > 9) {
+      // empty or possibly out of int range
+      return Integer.parseInt(wordString());
+    }
+    int v = 0;
+    for (; i < wordEnd; i++) {
+      int d = s.charAt(i) - '0';
+      if (d < 0 || d > 9) throw new NumberFormatException("not a number: " + wordString());
+      v = v*10 + d;
+    }
+    return neg ? -v : v;
+  }
+
+  /** @return next word as double
+      @throws NumberFormatException if missing or not a number */
+  public double nextDouble()
+  {
+    if (!next()) throw new NumberFormatException("number missing");
+
+    // [-]digits[.digits], anything else via Double.parseDouble
+    int i = wordStart;
+    boolean neg = i < wordEnd && s.charAt(i) == '-';
+    if (neg) i++;
+    long m = 0;
+    int digits = 0, frac = -1;
+    for (; i < wordEnd; i++) {
+      char c = s.charAt(i);
+      if (c == '.' && frac < 0) { frac = 0; continue; }
+      if (c < '0' || c > '9' || digits >= 15) return Double.parseDouble(wordString());
+      m = m*10 + (c - '0');
+      digits++;
+      if (frac >= 0) frac++;
+    }
+    if (digits == 0) return Double.parseDouble(wordString());
+    double v = frac > 0 ? m / POW10[frac] : m; // exact operands: correctly rounded
+    return neg ? -v : v;
+  }
+
+  /** @return index of next card (suit*8+rank), -1 if unknown (??),
+      -2 if there is no word or it isn't a card */
+  public int nextCardIndex()
+  {
+    if (!next() || wordEnd - wordStart != 2) return -2;
+    char c1 = s.charAt(wordStart), c2 = s.charAt(wordStart+1);
+    if (c1 == '?' && c2 == '?') return -1;
+
+    int suit, rank;
+    for (suit=0; suit < 4; suit++) {
+      if (Card.suitNames[suit] == c1) break;
+    }
+    for (rank=0; rank < 8; rank++) {
+      if (Card.rankNames[rank] == c2) break;
+    }
+    if (suit >= 4 || rank >= 8) return -2;
+    return suit*8 + rank;
+  }
+
+  /** @return remainder of text (after the separator following the last
+      word) */
+  public String rest()
+  {
+    String r = s.subSequence(pos, end).toString();
+    pos = end;
+    return r;
+  }
+
+  /** @return view of remainder of text, doesn't advance */
+  public CharSequence restView()
+  {
+    return new Slice().set(pos, end);
+  }
+
+  // view on part of s
+  private class Slice implements CharSequence
+  {
+    int from, to;
+
+    Slice set(int from, int to)
+    {
+      this.from = from;
+      this.to = to;
+      return this;
+    }
+
+    public int length() { return to - from; }
+
+    public char charAt(int i) { return s.charAt(from + i); }
+
+    public CharSequence subSequence(int a, int b) { return new Slice().set(from + a, from + b); }
+
+    public String toString() { return s.subSequence(from, to).toString(); }
+  }
+}
@@ -49,31 +49,31 @@ public class TournamentData
   }
 
   // return null iff OK, error messager otherwise
-  public String fromInfoString(SReader sr)
+  public String fromInfoString(Tokenizer t)
   {
     try {
-      name = sr.nextWord();
-      creator = sr.nextWord();
-      numRounds = Integer.parseInt(sr.nextWord());
+      name = t.nextWord();
+      creator = t.nextWord();
+      numRounds = t.nextInt();
 
       if (numRounds <= 0 || numRounds > 100)
         return "rounds > 100 or < 0";
       
-      numBlocksPerRound = Integer.parseInt(sr.nextWord());
-      numRandomRounds = Integer.parseInt(sr.nextWord());
-      only3tables = Integer.parseInt(sr.nextWord()) != 0;
-      startDate = sr.nextWord();
-      secPerRound = Integer.parseInt(sr.nextWord());
-      numPlayers = Integer.parseInt(sr.nextWord());
-      state = Integer.parseInt(sr.nextWord());
-      currentRound = Integer.parseInt(sr.nextWord());
+      numBlocksPerRound = t.nextInt();
+      numRandomRounds = t.nextInt();
+      only3tables = t.nextInt() != 0;
+      startDate = t.nextWord();
+      secPerRound = t.nextInt();
+      numPlayers = t.nextInt();
+      state = t.nextInt();
+      currentRound = t.nextInt();
       rounds = new TRound[numRounds];
       dayOffsets = new int[numRounds];
       startTimes = new int[numRounds];
 
       for (int i=0; i < numRounds; i++) {
-        dayOffsets[i] = Integer.parseInt(sr.nextWord());
-        startTimes[i] = Integer.parseInt(sr.nextWord());
+        dayOffsets[i] = t.nextInt();
+        startTimes[i] = t.nextInt();
       }
     }
     catch (Throwable e) {
@@ -0,0 +1,120 @@
+// fixed-size transposition table for cardplay search
+//
+// lock-free: each entry is stored as two longs (key ^ data, data) and
+// readers check that they match; entries torn by concurrent writers
+// fail the check and look like misses. So one table can be shared by
+// all search threads without synchronization.
+//
+// buckets have two slots: the first is replaced only by deeper (or
+// same depth / newer search) entries, the second one always.
+//
+// data layout:
+//   bits  0..15 : value + VALUE_OFFSET
+//   bits 16..17 : bound (EXACT, LOWER, UPPER)
+//   bits 18..25 : depth (e.g. number of cards left to play)
+//   bits 26..31 : best move card index + 1 (0: none)
+//   bits 32..39 : search generation
+//   bit  40     : valid
+
+package common;
+
+public class TransTable
+{
+  public static final int EXACT = 0; // value is exact
+  public static final int LOWER = 1; // value is lower bound
+  public static final int UPPER = 2; // value is upper bound
+
+  public static final long MISS = 0; // probe result: no entry
+
+  static final int  VALUE_OFFSET = 1 << 15;
+  static final int  BOUND_POS = 16;
+  static final int  DEPTH_POS = 18;
+  static final int  MOVE_POS  = 26;
+  static final int  GEN_POS   = 32;
+  static final long VALID_BIT = 1L << 40;
+
+  private final long[] table; // pairs (key ^ data, data)
+  private final int mask;     // bucket index mask
+  private volatile int generation = 0;
+
+  /** @param log2Entries table has 2^log2Entries entries (>= 1) */
+  public TransTable(int log2Entries)
+  {
+    if (log2Entries < 1 || log2Entries > 28)
+      Misc.err("TransTable size out of range: " + log2Entries);
+
+    table = new long[2 << log2Entries];
+    mask = (1 << (log2Entries - 1)) - 1; // buckets of 2 entries
+  }
+
+  /** @return number of entries */
+  public int size() { return table.length / 2; }
+
+  /** remove all entries */
+  public void clear()
+  {
+    java.util.Arrays.fill(table, 0);
+  }
+
+  /** start new search: entries from older searches are replaced first */
+  public void newSearch()
+  {
+    generation = (generation + 1) & 0xff;
+  }
+
+  /** @return entry data for key (decode with value(), bound(), ...)
+      or MISS */
+  public long probe(long key)
+  {
+    int i = bucket(key);
+    for (int j=0; j < 2; j++, i += 2) {
+      long d = table[i+1];
+      if ((table[i] ^ d) == key && (d & VALID_BIT) != 0)
+        return d;
+    }
+    return MISS;
+  }
+
+  /** store search result for key
+      @param move best move card index or -1 if none */
+  public void store(long key, int value, int bound, int depth, int move)
+  {
+    int gen = generation;
+    long d =
+      VALID_BIT |
+      ((long)gen << GEN_POS) |
+      ((long)(move + 1) << MOVE_POS) |
+      ((long)(depth & 0xff) << DEPTH_POS) |
+      ((long)bound << BOUND_POS) |
+      (value + VALUE_OFFSET);
+
+    int i = bucket(key);
+
+    // depth-preferred slot: replace if same position, deeper or stale
+    long d0 = table[i+1];
+    if ((table[i] ^ d0) == key ||
+        (d0 & VALID_BIT) == 0 ||
+        depth >= depth(d0) ||
+        generation(d0) != gen) {
+
+      table[i]   = key ^ d;
+      table[i+1] = d;
+      return;
+    }
+
+    // always-replace slot
+    table[i+2] = key ^ d;
+    table[i+3] = d;
+  }
+
+  private int bucket(long key)
+  {
+    return ((int)(key ^ (key >>> 32)) & mask) << 2;
+  }
+
+  static public int value(long data) { return (int)(data & 0xffff) - VALUE_OFFSET; }
+  static public int bound(long data) { return (int)(data >>> BOUND_POS) & 3; }
+  static public int depth(long data) { return (int)(data >>> DEPTH_POS) & 0xff; }
+  static public int move(long data) { return ((int)(data >>> MOVE_POS) & 63) - 1; }
+  static public int generation(long data) { return (int)(data >>> GEN_POS) & 0xff; }
+}
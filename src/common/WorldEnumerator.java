@@ -0,0 +1,301 @@
+// enumerates all worlds consistent with what a player knows
+//
+// known: the player's hand, played cards, an ouvert declarer hand and
+// the skat if the player knows it. The unknown cards are distributed
+// over the hidden hands and the skat ("slots") such that nobody gets
+// a card of a suit he is known to be void in.
+//
+// slots are filled one after the other. Cards no later slot can take
+// must go into the current one, so dead ends are detected as soon as
+// possible and the last slot always gets a legal set of cards. Within a
+// slot the remaining choices are walked in co-lex order in position
+// space (see WorldIndexer).
+//
+// the enumerator is a Spliterator: the choices for the first slot are
+// split into rank ranges, so worlds can be processed by parallel
+// streams, e.g.
+//
+//   WorldEnumerator.stream(s, me, true).forEach(...)
+//
+// each world is a new int[4]: hands of players 0..2, h[3]: skat
+
+package common;
+
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+public class WorldEnumerator implements Spliterator<int[]>
+{
+  // problem description, shared by split enumerators
+  private final int[] fixed;       // known hands/skat, 0 if hidden
+  private final int slotNum;       // number of hidden slots
+  private final int[] slot;        // slot -> 0..2: player, 3: skat
+  private final int[] need;        // number of cards of slot
+  private final int[] allowed;     // cards slot can have
+  private final int[] laterAllowed; // union of allowed of later slots
+  private final int unknown;       // cards to distribute
+  private final long bound;        // upper bound of worlds per first slot choice
+
+  // enumeration state
+  private long cur, to;            // range of first slot choice ranks
+  private boolean started;
+  private final int[] avail;       // cards left for slot
+  private final int[] must;        // cards slot must take
+  private final int[] free;        // other cards slot can take
+  private final int[] freeNum;
+  private final int[] choose;      // number of cards to choose from free
+  private final long[] pos;        // chosen cards in position space of free
+  private final int[] hand;
+
+  /** enumerator for all worlds consistent with player's knowledge in s */
+  public WorldEnumerator(SimpleState s, int player)
+  {
+    fixed = new int[4];
+    slot = new int[4];
+    need = new int[4];
+    allowed = new int[4];
+    laterAllowed = new int[4];
+
+    int known = Misc.getKnownCards(s, player);
+    int skat = s.skatKnown(player) ? s.getSkat() : 0;
+    int declType = s.getGameDeclaration().type;
+    int n = 0;
+
+    for (int p=0; p < 3; p++) {
+      if (p == player || (p == s.getDeclarer() && s.getGameDeclaration().ouvert)) {
+        fixed[p] = s.getHand(p);
+        continue;
+      }
+      slot[n] = p;
+      need[n] = s.numCardsByTricks(p);
+      allowed[n] = ~0;
+      if (declType >= 0)
+        allowed[n] = ~SimpleState.getVoidMask(declType, s.getVoids(p));
+      n++;
+    }
+
+    if (skat != 0) {
+      fixed[3] = skat;
+    } else {
+      slot[n] = 3;
+      need[n] = 2;
+      allowed[n] = ~0;
+      n++;
+    }
+
+    slotNum = n;
+    unknown = ~(known | skat);
+
+    int later = 0, total = 0;
+    for (int l=n-1; l >= 0; l--) {
+      laterAllowed[l] = later;
+      later |= allowed[l];
+      total += need[l];
+    }
+
+    avail = new int[n];
+    must = new int[n];
+    free = new int[n];
+    freeNum = new int[n];
+    choose = new int[n];
+    pos = new long[n];
+    hand = new int[n];
+
+    cur = 0;
+    to = 0;
+
+    if (total != Integer.bitCount(unknown)) {
+      Misc.msg("WorldEnumerator: card numbers don't match");
+      bound = 0;
+      return;
+    }
+
+    if (n == 0) {
+      to = 1; // everything known
+      bound = 1;
+      return;
+    }
+
+    avail[0] = unknown;
+    if (setup(0)) {
+      to = WorldIndexer.choose(freeNum[0], choose[0]);
+    }
+
+    // later slots: choose from what is left, ignoring voids
+    long b = 1;
+    int left = Integer.bitCount(unknown) - need[0];
+    for (int l=1; l < n; l++) {
+      b *= WorldIndexer.choose(left, need[l]);
+      left -= need[l];
+    }
+    bound = b;
+  }
+
+  // split off [from, to) of e
+  private WorldEnumerator(WorldEnumerator e, long from, long to)
+  {
+    fixed = e.fixed;
+    slotNum = e.slotNum;
+    slot = e.slot;
+    need = e.need;
+    allowed = e.allowed;
+    laterAllowed = e.laterAllowed;
+    unknown = e.unknown;
+    bound = e.bound;
+
+    int n = slotNum;
+    avail = new int[n];
+    must = new int[n];
+    free = new int[n];
+    freeNum = new int[n];
+    choose = new int[n];
+    pos = new long[n];
+    hand = new int[n];
+
+    if (n > 0) {
+      avail[0] = unknown;
+      setup(0);
+    }
+    cur = from;
+    this.to = to;
+  }
+
+  /** @return stream of all worlds consistent with player's knowledge in s */
+  public static Stream<int[]> stream(SimpleState s, int player, boolean parallel)
+  {
+    return StreamSupport.stream(new WorldEnumerator(s, player), parallel);
+  }
+
+  /** @return number of hidden slots (hands and skat) */
+  public int getSlotNum() { return slotNum; }
+
+  public boolean tryAdvance(Consumer<? super int[]> action)
+  {
+    if (!advance()) return false;
+    action.accept(world());
+    return true;
+  }
+
+  public void forEachRemaining(Consumer<? super int[]> action)
+  {
+    while (advance()) {
+      action.accept(world());
+    }
+  }
+
+  public Spliterator<int[]> trySplit()
+  {
+    if (slotNum == 0) return null;
+
+    long from = started ? cur + 1 : cur; // cur is being enumerated
+    if (to - from < 2) return null;
+
+    long mid = from + (to - from) / 2;
+    WorldEnumerator e = new WorldEnumerator(this, mid, to);
+    to = mid;
+    return e;
+  }
+
+  /** @return upper bound of number of remaining worlds (voids of
+      later slots are ignored) */
+  public long estimateSize()
+  {
+    long n = to - cur;
+    if (n <= 0) return 0;
+    if (bound > 0 && n > Long.MAX_VALUE / bound) return Long.MAX_VALUE;
+    return n * bound;
+  }
+
+  public int characteristics()
+  {
+    return ORDERED | DISTINCT | NONNULL | IMMUTABLE;
+  }
+
+  // compute must/free/choose for slot l from avail[l]
+  // @return false if slot can't be filled
+  private boolean setup(int l)
+  {
+    int a = avail[l];
+    must[l] = a & ~laterAllowed[l];
+    free[l] = a & allowed[l] & ~must[l];
+    freeNum[l] = Integer.bitCount(free[l]);
+    choose[l] = need[l] - Integer.bitCount(must[l]);
+
+    return
+      (must[l] & ~allowed[l]) == 0 &&
+      choose[l] >= 0 && choose[l] <= freeNum[l];
+  }
+
+  private void setHand(int l)
+  {
+    hand[l] = must[l] | WorldIndexer.expand(pos[l], free[l]);
+    if (l+1 < slotNum) avail[l+1] = avail[l] & ~hand[l];
+  }
+
+  // advance choice of slot l, backtracking to earlier slots when exhausted
+  // @return first slot that needs to be set up, -1: no more worlds
+  private int step(int l)
+  {
+    for (; l > 0; l--) {
+      long x = WorldIndexer.colexSuccessor(pos[l], freeNum[l]);
+      if (x != 0) {
+        pos[l] = x;
+        setHand(l);
+        return l+1;
+      }
+    }
+
+    if (++cur >= to) return -1;
+    pos[0] = WorldIndexer.colexSuccessor(pos[0], freeNum[0]);
+    setHand(0);
+    return 1;
+  }
+
+  // move to next world
+  // @return false if there is none
+  private boolean advance()
+  {
+    if (slotNum == 0) {
+      if (cur >= to) return false;
+      cur++;
+      return true;
+    }
+
+    int l;
+
+    if (!started) {
+      started = true;
+      if (cur >= to) return false;
+      pos[0] = WorldIndexer.colexUnrank(cur, choose[0]);
+      setHand(0);
+      l = 1;
+    } else {
+      if (cur >= to) return false;
+      l = step(slotNum-1);
+    }
+
+    // first choice in all remaining slots, backtrack on dead ends
+    while (l >= 0 && l < slotNum) {
+      if (setup(l)) {
+        pos[l] = (1L << choose[l]) - 1;
+        setHand(l);
+        l++;
+      } else {
+        l = step(l-1);
+      }
+    }
+    return l >= 0;
+  }
+
+  private int[] world()
+  {
+    int[] w = new int[4];
+    System.arraycopy(fixed, 0, w, 0, 4);
+    for (int l=0; l < slotNum; l++) {
+      w[slot[l]] = hand[l];
+    }
+    return w;
+  }
+}
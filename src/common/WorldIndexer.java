@@ -0,0 +1,293 @@
+// ranking and unranking of complete worlds (deals of all hidden cards)
+//
+// a world is identified by a mixed radix number: digit p is the co-lex
+// rank of player p's hand among the cards not public and not held by
+// players < p; player 0 is the most significant digit. The ouvert
+// declarer's hand is public and has no digit. The skat is whatever is
+// left. Same numbering as Misc.rank(SimpleState)/Misc.unrank(int,
+// SimpleState, int[]) which use this class.
+//
+// unlike the old Misc code all scratch data is in the object, so each
+// thread can use its own indexer (see get()) without locking. World
+// index ranges [from, to) can be handed to different threads, e.g.
+//
+//   WorldIndexer wi = WorldIndexer.get();
+//   wi.setState(s);
+//   wi.unrankRange(WorldIndexer.partStart(wi.numWorlds(), t, threads),
+//                  WorldIndexer.partStart(wi.numWorlds(), t+1, threads),
+//                  consumer);
+//
+// hands are handled in "position space": the available cards are
+// numbered 0..n-1 and a hand is a bit set over these positions, so the
+// co-lex successor is just the next larger int with the same number of
+// bits.
+
+package common;
+
+import java.util.Random;
+
+public class WorldIndexer
+{
+  /** called for each world by unrankRange */
+  public interface Consumer
+  {
+    /** h[0..2]: player hands, h[3]: skat (h is reused, copy if needed)
+        @return false to stop enumeration */
+    boolean world(long index, int[] h);
+  }
+
+  // binom[n][k] = n choose k, 0 <= k,n <= 32
+  static final int[][] binom = new int[33][33];
+
+  static {
+    for (int n=0; n <= 32; n++) {
+      binom[n][0] = 1;
+      for (int k=1; k <= n; k++) {
+        binom[n][k] = binom[n-1][k-1] + (k < n ? binom[n-1][k] : 0);
+      }
+    }
+  }
+
+  private static final ThreadLocal<WorldIndexer> indexers =
+    new ThreadLocal<WorldIndexer>() {
+      @Override protected WorldIndexer initialValue() {
+        return new WorldIndexer();
+      }
+    };
+
+  // state data set by setState()
+  private int played;            // cards played so far
+  private int pubCards;          // played cards + ouvert declarer hand
+  private int ouvertPlayer;      // -1: none
+  private int ouvertHand;
+  private int levels;            // number of hidden hands (digits)
+  private final int[] player = new int[3]; // player of digit
+  private final int[] size   = new int[3]; // number of cards of digit's hand
+  private final int[] slots  = new int[3]; // number of cards available for digit
+  private final long[] mult  = new long[3]; // digit weights
+  private long worlds;
+
+  // scratch
+  private final int[] avail = new int[3];  // cards available for digit
+  private final long[] pos  = new long[3]; // hand in position space
+  private final int[] hands = new int[4];
+
+  public WorldIndexer() { }
+
+  /** @return this thread's indexer */
+  public static WorldIndexer get()
+  {
+    return indexers.get();
+  }
+
+  /** @return n choose k (0 if k < 0 or k > n), 0 <= n <= 32 */
+  static public int choose(int n, int k)
+  {
+    if (k < 0 || k > n || n < 0) return 0;
+    return binom[n][k];
+  }
+
+  /** @return start of part of [0,n) when split into parts pieces:
+      part i is [partStart(n,i,parts), partStart(n,i+1,parts)) */
+  static public long partStart(long n, int part, int parts)
+  {
+    if (part >= parts) return n;
+    // n * part / parts without overflow
+    return (n / parts) * part + (n % parts) * part / parts;
+  }
+
+  /** prepare for unranking worlds consistent with the public
+      information in s (number of cards in hands, played cards, ouvert
+      declarer hand) */
+  public void setState(SimpleState s)
+  {
+    played = s.getPlayedCards();
+    pubCards = played;
+    ouvertPlayer = -1;
+    ouvertHand = 0;
+
+    if (s.getGameDeclaration().ouvert && s.getDeclarer() >= 0) {
+      ouvertPlayer = s.getDeclarer();
+      ouvertHand = s.getHand(ouvertPlayer);
+      pubCards ^= ouvertHand;
+    }
+
+    levels = 0;
+    for (int p=0; p < 3; p++) {
+      if (p == ouvertPlayer) continue;
+      player[levels] = p;
+      size[levels] = s.numCards(p);
+      levels++;
+    }
+
+    int numOut = 32 - Integer.bitCount(pubCards);
+    worlds = 1;
+    for (int l=levels-1; l >= 0; l--) {
+      mult[l] = worlds;
+      // cards available for level l: all out cards minus hands of
+      // lower levels
+      int n = numOut;
+      for (int j=0; j < l; j++) n -= size[j];
+      slots[l] = n;
+      worlds *= choose(n, size[l]);
+    }
+  }
+
+  /** @return number of worlds for last setState() */
+  public long numWorlds() { return worlds; }
+
+  /** @return index of the world in s (calls setState(s)) */
+  public long rank(SimpleState s)
+  {
+    setState(s);
+
+    long r = 0;
+    int av = ~pubCards;
+
+    for (int l=0; l < levels; l++) {
+      int h = s.getHand(player[l]);
+      r += colexRank(compress(h, av), size[l]) * mult[l];
+      av ^= h;
+    }
+    return r;
+  }
+
+  /** stores world with index in h (size 4, h[3]: skat) */
+  public void unrank(long index, int[] h)
+  {
+    if (index < 0 || index >= worlds)
+      Misc.err("WorldIndexer: index out of range " + index + " " + worlds);
+
+    int av = ~pubCards;
+
+    for (int l=0; l < levels; l++) {
+      long r = index / mult[l];
+      index -= r * mult[l];
+      avail[l] = av;
+      pos[l] = colexUnrank(r, size[l]);
+      int hand = expand(pos[l], av);
+      h[player[l]] = hand;
+      av ^= hand;
+    }
+
+    finish(h);
+  }
+
+  /** stores a uniformly random world in h
+      @return its index */
+  public long sample(Random rng, int[] h)
+  {
+    long index;
+    if (worlds <= Integer.MAX_VALUE) {
+      index = rng.nextInt((int)worlds);
+    } else {
+      // rejection sampling on 63 bit values
+      long bound = Long.MAX_VALUE - Long.MAX_VALUE % worlds;
+      long v;
+      do { v = rng.nextLong() >>> 1; } while (v >= bound);
+      index = v % worlds;
+    }
+    unrank(index, h);
+    return index;
+  }
+
+  /** calls c.world for all worlds with index in [from, to) in index order
+      @return number of worlds visited */
+  public long unrankRange(long from, long to, Consumer c)
+  {
+    if (to > worlds) to = worlds;
+    if (from >= to) return 0;
+
+    int[] h = hands;
+    unrank(from, h);
+
+    long index = from;
+    for (;;) {
+      if (!c.world(index, h)) return index - from + 1;
+      if (++index >= to) return index - from;
+
+      // increment least significant digit, carry to the left
+      int l = levels - 1;
+      while (l >= 0) {
+        long next = colexSuccessor(pos[l], slots[l]);
+        if (next != 0) { pos[l] = next; break; }
+        pos[l] = (1L << size[l]) - 1; // first hand
+        l--;
+      }
+      if (l < 0) Misc.err("WorldIndexer: range overflow");
+
+      // recompute hands from changed digit on
+      int av = avail[l];
+      for (int j=l; j < levels; j++) {
+        avail[j] = av;
+        int hand = expand(pos[j], av);
+        h[player[j]] = hand;
+        av ^= hand;
+      }
+      finish(h);
+    }
+  }
+
+  // add ouvert hand and skat
+  private void finish(int[] h)
+  {
+    if (ouvertPlayer >= 0) h[ouvertPlayer] = ouvertHand;
+    h[3] = ~played ^ h[0] ^ h[1] ^ h[2];
+  }
+
+  // @return position space set of hand h (h subset of av)
+  static int compress(int h, int av)
+  {
+    long x = 0;
+    int i = 0;
+    for (; av != 0; av &= av - 1, i++) {
+      if ((h & av & -av) != 0) x |= 1L << i;
+    }
+    return (int)x;
+  }
+
+  // @return hand for position space set x
+  static int expand(long x, int av)
+  {
+    int h = 0;
+    for (; x != 0 && av != 0; av &= av - 1, x >>>= 1) {
+      if ((x & 1) != 0) h |= av & -av;
+    }
+    return h;
+  }
+
+  // @return co-lex rank of k-subset x
+  static long colexRank(int x, int k)
+  {
+    long r = 0;
+    int i = 1;
+    for (; x != 0; x &= x - 1, i++) {
+      r += binom[Integer.numberOfTrailingZeros(x)][i];
+    }
+    return r;
+  }
+
+  // @return k-subset with co-lex rank r
+  static long colexUnrank(long r, int k)
+  {
+    long x = 0;
+    int c = 32;
+    for (int i=k; i >= 1; i--) {
+      do { c--; } while (binom[c][i] > r);
+      x |= 1L << c;
+      r -= binom[c][i];
+    }
+    return x;
+  }
+
+  // @return co-lex successor of subset x of n positions, 0 if x is last
+  static long colexSuccessor(long x, int n)
+  {
+    if (x == 0) return 0; // only the empty set
+    long c = x & -x;
+    long r = x + c;
+    long next = (((r ^ x) >>> 2) / c) | r;
+    if (next >= (1L << n)) return 0;
+    return next;
+  }
+}
@@ -52,6 +52,9 @@ public class Main
       Misc.setLogFile(logFile);
     }
 
+    AsyncLog.startAsync(); // GUI and network threads shouldn't wait for log output
+    AsyncLog.setMaxPerSecond(AsyncLog.ASYNC_MAX_PER_SECOND);
+
     String mode = opt.getString("-m");
 
     if (mode.equals("c") || mode.equals("t")) {